@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.dell.asm;
+
+import org.dasein.cloud.ProviderContext;
+import org.w3c.dom.Document;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+
+/**
+ * Generates synthetic DRL payloads shaped like the ones Dell ASM returns, so the mappers can be benchmarked at any
+ * inventory size without a lab. Device keys are lower case, as {@link org.dasein.cloud.dell.asm.ci.ASMArchive}
+ * matches attribute references in lower case.
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class DRLPayloads {
+    static private final String[] GUESTS = { "Ubuntu 12.04 x64", "Windows 2008 R2 64-bit", "CentOS 6.4 x64", "Red Hat Enterprise Linux 6" };
+
+    /**
+     * Constructs a provider with a context sufficient for mapping. No calls are made through it.
+     * @return a provider for use by the mappers
+     */
+    static public @Nonnull DellASM connect() {
+        ProviderContext ctx = new ProviderContext();
+        DellASM provider = new DellASM();
+
+        ctx.setEndpoint("http://localhost");
+        ctx.setAccountNumber("bench");
+        ctx.setRegionId("bench");
+        provider.connect(ctx);
+        return provider;
+    }
+
+    /**
+     * Generates an <code>enumerateArchive</code> response.
+     * @param archives the number of archives in the response
+     * @param devices the number of virtual machines in each archive's topology
+     * @param attributes the number of attributes per device in each archive's topology
+     * @return the response body
+     */
+    static public @Nonnull String enumerateArchive(@Nonnegative int archives, @Nonnegative int devices, @Nonnegative int attributes) {
+        StringBuilder xml = new StringBuilder();
+
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?><drl mode=\"normal\"><enumeratearchive>");
+        for( int i=0; i<archives; i++ ) {
+            String name = GUESTS[i % GUESTS.length] + " " + i;
+
+            xml.append("<archive namespace=\"archive-").append(i).append("\" name=\"").append(name).append("\"");
+            xml.append(" description=\"Archive ").append(name).append("\" owner=\"bench\" importedtime=\"2013-07-01T12:00:00UTC\"");
+            xml.append(" devicemodel=\"VirtualMachine\" devicemanufacturer=\"VMware\" isrecycled=\"false\" ismaster=\"true\">");
+            xml.append("<content>").append(escape(topology(devices, attributes, i))).append("</content>");
+            xml.append("</archive>");
+        }
+        xml.append("</enumeratearchive></drl>");
+        return xml.toString();
+    }
+
+    /**
+     * Parses a generated payload.
+     * @param xml the payload
+     * @return the parsed document
+     * @throws Exception the payload could not be parsed
+     */
+    static public @Nonnull Document parse(@Nonnull String xml) throws Exception {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes("utf-8")));
+    }
+
+    /**
+     * Generates a <code>readTopology</code> response.
+     * @param devices the number of virtual machines in the topology
+     * @param attributes the number of attributes per device
+     * @return the response body
+     */
+    static public @Nonnull String readTopology(@Nonnegative int devices, @Nonnegative int attributes) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?><drl mode=\"normal\"><readtopology><xmltext>" + escape(topology(devices, attributes, 0)) + "</xmltext></readtopology></drl>";
+    }
+
+    /**
+     * Generates the topology document embedded in archive content and <code>readTopology</code> responses. Each device
+     * has a power, IP address, guest type, and OS image attribute; any further attributes are opaque.
+     * @param devices the number of virtual machines in the topology
+     * @param attributes the number of attributes per device
+     * @param seed varies the guest operating systems between topologies
+     * @return the topology document
+     */
+    static public @Nonnull String topology(@Nonnegative int devices, @Nonnegative int attributes, int seed) {
+        StringBuilder xml = new StringBuilder();
+
+        xml.append("<topology>");
+        for( int d=0; d<devices; d++ ) {
+            xml.append("<device model=\"VirtualMachine\" key=\"device-").append(d).append("\" name=\"vm-").append(d).append("\" description=\"Virtual machine ").append(d).append("\">");
+            xml.append("<enforcedproperties>");
+            xml.append("<property name=\"CPU\" value=\"").append(1 << (d % 3)).append("\"/>");
+            xml.append("<property name=\"RAM\" value=\"").append(1024 << (d % 4)).append("\"/>");
+            xml.append("<property name=\"ServerCount\" value=\"1\"/>");
+            xml.append("</enforcedproperties>");
+            xml.append("<interface name=\"eth0\"/>");
+            xml.append("</device>");
+        }
+        for( int d=0; d<devices; d++ ) {
+            String guest = GUESTS[(seed + d) % GUESTS.length];
+
+            for( int a=0; a<attributes; a++ ) {
+                xml.append("<attribute name=\"");
+                switch( a ) {
+                    case 0: xml.append("power\" refs=\"device-").append(d).append("\"><value>").append(d % 2 == 0 ? "on" : "off").append("</value>"); break;
+                    case 1: xml.append("IPAddress\" refs=\"device-").append(d).append("\"><value>10.").append(d / 65536).append(".").append((d / 256) % 256).append(".").append(d % 256).append("</value>"); break;
+                    case 2: xml.append("GuestType\" refs=\"device-").append(d).append("\"><value>").append(guest).append("</value>"); break;
+                    case 3: xml.append("AL_OSImages\" refs=\"device-").append(d).append("\"><value><osimages><element name=\"").append(guest).append("\" path=\"/images/").append(d).append(".vmdk\"/></osimages></value>"); break;
+                    default: xml.append("custom-").append(a).append("\" refs=\"device-").append(d).append("\"><value>value-").append(a).append("</value>");
+                }
+                xml.append("</attribute>");
+            }
+        }
+        xml.append("</topology>");
+        return xml.toString();
+    }
+
+    static private @Nonnull String escape(@Nonnull String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm;
+
+import org.dasein.cloud.compute.Platform;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link Platform#guess(String)} with {@link PlatformResolver} over a large catalog of device and image names
+ * drawn from a few dozen operating system strings, as a refresh of a large lab sees them. Each operation resolves the
+ * whole catalog, so throughput is in refreshes per second.
+ * <p>
+ *     With <code>uniqueNames</code> set, every entry is made unique the way archive names are (an operating system
+ *     string plus a build suffix). The <code>resolve</code> case then shows the memo churning through evictions, and
+ *     <code>resolveImage</code> shows the unmemoized path archive names take.
+ * </p>
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PlatformMappingBenchmark {
+    static private final String[] OS = {
+            "CentOS 5.8 x64", "CentOS 6.3 x64", "CentOS 6.4 x64", "Red Hat Enterprise Linux 5 64-bit",
+            "Red Hat Enterprise Linux 6 64-bit", "RHEL 6.4 x32", "Ubuntu 10.04 LTS 64 bit", "Ubuntu 12.04 LTS 64 bit",
+            "Ubuntu 12.10 x32", "Debian 6 x64", "Debian 7 x64", "Fedora 18 x64", "SUSE Linux Enterprise Server 11 x64",
+            "openSUSE 12.3 x64", "Oracle Linux 6 x64", "Windows Server 2003 R2 x32", "Windows Server 2008 x64",
+            "Windows Server 2008 R2 64-bit", "Windows Server 2012 64-bit", "Windows 7 Professional x64",
+            "Windows 7 Enterprise x32", "Windows XP Professional x32", "FreeBSD 9.1 x64", "Solaris 10 x64",
+            "Solaris 11 x64", "VMware ESXi 5.0", "VMware ESXi 5.1", "Cisco IOS 15.1", "Juniper JunOS 12.3",
+            "F5 BIG-IP 11.3", "otherGuest", "other26xLinux64Guest", "rhel6_64Guest", "centos64Guest", "ubuntu64Guest",
+            "windows7Server64Guest", "winNetEnterpriseGuest", "debian6_64Guest", "sles11_64Guest", "solaris10_64Guest"
+    };
+
+    @Param({ "1000", "10000" })
+    public int devices;
+
+    @Param({ "false", "true" })
+    public boolean uniqueNames;
+
+    private String[] catalog;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(devices);
+
+        catalog = new String[devices];
+        for( int i=0; i<devices; i++ ) {
+            // names arrive as fresh strings from the parser, so no two entries share an instance
+            String os = OS[random.nextInt(OS.length)];
+
+            catalog[i] = (uniqueNames ? os + " build " + i : new String(os));
+        }
+    }
+
+    @Benchmark
+    public void guess(Blackhole bh) {
+        for( String name : catalog ) {
+            bh.consume(Platform.guess(name));
+        }
+    }
+
+    @Benchmark
+    public void resolve(Blackhole bh) {
+        for( String name : catalog ) {
+            bh.consume(PlatformResolver.platform(name));
+        }
+    }
+
+    @Benchmark
+    public void resolveImage(Blackhole bh) {
+        // as Template maps an archive: archive names are guessed without the memo
+        for( String name : catalog ) {
+            bh.consume(PlatformResolver.architecture(name));
+            bh.consume(PlatformResolver.guessPlatform(name));
+        }
+    }
+}
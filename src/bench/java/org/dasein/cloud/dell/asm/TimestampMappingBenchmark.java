@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link ASMTimestamps} with a {@link SimpleDateFormat} created per call, as the mappers used to do, when
+ * reading and writing Dell ASM timestamps.
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class TimestampMappingBenchmark {
+    private long   now;
+    private String timestamp;
+
+    @Setup
+    public void setUp() {
+        now = System.currentTimeMillis();
+        timestamp = ASMTimestamps.format(now);
+    }
+
+    @Benchmark
+    public String formatCodec() {
+        return ASMTimestamps.format(now);
+    }
+
+    @Benchmark
+    public String formatSimpleDateFormat() {
+        return new SimpleDateFormat(ASMTimestamps.PATTERN).format(new Date(now));
+    }
+
+    @Benchmark
+    public long parseCodec() throws Exception {
+        return ASMTimestamps.parse(timestamp);
+    }
+
+    @Benchmark
+    public long parseSimpleDateFormat() throws Exception {
+        return new SimpleDateFormat(ASMTimestamps.PATTERN).parse(timestamp).getTime();
+    }
+}
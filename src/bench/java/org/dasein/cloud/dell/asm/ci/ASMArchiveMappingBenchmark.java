@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.dell.asm.ci;
+
+import org.dasein.cloud.ci.Topology;
+import org.dasein.cloud.dell.asm.DRLPayloads;
+import org.dasein.cloud.dell.asm.ParsedTopology;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@link ASMArchive} mappers: {@link ASMArchive#toTopology(Node)} over every archive in a parsed
+ * <code>enumerateArchive</code> response, and {@link ASMArchive#parseDevice(ParsedTopology, int, java.util.List, java.util.List)} and
+ * {@link ASMArchive#parseAttribute(ParsedTopology, int, java.util.List, java.util.List)} over the devices and attributes of a single
+ * parsed topology.
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ASMArchiveMappingBenchmark {
+    @Param({ "10", "100" })
+    public int archives;
+
+    @Param({ "1", "16" })
+    public int devices;
+
+    @Param({ "4", "16" })
+    public int attributes;
+
+    private NodeList                       archiveNodes;
+    private ArrayList<Topology.VMDevice>   mappedVms;
+    private ASMArchive                     support;
+    private ParsedTopology                 topology;
+
+    @Setup
+    public void setUp() throws Exception {
+        support = new ASMArchive(DRLPayloads.connect());
+        archiveNodes = DRLPayloads.parse(DRLPayloads.enumerateArchive(archives, devices, attributes)).getElementsByTagName("archive");
+        topology = ParsedTopology.parse(DRLPayloads.topology(devices, attributes, 0));
+        mappedVms = new ArrayList<Topology.VMDevice>();
+        for( int i=0; i<topology.getDeviceCount(); i++ ) {
+            support.parseDevice(topology, i, mappedVms, new ArrayList<Topology.VLANDevice>());
+        }
+    }
+
+    @Benchmark
+    public void toTopology(Blackhole bh) throws Exception {
+        for( int i=0; i<archiveNodes.getLength(); i++ ) {
+            bh.consume(support.toTopology(archiveNodes.item(i)));
+        }
+    }
+
+    @Benchmark
+    public ArrayList<Topology.VMDevice> parseDevice() throws Exception {
+        ArrayList<Topology.VMDevice> vms = new ArrayList<Topology.VMDevice>();
+        ArrayList<Topology.VLANDevice> vlans = new ArrayList<Topology.VLANDevice>();
+
+        for( int i=0; i<topology.getDeviceCount(); i++ ) {
+            support.parseDevice(topology, i, vms, vlans);
+        }
+        return vms;
+    }
+
+    @Benchmark
+    public void parseAttribute() throws Exception {
+        ArrayList<Topology.VLANDevice> vlans = new ArrayList<Topology.VLANDevice>();
+
+        for( int i=0; i<topology.getAttributeCount(); i++ ) {
+            support.parseAttribute(topology, i, mappedVms, vlans);
+        }
+    }
+}
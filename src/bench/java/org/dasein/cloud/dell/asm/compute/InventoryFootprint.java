@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm.compute;
+
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.dell.asm.DRLPayloads;
+import org.dasein.cloud.dell.asm.DellASM;
+import org.dasein.cloud.dell.asm.ParsedTopology;
+import org.dasein.cloud.dell.asm.StringInterner;
+import org.dasein.cloud.dell.asm.TopologyCache;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+
+/**
+ * Reports the heap retained by a synthetic inventory of virtual machines with and without the provider's
+ * {@link StringInterner}. The inventory is mapped from many reservations of 100 devices each, the topology cache is
+ * disabled so that no two reservations share parsed strings, and the heap is measured after a full collection with
+ * the inventory still reachable.
+ * <p>
+ *     Run with <code>java -cp ... org.dasein.cloud.dell.asm.compute.InventoryFootprint [vms]</code>; the default
+ *     inventory holds 20,000 virtual machines.
+ * </p>
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class InventoryFootprint {
+    static private final int DEVICES = 100;
+
+    static public void main(String ... args) throws Exception {
+        int vms = (args.length > 0 ? Integer.parseInt(args[0]) : 20000);
+        DellASM provider = DRLPayloads.connect();
+
+        TopologyCache.getInstance().setMaximumSize(0);
+        // one throwaway pass so class loading and static pools are not charged to either measurement
+        measure(provider, DEVICES, false);
+
+        long plain = measure(provider, vms, false);
+        long interned = measure(provider, vms, true);
+
+        System.out.println("vms\tplain_bytes\tinterned_bytes\tsaved_bytes\tsaved_per_vm");
+        System.out.println(vms + "\t" + plain + "\t" + interned + "\t" + (plain - interned) + "\t" + ((plain - interned)/Math.max(1, vms)));
+    }
+
+    static private long measure(@Nonnull DellASM provider, @Nonnegative int vms, boolean interning) throws Exception {
+        StringInterner strings = provider.getStringInterner();
+        VirtualVM support = new VirtualVM(provider);
+        String xml = DRLPayloads.topology(DEVICES, 4, 0);
+
+        strings.clear();
+        strings.setMaximumSize(interning ? StringInterner.DEFAULT_MAXIMUM_SIZE : 0);
+
+        long before = used();
+        ArrayList<VirtualMachine> inventory = new ArrayList<VirtualMachine>(vms);
+
+        for( int r=0; inventory.size() < vms; r++ ) {
+            for( VirtualMachine vm : support.toVirtualMachine("reservation-" + r, ParsedTopology.parse(xml)) ) {
+                if( inventory.size() < vms ) {
+                    inventory.add(vm);
+                }
+            }
+        }
+        long retained = used() - before;
+
+        if( inventory.isEmpty() ) {
+            throw new IllegalStateException("Empty inventory");
+        }
+        return retained;
+    }
+
+    static private long used() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+
+        for( int i=0; i<4; i++ ) {
+            System.gc();
+            Thread.sleep(100L);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
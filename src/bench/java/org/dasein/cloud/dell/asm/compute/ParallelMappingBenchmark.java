@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm.compute;
+
+import org.dasein.cloud.dell.asm.ContentParser;
+import org.dasein.cloud.dell.asm.DRLPayloads;
+import org.dasein.cloud.dell.asm.ParsedTopology;
+import org.dasein.cloud.dell.asm.TopologyCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.NodeList;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the image listing path of {@link Template} over a large <code>enumerateArchive</code> response as the
+ * parallelism of {@link ContentParser} grows. A parallelism of one maps serially as the listing does by default. The
+ * topology cache is disabled so every operation parses all of the content, and the speedup over the serial case
+ * tracks the number of cores available to the benchmark.
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ParallelMappingBenchmark {
+    @Param({ "1500" })
+    public int archives;
+
+    @Param({ "1", "2", "4", "8", "16" })
+    public int parallelism;
+
+    private NodeList nodes;
+    private Template template;
+
+    @Setup
+    public void setUp() throws Exception {
+        TopologyCache.getInstance().setMaximumSize(0);
+        nodes = DRLPayloads.parse(DRLPayloads.enumerateArchive(archives, 8, 4)).getElementsByTagName("archive");
+        template = new Template(DRLPayloads.connect());
+    }
+
+    @Benchmark
+    public void searchMachineImages(Blackhole bh) throws Exception {
+        ParsedTopology[] contents = (parallelism > 1 ? ContentParser.parse(nodes, parallelism) : null);
+
+        for( int i=0; i<nodes.getLength(); i++ ) {
+            bh.consume(contents == null ? template.toImage(nodes.item(i)) : template.toImage(nodes.item(i), contents[i]));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.dell.asm.compute;
+
+import org.dasein.cloud.dell.asm.DRLPayloads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.NodeList;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Template#toImage(org.w3c.dom.Node)} over every archive in a parsed <code>enumerateArchive</code>
+ * response. Each operation maps the whole response, so throughput is in responses per second.
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class TemplateMappingBenchmark {
+    @Param({ "10", "100", "1000" })
+    public int archives;
+
+    @Param({ "1", "8" })
+    public int devices;
+
+    private NodeList nodes;
+    private Template template;
+
+    @Setup
+    public void setUp() throws Exception {
+        nodes = DRLPayloads.parse(DRLPayloads.enumerateArchive(archives, devices, 4)).getElementsByTagName("archive");
+        template = new Template(DRLPayloads.connect());
+    }
+
+    @Benchmark
+    public void toImage(Blackhole bh) throws Exception {
+        for( int i=0; i<nodes.getLength(); i++ ) {
+            bh.consume(template.toImage(nodes.item(i)));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.dell.asm.compute;
+
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.dell.asm.DRLPayloads;
+import org.dasein.cloud.dell.asm.ParsedTopology;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.CharacterData;
+import org.w3c.dom.Document;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link VirtualVM#toVirtualMachine(String, ParsedTopology)} over a parsed reservation topology.
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class VirtualVMMappingBenchmark {
+    @Param({ "1", "10", "100" })
+    public int devices;
+
+    @Param({ "4", "16" })
+    public int attributes;
+
+    private VirtualVM      support;
+    private ParsedTopology topology;
+
+    @Setup
+    public void setUp() throws Exception {
+        Document response = DRLPayloads.parse(DRLPayloads.readTopology(devices, attributes));
+        String xml = ((CharacterData)response.getElementsByTagName("xmltext").item(0).getFirstChild()).getData();
+
+        support = new VirtualVM(DRLPayloads.connect());
+        topology = ParsedTopology.parse(xml);
+    }
+
+    @Benchmark
+    public Collection<VirtualMachine> toVirtualMachine() throws Exception {
+        return support.toVirtualMachine("reservation-1", topology);
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+import org.dasein.cloud.dell.asm.ASMEventSink;
+
+/**
+ * Reports Dell ASM events as custom Java Flight Recorder events so ASM latency can be correlated with GC and thread
+ * activity in a single recording. Durations are measured by the module and carried in each event's
+ * <code>elapsed</code> field; the event timestamp marks when the work completed. Events that are disabled in the
+ * recording settings cost only the {@link Event#isEnabled()} check.
+ * <p>Built only with the <code>jfr</code> profile and installed through {@link org.dasein.cloud.dell.asm.ASMEvents}.</p>
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class JFREventSink implements ASMEventSink {
+    @Name("org.dasein.cloud.dell.asm.Authentication")
+    @Label("ASM Authentication")
+    @Category({"Dasein Cloud", "Dell ASM"})
+    static class AuthenticationEvent extends Event {
+        @Label("Host")
+        String host;
+
+        @Label("Success")
+        boolean success;
+
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+
+    @Name("org.dasein.cloud.dell.asm.ContentParse")
+    @Label("ASM Embedded Content Parse")
+    @Description("Parse of a large document embedded in an ASM response")
+    @Category({"Dasein Cloud", "Dell ASM"})
+    static class ContentParseEvent extends Event {
+        @Label("Kind")
+        String kind;
+
+        @Label("Characters")
+        int characters;
+
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+
+    @Name("org.dasein.cloud.dell.asm.Request")
+    @Label("ASM Request")
+    @Category({"Dasein Cloud", "Dell ASM"})
+    static class RequestEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Host")
+        String host;
+
+        @Label("HTTP Status")
+        int status;
+
+        @Label("Bytes Sent")
+        @DataAmount
+        long bytesSent;
+
+        @Label("Bytes Received")
+        @DataAmount
+        long bytesReceived;
+
+        @Label("Error Code")
+        String errorCode;
+
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+
+    @Name("org.dasein.cloud.dell.asm.TopologyBatch")
+    @Label("ASM Topology Fan-out")
+    @Description("A batch of readTopology calls across many reservations")
+    @Category({"Dasein Cloud", "Dell ASM"})
+    static class TopologyBatchEvent extends Event {
+        @Label("Reservations")
+        int reservations;
+
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+
+    @Override
+    public void authenticated(String host, boolean success, long duration) {
+        AuthenticationEvent e = new AuthenticationEvent();
+
+        if( e.isEnabled() ) {
+            e.host = host;
+            e.success = success;
+            e.elapsed = duration;
+            e.commit();
+        }
+    }
+
+    @Override
+    public void contentParsed(String kind, int characters, long duration) {
+        ContentParseEvent e = new ContentParseEvent();
+
+        if( e.isEnabled() ) {
+            e.kind = kind;
+            e.characters = characters;
+            e.elapsed = duration;
+            e.commit();
+        }
+    }
+
+    @Override
+    public void requestCompleted(String operation, String host, int status, long bytesSent, long bytesReceived, long duration, String errorCode) {
+        RequestEvent e = new RequestEvent();
+
+        if( e.isEnabled() ) {
+            e.operation = operation;
+            e.host = host;
+            e.status = status;
+            e.bytesSent = bytesSent;
+            e.bytesReceived = bytesReceived;
+            e.errorCode = errorCode;
+            e.elapsed = duration;
+            e.commit();
+        }
+    }
+
+    @Override
+    public void topologyBatch(int reservations, long duration) {
+        TopologyBatchEvent e = new TopologyBatchEvent();
+
+        if( e.isEnabled() ) {
+            e.reservations = reservations;
+            e.elapsed = duration;
+            e.commit();
+        }
+    }
+}
@@ -19,9 +19,10 @@
 
 package org.dasein.cloud.dell.asm;
 
-import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.HttpVersion;
@@ -35,7 +36,9 @@ import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.CoreConnectionPNames;
 import org.apache.http.params.HttpParams;
 import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.protocol.BasicHttpContext;
 import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
 import org.apache.log4j.Logger;
 import org.apache.velocity.Template;
@@ -63,10 +66,10 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Collections;
-import java.util.Date;
 import java.util.Iterator;
 import java.util.Properties;
 
@@ -85,6 +88,8 @@ public class APIHandler {
     static public final String OPEN_CONNECTION       = "openConnection";
     static public final String GET_USER_TOKEN        = "getUserToken";
 
+    static private final String SENT_ATTRIBUTE = "dasein.asm.sent";
+
     private DellASM provider;
 
     public APIHandler(@Nonnull DellASM provider) { this.provider = provider; }
@@ -97,6 +102,9 @@ public class APIHandler {
      * @throws InternalException an internal error occurred generating the request to Dell ASM
      */
     public @Nonnull String authenticate(@Nonnull ProviderContext ctx) throws CloudException, InternalException {
+        long started = System.nanoTime();
+        boolean success = false;
+
         try {
             String username = new String(ctx.getAccessPublic(), "utf-8");
             String password = new String(ctx.getAccessPrivate(), "utf-8");
@@ -118,7 +126,7 @@ public class APIHandler {
             vc.put("password", password);
             vc.put("endpoint", getEndpoint());
 
-            template.merge(vc, sw);
+            merge(template, vc, sw);
             APIResponse response = post(GET_USER_TOKEN, sw.toString());
             Document doc = response.getXML();
 
@@ -147,7 +155,7 @@ public class APIHandler {
             vc.put("usertoken", userToken);
 
             sw = new StringWriter();
-            template.merge(vc, sw);
+            merge(template, vc, sw);
             response = post(OPEN_CONNECTION, sw.toString());
             doc = response.getXML();
 
@@ -163,6 +171,7 @@ public class APIHandler {
                     Node c = drl.getAttributes().getNamedItem("connectionid");
 
                     if( c != null ) {
+                        success = true;
                         return c.getNodeValue().trim();
                     }
                 }
@@ -172,6 +181,20 @@ public class APIHandler {
         catch( UnsupportedEncodingException e ) {
             throw new InternalException(e);
         }
+        finally {
+            if( ASMEvents.isEnabled() ) {
+                String endpoint = ctx.getEndpoint();
+                String host = null;
+
+                try {
+                    host = (endpoint == null ? null : new URI(endpoint).getHost());
+                }
+                catch( URISyntaxException ignore ) {
+                    // the post will already have failed on the same endpoint
+                }
+                ASMEvents.authenticated(host, success, System.nanoTime() - started);
+            }
+        }
     }
 
     /**
@@ -250,7 +273,16 @@ public class APIHandler {
                 params.setParameter(ConnRoutePNames.DEFAULT_PROXY, new HttpHost(proxyHost, port, ssl ? "https" : "http"));
             }
         }
-        return new DefaultHttpClient(params);
+        DefaultHttpClient client = new DefaultHttpClient(params);
+
+        // request interceptors run once the connection is established, marking the end of connection setup
+        client.addRequestInterceptor(new HttpRequestInterceptor() {
+            @Override
+            public void process(HttpRequest request, HttpContext context) {
+                context.setAttribute(SENT_ATTRIBUTE, System.nanoTime());
+            }
+        });
+        return client;
     }
 
     /**
@@ -275,6 +307,19 @@ public class APIHandler {
     }
 
 
+    /**
+     * Merges a request template, recording the time spent so it is charged to the next call made on this thread.
+     * @param template the template for the request
+     * @param vc the values being merged into the template
+     * @param writer the writer receiving the merged request
+     */
+    public void merge(@Nonnull Template template, @Nonnull VelocityContext vc, @Nonnull Writer writer) {
+        long started = System.nanoTime();
+
+        template.merge(vc, writer);
+        PhaseTimings.setPendingMerge(System.nanoTime() - started);
+    }
+
     private void parseError(int httpCode, @Nonnull String defaultReason, NodeList errors) throws ASMException, InternalException {
         String reason = defaultReason;
         String body = "";
@@ -297,16 +342,6 @@ public class APIHandler {
 
     private @Nonnull Document parseResponse(@Nonnull String responseBody) throws ASMException, InternalException {
         try {
-            if( wire.isDebugEnabled() ) {
-                String[] lines = responseBody.split("\n");
-
-                if( lines.length < 1 ) {
-                    lines = new String[] { responseBody };
-                }
-                for( String l : lines ) {
-                    wire.debug(l);
-                }
-            }
             return XMLParser.parse(new ByteArrayInputStream(responseBody.getBytes()));
         }
         catch( IOException e ) {
@@ -332,6 +367,15 @@ public class APIHandler {
         if( logger.isTraceEnabled() ) {
             logger.trace("ENTER: " + APIHandler.class.getName() + ".post(" + xml + ")");
         }
+        OperationMetrics metrics = ASMMetrics.getOperation(operation);
+        PhaseTimings timings = PhaseTimings.start(metrics);
+        long started = System.nanoTime();
+        String errorCode = null;
+        String host = null;
+        String request = xml, reply = null;
+        long received = 0L, sent = 0L;
+        int statusCode = -1;
+
         try {
             if( logger.isDebugEnabled() ) {
                 try {
@@ -342,17 +386,38 @@ public class APIHandler {
                     logger.warn("Invalid XML being submitted to cloud: " + t.getMessage());
                 }
             }
-            String target = getEndpoint() + "/xmlApiServlet";
-
-            if( wire.isDebugEnabled() ) {
-                wire.debug("");
-                wire.debug(">>> [POST (" + (new Date()) + ")] -> " + target + " >--------------------------------------------------------------------------------------");
+            ReplayTransport replay = provider.getReplayTransport();
+            WireRecorder recorder = provider.getWireRecorder();
+            long exchanged = System.nanoTime();
+            String reason;
+
+            if( replay != null ) {
+                ReplayTransport.Exchange exchange = replay.replay(operation, xml);
+
+                host = ReplayTransport.HOST;
+                statusCode = exchange.getStatusCode();
+                reason = exchange.getReason();
+                xml = exchange.getResponse();
+                try {
+                    sent = request.getBytes("utf-8").length;
+                    received = xml.getBytes("utf-8").length;
+                }
+                catch( UnsupportedEncodingException e ) {
+                    throw new InternalException(e);
+                }
+                metrics.addBytesSent(sent);
+                metrics.addBytesReceived(received);
+                timings.record(PhaseTimings.Phase.SERVER, System.nanoTime() - exchanged);
             }
-            try {
+            else {
+                String target = getEndpoint() + "/xmlApiServlet";
+                boolean capture = WireSink.getInstance().sample(wire, operation);
+
                 URI uri;
 
                 try {
                     uri = new URI(target);
+                    host = uri.getHost();
                 }
                 catch( URISyntaxException e ) {
                     throw new ConfigurationException(e);
@@ -368,29 +433,43 @@ public class APIHandler {
                     HttpPost post = new HttpPost(target);
 
                     try {
-                        post.setEntity(new StringEntity(xml, "UTF-8"));
+                        StringEntity body = new StringEntity(xml, "UTF-8");
+
+                        post.setEntity(body);
+                        sent = body.getContentLength();
+                        metrics.addBytesSent(sent);
                     }
                     catch( UnsupportedEncodingException e ) {
                         logger.error("Unsupported encoding UTF-8: " + e.getMessage());
                         throw new InternalException(e);
                     }
 
-                    if( wire.isDebugEnabled() ) {
-                        wire.debug(post.getRequestLine().toString());
-                        for( Header header : post.getAllHeaders() ) {
-                            wire.debug(header.getName() + ": " + header.getValue());
-                        }
-                        wire.debug("");
-                        wire.debug(xml);
-                        wire.debug("");
+                    if( capture ) {
+                        WireSink.getInstance().capture(wire, operation, true, target, post.getRequestLine().toString(), post.getAllHeaders(), xml);
                     }
                     HttpResponse response;
                     StatusLine status;
 
                     try {
+                        HttpContext context = new BasicHttpContext();
+                        long executed = System.nanoTime();
+
                         APITrace.trace(provider, operation);
-                        response = client.execute(post);
+                        response = client.execute(post, context);
                         status = response.getStatusLine();
+                        statusCode = status.getStatusCode();
+                        reason = status.getReasonPhrase();
+
+                        Long connected = (Long)context.getAttribute(SENT_ATTRIBUTE);
+                        long now = System.nanoTime();
+
+                        if( connected == null ) {
+                            timings.record(PhaseTimings.Phase.SERVER, now - executed);
+                        }
+                        else {
+                            timings.record(PhaseTimings.Phase.CONNECT, connected - executed);
+                            timings.record(PhaseTimings.Phase.SERVER, now - connected);
+                        }
                     }
                     catch( IOException e ) {
                         logger.error("Failed to execute HTTP request due to a cloud I/O error: " + e.getMessage());
@@ -399,52 +478,32 @@ public class APIHandler {
                     if( logger.isDebugEnabled() ) {
                         logger.debug("HTTP Status " + status);
                     }
-                    Header[] headers = response.getAllHeaders();
-
-                    if( wire.isDebugEnabled() ) {
-                        wire.debug(status.toString());
-                        for( Header h : headers ) {
-                            if( h.getValue() != null ) {
-                                wire.debug(h.getName() + ": " + h.getValue().trim());
-                            }
-                            else {
-                                wire.debug(h.getName() + ":");
-                            }
-                        }
-                        wire.debug("");
+                    HttpEntity entity = response.getEntity();
+
+                    if( capture && (entity == null || status.getStatusCode() == HttpStatus.SC_NOT_FOUND) ) {
+                        WireSink.getInstance().capture(wire, operation, false, target, status.toString(), response.getAllHeaders(), null);
                     }
                     if( status.getStatusCode() == HttpStatus.SC_NOT_FOUND ) {
                         throw new CloudException("No such endpoint: " + target);
                     }
-                    HttpEntity entity = response.getEntity();
-
                     if( entity == null ) {
                         throw new ASMException(CloudErrorType.GENERAL, status.getStatusCode(), status.getReasonPhrase(), status.getReasonPhrase());
                     }
                     try {
-                        xml = EntityUtils.toString(entity);
+                        long downloading = System.nanoTime();
+                        byte[] body = EntityUtils.toByteArray(entity);
+                        String charset = EntityUtils.getContentCharSet(entity);
+
+                        received = body.length;
+                        metrics.addBytesReceived(received);
+                        xml = new String(body, charset == null ? HTTP.DEFAULT_CONTENT_CHARSET : charset);
+                        timings.record(PhaseTimings.Phase.DOWNLOAD, System.nanoTime() - downloading);
                     }
                     catch( IOException e ) {
                         throw new ASMException(e);
                     }
-                    if( wire.isDebugEnabled() ) {
-                        wire.debug(xml);
-                    }
-                    wire.debug("");
-
-                    Document doc = parseResponse(xml);
-
-                    NodeList errors = doc.getElementsByTagName("error");
-
-                    if( errors.getLength() > 0 ) {
-                        parseError(status.getStatusCode(), status.getReasonPhrase(), errors);
-                        throw new ASMException(CloudErrorType.GENERAL, status.getStatusCode(), status.getReasonPhrase(), status.getReasonPhrase());
-                    }
-                    else {
-                        APIResponse r = new APIResponse();
-
-                        r.receive(status.getStatusCode(), parseResponse(xml), true);
-                        return r;
+                    if( capture ) {
+                        WireSink.getInstance().capture(wire, operation, false, target, status.toString(), response.getAllHeaders(), xml);
                     }
                 }
                 finally {
@@ -452,14 +511,54 @@ public class APIHandler {
                     catch( Throwable ignore ) { }
                 }
             }
-            finally {
-                if( wire.isDebugEnabled() ) {
-                    wire.debug("<<< [POST (" + (new Date()) + ")] -> " + target + " <--------------------------------------------------------------------------------------");
-                    wire.debug("");
-                }
+            reply = xml;
+            if( recorder != null ) {
+                recorder.record(operation, request, statusCode, reason, xml, System.nanoTime() - exchanged);
+            }
+
+            long parsing = System.nanoTime();
+            Document doc = parseResponse(xml);
+
+            timings.record(PhaseTimings.Phase.PARSE, System.nanoTime() - parsing);
+
+            NodeList errors = doc.getElementsByTagName("error");
+
+            if( errors.getLength() > 0 ) {
+                parseError(statusCode, reason, errors);
+                throw new ASMException(CloudErrorType.GENERAL, statusCode, reason, reason);
+            }
+            else {
+                APIResponse r = new APIResponse();
+
+                r.receive(statusCode, doc, true);
+                r.setTimings(timings);
+                return r;
             }
         }
+        catch( CloudException e ) {
+            errorCode = ASMMetrics.getErrorCode(e);
+            throw e;
+        }
+        catch( InternalException e ) {
+            errorCode = ASMMetrics.getErrorCode(e);
+            throw e;
+        }
+        catch( RuntimeException e ) {
+            errorCode = ASMMetrics.getErrorCode(e);
+            throw e;
+        }
         finally {
+            long elapsed = System.nanoTime() - started;
+
+            metrics.record(elapsed, errorCode);
+            SlowCallLog slowCalls = provider.getSlowCallLog();
+
+            if( slowCalls.isSlow(operation, elapsed) ) {
+                slowCalls.record(operation, timings, elapsed, statusCode, errorCode, sent, received, request, reply);
+            }
+            if( ASMEvents.isEnabled() ) {
+                ASMEvents.requestCompleted(operation, host, statusCode, sent, received, elapsed, errorCode);
+            }
             if( logger.isTraceEnabled() ) {
                 logger.trace("EXIT: " + APIHandler.class.getName() + ".post()");
             }
@@ -46,6 +46,7 @@ public class APIResponse {
 
     private CloudException error;
     private APIResponse next;
+    private PhaseTimings timings;
 
     public APIResponse() { }
 
@@ -100,6 +101,15 @@ public class APIResponse {
         }
     }
 
+    /**
+     * @return the time spent in each phase of the call producing this response, null if the call was not timed
+     */
+    public @Nullable PhaseTimings getTimings() {
+        synchronized( this ) {
+            return timings;
+        }
+    }
+
     /**
      * @return the type of content returned in the response body
      * @throws CloudException an error occurred parsing the response
@@ -265,4 +275,10 @@ public class APIResponse {
             notifyAll();
         }
     }
+
+    void setTimings(@Nullable PhaseTimings timings) {
+        synchronized( this ) {
+            this.timings = timings;
+        }
+    }
 }
@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Receives low-level events about the work this module does against Dell ASM, such as Java Flight Recorder
+ * events. Sinks are installed through {@link ASMEvents#install(ASMEventSink)}. Implementations are called on the thread
+ * doing the work and must return quickly. All durations are in nanoseconds.
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public interface ASMEventSink {
+    /**
+     * An authentication (getUserToken followed by openConnection) has completed.
+     * @param host the host of the endpoint authenticated against
+     * @param success whether a connection ID was obtained
+     * @param duration the time taken to authenticate
+     */
+    public void authenticated(@Nullable String host, boolean success, long duration);
+
+    /**
+     * A large document embedded in a response (such as archive content) has been parsed.
+     * @param kind the kind of content parsed
+     * @param characters the size of the content in characters
+     * @param duration the time taken to parse the content
+     */
+    public void contentParsed(@Nonnull String kind, int characters, long duration);
+
+    /**
+     * A call to {@link APIHandler#post(String, String)} has completed.
+     * @param operation the API operation called
+     * @param host the host of the endpoint called
+     * @param status the HTTP status of the response, -1 if no response was received
+     * @param bytesSent the size of the request body in bytes
+     * @param bytesReceived the size of the response body in bytes
+     * @param duration the time taken by the call
+     * @param errorCode the DRL error code (or other failure classification) if the call failed, null if it succeeded
+     */
+    public void requestCompleted(@Nonnull String operation, @Nullable String host, int status, long bytesSent, long bytesReceived, long duration, @Nullable String errorCode);
+
+    /**
+     * A batch of readTopology calls fanned out over several reservations has completed.
+     * @param reservations the number of reservations whose topologies were read
+     * @param duration the time taken by the whole batch
+     */
+    public void topologyBatch(int reservations, long duration);
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm;
+
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Dispatches events to the installed {@link ASMEventSink}. Call sites check {@link #isEnabled()} before gathering
+ * anything for an event, so with no sink installed the cost is a single volatile read.
+ * <p>
+ *     A Java Flight Recorder sink is built when this module is built with the <code>jfr</code> profile (which requires
+ *     Java 11). It can be installed with {@link #installFlightRecorder()} or by starting the JVM with
+ *     <code>-Ddasein.asm.jfr=true</code>.
+ * </p>
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class ASMEvents {
+    static private final Logger logger = DellASM.getLogger(ASMEvents.class);
+
+    static public final String JFR_SINK       = "org.dasein.cloud.dell.asm.jfr.JFREventSink";
+    static public final String JFR_PROPERTY   = "dasein.asm.jfr";
+
+    /**
+     * Embedded content smaller than this many characters is not considered large enough to report.
+     */
+    static public final int    LARGE_CONTENT  = 16 * 1024;
+
+    static private volatile ASMEventSink sink;
+
+    static {
+        if( Boolean.getBoolean(JFR_PROPERTY) ) {
+            installFlightRecorder();
+        }
+    }
+
+    /**
+     * @return the installed sink, null if none is installed
+     */
+    static public @Nullable ASMEventSink getSink() {
+        return sink;
+    }
+
+    /**
+     * Installs a sink, replacing any sink already installed.
+     * @param eventSink the sink to install, or null to stop reporting events
+     */
+    static public void install(@Nullable ASMEventSink eventSink) {
+        sink = eventSink;
+    }
+
+    /**
+     * Installs the Java Flight Recorder sink if it was built into this module and the JVM supports custom JFR events.
+     * @return true if the sink was installed
+     */
+    static public boolean installFlightRecorder() {
+        try {
+            install((ASMEventSink)Class.forName(JFR_SINK).newInstance());
+            logger.info("Reporting Dell ASM events to Java Flight Recorder");
+            return true;
+        }
+        catch( ClassNotFoundException e ) {
+            logger.warn("Flight Recorder events were not built into this module; build with -Pjfr to include them");
+        }
+        catch( Throwable t ) {
+            logger.warn("Unable to install Flight Recorder events: " + t.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * @return true if a sink is installed and events should be gathered
+     */
+    static public boolean isEnabled() {
+        return (sink != null);
+    }
+
+    static void authenticated(@Nullable String host, boolean success, long duration) {
+        ASMEventSink s = sink;
+
+        if( s != null ) {
+            try {
+                s.authenticated(host, success, duration);
+            }
+            catch( Throwable t ) {
+                logger.warn("Event sink failed: " + t.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reports the parse of a document embedded in a response if it is at least {@link #LARGE_CONTENT} characters.
+     * @param kind the kind of content parsed
+     * @param characters the size of the content in characters
+     * @param duration the time taken to parse the content in nanoseconds
+     */
+    static public void contentParsed(@Nonnull String kind, int characters, long duration) {
+        ASMEventSink s = sink;
+
+        if( s != null && characters >= LARGE_CONTENT ) {
+            try {
+                s.contentParsed(kind, characters, duration);
+            }
+            catch( Throwable t ) {
+                logger.warn("Event sink failed: " + t.getMessage());
+            }
+        }
+    }
+
+    static void requestCompleted(@Nonnull String operation, @Nullable String host, int status, long bytesSent, long bytesReceived, long duration, @Nullable String errorCode) {
+        ASMEventSink s = sink;
+
+        if( s != null ) {
+            try {
+                s.requestCompleted(operation, host, status, bytesSent, bytesReceived, duration, errorCode);
+            }
+            catch( Throwable t ) {
+                logger.warn("Event sink failed: " + t.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reports the completion of a batch of readTopology calls.
+     * @param reservations the number of reservations whose topologies were read
+     * @param duration the time taken by the whole batch in nanoseconds
+     */
+    static public void topologyBatch(int reservations, long duration) {
+        ASMEventSink s = sink;
+
+        if( s != null ) {
+            try {
+                s.topologyBatch(reservations, duration);
+            }
+            catch( Throwable t ) {
+                logger.warn("Event sink failed: " + t.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+
+import javax.annotation.Nonnull;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the per-operation metrics for all calls made to Dell ASM from this JVM. Metrics are keyed by the
+ * lower-cased operation name (the module is not consistent in the case of its operation constants) and each operation
+ * is registered with the platform MBean server as
+ * <code>org.dasein.cloud.dell.asm:type=Metrics,operation=&lt;operation&gt;</code>.
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class ASMMetrics {
+    static private final Logger logger = DellASM.getLogger(ASMMetrics.class);
+
+    static public final String JMX_DOMAIN = "org.dasein.cloud.dell.asm";
+
+    static private final ConcurrentHashMap<String,OperationMetrics> operations = new ConcurrentHashMap<String, OperationMetrics>();
+
+    /**
+     * Classifies a failed call for the error counts.
+     * @param t the error raised by the call
+     * @return the DRL error code for errors reported by Dell ASM, otherwise a short description of the failure
+     */
+    static @Nonnull String getErrorCode(@Nonnull Throwable t) {
+        if( t instanceof CloudException ) {
+            String code = ((CloudException)t).getProviderCode();
+
+            if( code != null && code.length() > 0 ) {
+                return code;
+            }
+            return "cloud";
+        }
+        if( t instanceof InternalException ) {
+            return "internal";
+        }
+        return t.getClass().getSimpleName();
+    }
+
+    /**
+     * Provides the metrics for an operation, creating and registering them on first use.
+     * @param operation the operation whose metrics are sought
+     * @return the metrics for the operation
+     */
+    static public @Nonnull OperationMetrics getOperation(@Nonnull String operation) {
+        String key = operation.toLowerCase(Locale.ENGLISH);
+        OperationMetrics metrics = operations.get(key);
+
+        if( metrics == null ) {
+            OperationMetrics existing = operations.putIfAbsent(key, metrics = new OperationMetrics(key));
+
+            if( existing != null ) {
+                return existing;
+            }
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(JMX_DOMAIN + ":type=Metrics,operation=" + key));
+            }
+            catch( Throwable t ) {
+                logger.warn("Unable to register JMX metrics for " + key + ": " + t.getMessage());
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Clears the metrics for every operation.
+     */
+    static public void reset() {
+        for( OperationMetrics metrics : operations.values() ) {
+            metrics.reset();
+        }
+    }
+
+    /**
+     * @return a point-in-time copy of the metrics for every operation called so far, keyed by lower-cased operation name
+     */
+    static public @Nonnull Map<String,OperationMetrics.Snapshot> snapshot() {
+        TreeMap<String,OperationMetrics.Snapshot> snapshots = new TreeMap<String, OperationMetrics.Snapshot>();
+
+        for( Map.Entry<String,OperationMetrics> entry : operations.entrySet() ) {
+            snapshots.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return Collections.unmodifiableMap(snapshots);
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the named daemon threads used for background work against Dell ASM. Background threads must never keep
+ * a client JVM alive, so every thread created here is a daemon thread.
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class ASMThreadFactory implements ThreadFactory {
+    private final AtomicInteger count = new AtomicInteger(0);
+    private final String        prefix;
+
+    /**
+     * Constructs a thread factory whose threads are named after the specified purpose.
+     * @param name the purpose of the threads created by this factory
+     */
+    public ASMThreadFactory(@Nonnull String name) {
+        prefix = "dasein-asm-" + name + "-";
+    }
+
+    @Override
+    public @Nonnull Thread newThread(@Nonnull Runnable r) {
+        Thread t = new Thread(r, prefix + count.incrementAndGet());
+
+        t.setDaemon(true);
+        return t;
+    }
+}
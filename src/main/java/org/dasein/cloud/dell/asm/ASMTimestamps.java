@@ -0,0 +1,222 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm;
+
+import javax.annotation.Nonnull;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+
+/**
+ * Reads and writes the timestamps Dell ASM exchanges, which take the form <code>yyyy-MM-dd'T'HH:mm:ssz</code>. The
+ * codec holds no mutable state and may be called from any thread.
+ * <p>
+ *     Timestamps whose zone is <code>Z</code>, <code>UTC</code>, <code>GMT</code>, or a numeric offset (with or
+ *     without a <code>GMT</code> or <code>UTC</code> prefix) are read by hand without creating any objects, and
+ *     fractional seconds are accepted. Anything else, such as a zone abbreviation like <code>CDT</code>, is handed to a
+ *     {@link SimpleDateFormat} kept per thread. Timestamps are always written in UTC.
+ * </p>
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class ASMTimestamps {
+    static public final String PATTERN = "yyyy-MM-dd'T'HH:mm:ssz";
+
+    static private final long DAY = 86400000L;
+
+    static private final ThreadLocal<SimpleDateFormat> fallback = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat(PATTERN);
+        }
+    };
+
+    /**
+     * Writes a timestamp in UTC, as in <code>2013-07-01T12:00:00UTC</code>.
+     * @param millis the timestamp in milliseconds since the epoch
+     * @return the formatted timestamp
+     */
+    static public @Nonnull String format(long millis) {
+        long days = floorDiv(millis, DAY);
+        int ms = (int)(millis - days * DAY);
+        char[] out = new char[22];
+
+        // civil date from days since the epoch, after Howard Hinnant's days_from_civil inverse
+        long z = days + 719468L;
+        long era = (z >= 0 ? z : z - 146096L) / 146097L;
+        int doe = (int)(z - era * 146097L);
+        int yoe = (doe - doe/1460 + doe/36524 - doe/146096) / 365;
+        int doy = doe - (365*yoe + yoe/4 - yoe/100);
+        int mp = (5*doy + 2)/153;
+        int day = doy - (153*mp + 2)/5 + 1;
+        int month = (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int)(yoe + era * 400L) + (month <= 2 ? 1 : 0);
+        int seconds = ms / 1000;
+
+        put(out, 0, year, 4);
+        out[4] = '-';
+        put(out, 5, month, 2);
+        out[7] = '-';
+        put(out, 8, day, 2);
+        out[10] = 'T';
+        put(out, 11, seconds / 3600, 2);
+        out[13] = ':';
+        put(out, 14, (seconds / 60) % 60, 2);
+        out[16] = ':';
+        put(out, 17, seconds % 60, 2);
+        out[19] = 'U';
+        out[20] = 'T';
+        out[21] = 'C';
+        return new String(out);
+    }
+
+    /**
+     * Reads a timestamp.
+     * @param ts the timestamp as written by Dell ASM
+     * @return the timestamp in milliseconds since the epoch
+     * @throws ParseException the value is not a timestamp
+     */
+    static public long parse(@Nonnull String ts) throws ParseException {
+        int len = ts.length();
+
+        while( len > 0 && ts.charAt(len-1) <= ' ' ) {
+            len--;
+        }
+        int start = 0;
+
+        while( start < len && ts.charAt(start) <= ' ' ) {
+            start++;
+        }
+        if( len - start >= 19 && ts.charAt(start+4) == '-' && ts.charAt(start+7) == '-' && ts.charAt(start+10) == 'T' && ts.charAt(start+13) == ':' && ts.charAt(start+16) == ':' ) {
+            int year = digits(ts, start, 4);
+            int month = digits(ts, start+5, 2);
+            int day = digits(ts, start+8, 2);
+            int hour = digits(ts, start+11, 2);
+            int minute = digits(ts, start+14, 2);
+            int second = digits(ts, start+17, 2);
+
+            if( year > -1 && month >= 1 && month <= 12 && day >= 1 && day <= 31 && hour > -1 && hour < 24 && minute > -1 && minute < 60 && second > -1 && second < 61 ) {
+                int pos = start + 19;
+                int millis = 0;
+
+                if( pos < len && ts.charAt(pos) == '.' ) {
+                    int scale = 100;
+
+                    pos++;
+                    while( pos < len && ts.charAt(pos) >= '0' && ts.charAt(pos) <= '9' ) {
+                        millis += (ts.charAt(pos) - '0') * scale;
+                        scale /= 10;
+                        pos++;
+                    }
+                }
+                int offset = offset(ts, pos, len);
+
+                if( offset != Integer.MIN_VALUE ) {
+                    long days = daysFromCivil(year, month, day);
+
+                    return (days * DAY) + (hour * 3600000L) + (minute * 60000L) + (second * 1000L) + millis - offset;
+                }
+            }
+        }
+        return fallback.get().parse(ts.substring(start, len)).getTime();
+    }
+
+    static private long daysFromCivil(int year, int month, int day) {
+        long y = (month <= 2 ? year - 1 : year);
+        long era = (y >= 0 ? y : y - 399) / 400;
+        int yoe = (int)(y - era * 400);
+        int doy = (153*(month + (month > 2 ? -3 : 9)) + 2)/5 + day - 1;
+        int doe = yoe*365 + yoe/4 - yoe/100 + doy;
+
+        return era * 146097L + doe - 719468L;
+    }
+
+    static private int digits(@Nonnull String ts, int pos, int count) {
+        int value = 0;
+
+        for( int i=pos; i<pos+count; i++ ) {
+            char c = ts.charAt(i);
+
+            if( c < '0' || c > '9' ) {
+                return -1;
+            }
+            value = value*10 + (c - '0');
+        }
+        return value;
+    }
+
+    static private long floorDiv(long x, long y) {
+        long q = x / y;
+
+        return ((x % y != 0 && (x < 0) != (y < 0)) ? q - 1 : q);
+    }
+
+    /**
+     * Reads the zone at the end of a timestamp.
+     * @return the offset from UTC in milliseconds, <code>Integer.MIN_VALUE</code> if the zone must be read by the fallback
+     */
+    static private int offset(@Nonnull String ts, int pos, int len) {
+        int remaining = len - pos;
+
+        if( remaining == 1 && ts.charAt(pos) == 'Z' ) {
+            return 0;
+        }
+        if( remaining >= 3 && (ts.regionMatches(true, pos, "UTC", 0, 3) || ts.regionMatches(true, pos, "GMT", 0, 3)) ) {
+            pos += 3;
+            remaining -= 3;
+            if( remaining == 0 ) {
+                return 0;
+            }
+        }
+        if( remaining != 5 && remaining != 6 ) {
+            return Integer.MIN_VALUE;
+        }
+        char sign = ts.charAt(pos);
+
+        if( sign != '+' && sign != '-' ) {
+            return Integer.MIN_VALUE;
+        }
+        int hours = digits(ts, pos+1, 2);
+        int minutes;
+
+        if( remaining == 6 ) {
+            if( ts.charAt(pos+3) != ':' ) {
+                return Integer.MIN_VALUE;
+            }
+            minutes = digits(ts, pos+4, 2);
+        }
+        else {
+            minutes = digits(ts, pos+3, 2);
+        }
+        if( hours < 0 || hours > 23 || minutes < 0 || minutes > 59 ) {
+            return Integer.MIN_VALUE;
+        }
+        int offset = (hours * 60 + minutes) * 60000;
+
+        return (sign == '-' ? -offset : offset);
+    }
+
+    static private void put(@Nonnull char[] out, int pos, int value, int width) {
+        for( int i=pos+width-1; i>=pos; i-- ) {
+            out[i] = (char)('0' + (value % 10));
+            value /= 10;
+        }
+    }
+}
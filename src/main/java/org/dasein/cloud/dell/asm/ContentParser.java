@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm;
+
+import org.dasein.cloud.InternalException;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parses the embedded content of the archives in an <code>enumerateArchive</code> response across several cores.
+ * The content of every archive is read from the response on the calling thread, since the DOM is not safe to read
+ * from several threads at once. The content is then split into contiguous runs that are parsed on a pool shared by
+ * the JVM, with the calling thread parsing the first run itself. Each topology is written to the slot of its
+ * archive, so the results come back in document order.
+ * <p>
+ *     The pool holds one thread per available processor. Parses go through the {@link TopologyCache}, so content
+ *     already parsed by an earlier listing is not parsed again.
+ * </p>
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class ContentParser {
+    static private ExecutorService pool;
+
+    static private synchronized @Nonnull ExecutorService getPool() {
+        if( pool == null ) {
+            pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ASMThreadFactory("content"));
+        }
+        return pool;
+    }
+
+    /**
+     * Reads the embedded content of an archive.
+     * @param archive the archive element of an <code>enumerateArchive</code> response
+     * @return the trimmed content of the archive, null if it has none
+     */
+    static public @Nullable String getContent(@Nonnull Node archive) {
+        NodeList items = archive.getChildNodes();
+
+        for( int i=0; i<items.getLength(); i++ ) {
+            Node n = items.item(i);
+
+            if( n.getNodeType() != Node.TEXT_NODE && n.getNodeName().equalsIgnoreCase("content") && n.hasChildNodes() ) {
+                String xml = n.getFirstChild().getNodeValue();
+
+                return (xml == null ? null : xml.trim());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses the embedded content of every archive in a list.
+     * @param archives the archive elements of an <code>enumerateArchive</code> response
+     * @param parallelism the maximum number of threads to parse on, including the calling thread
+     * @return the parsed content of each archive in the order of the list, with null for archives having no content
+     * @throws InternalException the content of an archive is not well-formed XML
+     */
+    static public @Nonnull ParsedTopology[] parse(@Nonnull NodeList archives, @Nonnegative int parallelism) throws InternalException {
+        final String[] contents = new String[archives.getLength()];
+        final ParsedTopology[] topologies = new ParsedTopology[contents.length];
+
+        for( int i=0; i<contents.length; i++ ) {
+            contents[i] = getContent(archives.item(i));
+        }
+        int runs = Math.max(1, Math.min(parallelism, contents.length));
+        int runLength = (contents.length + runs - 1) / runs;
+        ArrayList<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+        for( int start=runLength; start<contents.length; start += runLength ) {
+            final int from = start;
+            final int to = Math.min(start + runLength, contents.length);
+
+            futures.add(getPool().submit(new Callable<Void>() {
+                @Override
+                public Void call() throws InternalException {
+                    parse(contents, topologies, from, to);
+                    return null;
+                }
+            }));
+        }
+        InternalException error = null;
+
+        try {
+            parse(contents, topologies, 0, Math.min(runLength, contents.length));
+        }
+        catch( InternalException e ) {
+            error = e;
+        }
+        for( Future<Void> f : futures ) {
+            try {
+                f.get();
+            }
+            catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                if( error == null ) {
+                    error = new InternalException(e);
+                }
+            }
+            catch( ExecutionException e ) {
+                if( error == null ) {
+                    Throwable cause = e.getCause();
+
+                    error = (cause instanceof InternalException ? (InternalException)cause : new InternalException(cause));
+                }
+            }
+        }
+        if( error != null ) {
+            throw error;
+        }
+        return topologies;
+    }
+
+    static private void parse(@Nonnull String[] contents, @Nonnull ParsedTopology[] topologies, int from, int to) throws InternalException {
+        TopologyCache cache = TopologyCache.getInstance();
+
+        for( int i=from; i<to; i++ ) {
+            if( contents[i] != null ) {
+                long parsing = System.nanoTime();
+
+                topologies[i] = cache.parse(contents[i]);
+                if( ASMEvents.isEnabled() ) {
+                    ASMEvents.contentParsed("archive", contents[i].length(), System.nanoTime() - parsing);
+                }
+            }
+        }
+    }
+}
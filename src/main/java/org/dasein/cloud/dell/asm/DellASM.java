@@ -25,10 +25,12 @@ import org.dasein.cloud.AbstractCloud;
 import org.dasein.cloud.ProviderContext;
 import org.dasein.cloud.dell.asm.ci.ASMCIServices;
 import org.dasein.cloud.dell.asm.compute.ASMComputeServices;
+import org.dasein.util.CalendarWrapper;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.text.ParseException;
 import java.util.Properties;
 
 /**
@@ -79,11 +81,41 @@ public class DellASM extends AbstractCloud {
         return Logger.getLogger("dasein.cloud.dell.asm.wire." + getLastItem(cls.getPackage().getName()) + "." + getLastItem(cls.getName()));
     }
 
+    /**
+     * Identifies the Dell ASM account and region a context points at. State shared among the support objects for a
+     * given context (such as pollers) is keyed by this value.
+     * @param ctx the context being identified
+     * @return a key unique to the endpoint, account, and region of the context
+     */
+    static public @Nonnull String getContextKey(@Nonnull ProviderContext ctx) {
+        return ctx.getEndpoint() + "#" + ctx.getAccountNumber() + "#" + ctx.getRegionId();
+    }
+
+    /**
+     * Reads a timestamp written by Dell ASM.
+     * @param ts the timestamp
+     * @return the timestamp in milliseconds since the epoch, zero if it cannot be read
+     */
     static public @Nonnegative long parseTimestamp(@Nonnull String ts) {
-        //
-        return 0L;
+        try {
+            return ASMTimestamps.parse(ts);
+        }
+        catch( ParseException e ) {
+            logger.warn("Unable to parse timestamp " + ts + ": " + e.getMessage());
+            return 0L;
+        }
     }
 
+    private volatile long            inventoryMaximumAge = Long.getLong("dasein.asm.inventory.maximumAge", 0L);
+    private volatile int             mappingParallelism = Integer.getInteger("dasein.asm.mapping.parallelism", 1);
+    private volatile ReplayTransport replayTransport;
+    private final SlowCallLog        slowCalls = new SlowCallLog();
+    private volatile long            snapshotMaximumAge = Long.getLong("dasein.asm.snapshot.maximumAge", 5L * CalendarWrapper.MINUTE);
+    private volatile long            snapshotStaleness  = Long.getLong("dasein.asm.snapshot.staleness", 0L);
+    private final StringInterner     strings   = new StringInterner();
+    private volatile boolean         tolerantListing = Boolean.getBoolean("dasein.asm.listing.tolerant");
+    private volatile WireRecorder    wireRecorder;
+
     public DellASM(){
         Properties props = new Properties();
         props.setProperty("resource.loader", "class");
@@ -119,6 +151,134 @@ public class DellASM extends AbstractCloud {
         return "Dell ASM";
     }
 
+    /**
+     * @return the age in milliseconds up to which single virtual machine lookups and inventory queries are answered from the last listing
+     */
+    public @Nonnegative long getInventoryMaximumAge() {
+        return inventoryMaximumAge;
+    }
+
+    /**
+     * @return the number of threads over which archive listings parse their embedded content, one for serial parsing
+     */
+    public @Nonnegative int getMappingParallelism() {
+        return mappingParallelism;
+    }
+
+    /**
+     * @return the transport answering calls from a recording in place of Dell ASM, null if calls go to Dell ASM
+     */
+    public @Nullable ReplayTransport getReplayTransport() {
+        return replayTransport;
+    }
+
+    /**
+     * @return the log of calls made through this provider that exceeded their latency thresholds
+     */
+    public @Nonnull SlowCallLog getSlowCallLog() {
+        return slowCalls;
+    }
+
+    /**
+     * @return the age in milliseconds past which a listing snapshot is too old to serve and listings wait for a fresh one
+     */
+    public @Nonnegative long getSnapshotMaximumAge() {
+        return snapshotMaximumAge;
+    }
+
+    /**
+     * @return the age in milliseconds past which a served listing snapshot is revalidated, zero if listings are not served from snapshots
+     */
+    public @Nonnegative long getSnapshotStaleness() {
+        return snapshotStaleness;
+    }
+
+    /**
+     * @return the pool through which the mappers share the strings repeated across the resources of this provider
+     */
+    public @Nonnull StringInterner getStringInterner() {
+        return strings;
+    }
+
+    /**
+     * @return the recorder capturing every exchange made through this provider, null if none is being recorded
+     */
+    public @Nullable WireRecorder getWireRecorder() {
+        return wireRecorder;
+    }
+
+    /**
+     * @return true if virtual machine listings skip reservations whose topologies cannot be read rather than failing
+     */
+    public boolean isTolerantListing() {
+        return tolerantListing;
+    }
+
+    /**
+     * Bounds how old the last listing may be for {@link org.dasein.cloud.dell.asm.compute.VirtualVM#getVirtualMachine(String)}
+     * and inventory queries to be answered from it rather than from a new listing. The default is read from the
+     * <code>dasein.asm.inventory.maximumAge</code> system property and is zero unless set.
+     * @param inventoryMaximumAge the age in milliseconds, zero to always list anew
+     */
+    public void setInventoryMaximumAge(@Nonnegative long inventoryMaximumAge) {
+        this.inventoryMaximumAge = Math.max(0L, inventoryMaximumAge);
+    }
+
+    /**
+     * Spreads the parsing of embedded archive content in archive listings over several threads. The default is read
+     * from the <code>dasein.asm.mapping.parallelism</code> system property and is serial unless set.
+     * @param mappingParallelism the number of threads to parse on, one or less for serial parsing
+     */
+    public void setMappingParallelism(int mappingParallelism) {
+        this.mappingParallelism = Math.max(1, mappingParallelism);
+    }
+
+    /**
+     * Answers all calls made through this provider from a recording instead of Dell ASM.
+     * @param replayTransport the transport serving the recording, null to resume calling Dell ASM
+     */
+    public void setReplayTransport(@Nullable ReplayTransport replayTransport) {
+        this.replayTransport = replayTransport;
+    }
+
+    /**
+     * Bounds the age of the listing snapshots served in place of fresh listings. The default is read from the
+     * <code>dasein.asm.snapshot.maximumAge</code> system property and is five minutes unless set.
+     * @param snapshotMaximumAge the age in milliseconds past which a listing waits for a fresh snapshot
+     */
+    public void setSnapshotMaximumAge(@Nonnegative long snapshotMaximumAge) {
+        this.snapshotMaximumAge = Math.max(0L, snapshotMaximumAge);
+    }
+
+    /**
+     * Serves virtual machine, image, and topology listings from the last good snapshot of each listing, revalidating a
+     * snapshot in the background once it is older than the staleness bound. See {@link SnapshotCache}. The default
+     * is read from the <code>dasein.asm.snapshot.staleness</code> system property and is off unless set.
+     * @param snapshotStaleness the age in milliseconds past which a served snapshot is revalidated, zero to always list fresh
+     */
+    public void setSnapshotStaleness(@Nonnegative long snapshotStaleness) {
+        this.snapshotStaleness = Math.max(0L, snapshotStaleness);
+    }
+
+    /**
+     * Makes virtual machine listings tolerate reservations whose topologies cannot be read. A tolerant listing returns
+     * the virtual machines it could resolve, holds the virtual machines of failed reservations as they were last
+     * listed, and reports the failures through {@link org.dasein.cloud.dell.asm.compute.VMInventory#getFailures()}.
+     * The default is read from the <code>dasein.asm.listing.tolerant</code> system property and is strict unless set.
+     * @param tolerantListing true to tolerate failed reservations, false to fail the listing on the first one
+     */
+    public void setTolerantListing(boolean tolerantListing) {
+        this.tolerantListing = tolerantListing;
+    }
+
+    /**
+     * Records every exchange made through this provider.
+     * @param wireRecorder the recorder capturing the exchanges, null to stop recording
+     */
+    public void setWireRecorder(@Nullable WireRecorder wireRecorder) {
+        this.wireRecorder = wireRecorder;
+    }
+
     @Override
     public @Nullable String testContext() {
         if( logger.isTraceEnabled() ) {
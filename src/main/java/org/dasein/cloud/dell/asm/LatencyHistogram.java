@@ -0,0 +1,175 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm;
+
+import javax.annotation.Nonnegative;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free, log-linear histogram of latencies in nanoseconds. Each power of two is split into
+ * {@link #SUB_BUCKETS} equal buckets, so any recorded value is reported to within about 3% of its true value no
+ * matter its magnitude. Recording is a single atomic increment, making it safe to call on every request.
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class LatencyHistogram {
+    static private final int SUB_BITS    = 5;
+    static public final int  SUB_BUCKETS = 1 << SUB_BITS;
+    static private final int BUCKETS     = SUB_BUCKETS + (63 - SUB_BITS) * SUB_BUCKETS;
+
+    static private int indexOf(long value) {
+        if( value < SUB_BUCKETS ) {
+            return (int)value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BITS;
+
+        return SUB_BUCKETS + (shift * SUB_BUCKETS) + (int)((value >>> shift) - SUB_BUCKETS);
+    }
+
+    static private long lowerBound(int index) {
+        if( index < SUB_BUCKETS ) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        long sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+
+        return (SUB_BUCKETS + sub) << shift;
+    }
+
+    static private long midpoint(int index) {
+        if( index < SUB_BUCKETS ) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+
+        return lowerBound(index) + ((1L << shift) >>> 1);
+    }
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong      max    = new AtomicLong(0L);
+    private final AtomicLong      total  = new AtomicLong(0L);
+
+    /**
+     * Records a single latency.
+     * @param nanos the latency in nanoseconds; negative values are recorded as zero
+     */
+    public void record(long nanos) {
+        if( nanos < 0L ) {
+            nanos = 0L;
+        }
+        counts.incrementAndGet(indexOf(nanos));
+        total.addAndGet(nanos);
+        long m = max.get();
+
+        while( nanos > m && !max.compareAndSet(m, nanos) ) {
+            m = max.get();
+        }
+    }
+
+    /**
+     * Clears all recorded values. Values recorded concurrently with a reset may or may not survive it.
+     */
+    public void reset() {
+        for( int i=0; i<BUCKETS; i++ ) {
+            counts.set(i, 0L);
+        }
+        total.set(0L);
+        max.set(0L);
+    }
+
+    /**
+     * @return a point-in-time copy of the histogram suitable for computing percentiles
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0L;
+
+        for( int i=0; i<BUCKETS; i++ ) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, total.get(), max.get());
+    }
+
+    /**
+     * An immutable copy of a histogram.
+     */
+    static public class Snapshot {
+        private final long[] counts;
+        private final long   count;
+        private final long   max;
+        private final long   total;
+
+        Snapshot(long[] counts, long count, long total, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.total = total;
+            this.max = max;
+        }
+
+        /**
+         * @return the number of recorded values
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the largest recorded value in nanoseconds
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @return the mean of the recorded values in nanoseconds, zero if nothing has been recorded
+         */
+        public long getMean() {
+            return (count == 0L ? 0L : total/count);
+        }
+
+        /**
+         * Estimates the value at the specified percentile.
+         * @param percentile the percentile, from 0 to 100
+         * @return the estimated value in nanoseconds, zero if nothing has been recorded
+         */
+        public long getPercentile(@Nonnegative double percentile) {
+            if( count == 0L ) {
+                return 0L;
+            }
+            long rank = (long)Math.ceil((Math.min(percentile, 100.0)/100.0) * count);
+            long seen = 0L;
+
+            if( rank < 1L ) {
+                rank = 1L;
+            }
+            for( int i=0; i<counts.length; i++ ) {
+                seen += counts[i];
+                if( seen >= rank ) {
+                    return Math.min(midpoint(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and a latency histogram for a single Dell ASM API operation. Instances are created and registered with
+ * JMX by {@link ASMMetrics}; every call through {@link APIHandler#post(String, String)} is recorded against the
+ * metrics for its operation.
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+    static private final double NANOS_PER_MILLI = 1000000.0;
+
+    private final AtomicLong                          bytesReceived = new AtomicLong(0L);
+    private final AtomicLong                          bytesSent     = new AtomicLong(0L);
+    private final AtomicLong                          errors        = new AtomicLong(0L);
+    private final ConcurrentHashMap<String,AtomicLong> errorsByCode = new ConcurrentHashMap<String, AtomicLong>();
+    private final LatencyHistogram                    latency       = new LatencyHistogram();
+    private final String                              operation;
+    private final AtomicLong[]                        phaseCounts   = newCounters(PhaseTimings.Phase.values().length);
+    private final AtomicLong[]                        phaseNanos    = newCounters(PhaseTimings.Phase.values().length);
+    private final AtomicLong                          requests      = new AtomicLong(0L);
+
+    static private @Nonnull AtomicLong[] newCounters(int count) {
+        AtomicLong[] counters = new AtomicLong[count];
+
+        for( int i=0; i<count; i++ ) {
+            counters[i] = new AtomicLong(0L);
+        }
+        return counters;
+    }
+
+    OperationMetrics(@Nonnull String operation) {
+        this.operation = operation;
+    }
+
+    void addBytesReceived(@Nonnegative long bytes) {
+        bytesReceived.addAndGet(bytes);
+    }
+
+    void addPhase(@Nonnull PhaseTimings.Phase phase, @Nonnegative long nanos) {
+        phaseNanos[phase.ordinal()].addAndGet(nanos);
+        phaseCounts[phase.ordinal()].incrementAndGet();
+    }
+
+    void addBytesSent(@Nonnegative long bytes) {
+        bytesSent.addAndGet(bytes);
+    }
+
+    /**
+     * Records the completion of a call.
+     * @param nanos the time taken by the call in nanoseconds
+     * @param errorCode the DRL error code (or other failure classification) if the call failed, null if it succeeded
+     */
+    void record(long nanos, @Nullable String errorCode) {
+        requests.incrementAndGet();
+        latency.record(nanos);
+        if( errorCode != null ) {
+            errors.incrementAndGet();
+            AtomicLong count = errorsByCode.get(errorCode);
+
+            if( count == null ) {
+                AtomicLong existing = errorsByCode.putIfAbsent(errorCode, count = new AtomicLong(0L));
+
+                if( existing != null ) {
+                    count = existing;
+                }
+            }
+            count.incrementAndGet();
+        }
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    @Override
+    public String getErrorCounts() {
+        StringBuilder str = new StringBuilder();
+
+        for( Map.Entry<String,Long> entry : snapshot().getErrorsByCode().entrySet() ) {
+            if( str.length() > 0 ) {
+                str.append(",");
+            }
+            str.append(entry.getKey()).append("=").append(entry.getValue());
+        }
+        return str.toString();
+    }
+
+    @Override
+    public double getLatencyMaxMillis() {
+        return latency.snapshot().getMax()/NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getLatencyMeanMillis() {
+        return latency.snapshot().getMean()/NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getLatencyP50Millis() {
+        return latency.snapshot().getPercentile(50.0)/NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getLatencyP99Millis() {
+        return latency.snapshot().getPercentile(99.0)/NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getLatencyP999Millis() {
+        return latency.snapshot().getPercentile(99.9)/NANOS_PER_MILLI;
+    }
+
+    @Override
+    public String getOperation() {
+        return operation;
+    }
+
+    @Override
+    public String getPhaseBreakdown() {
+        StringBuilder str = new StringBuilder();
+
+        for( Map.Entry<PhaseTimings.Phase,Double> entry : snapshot().getPhaseMeans().entrySet() ) {
+            if( str.length() > 0 ) {
+                str.append(",");
+            }
+            str.append(entry.getKey().name().toLowerCase()).append("=").append(entry.getValue()/NANOS_PER_MILLI);
+        }
+        return str.toString();
+    }
+
+    @Override
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    @Override
+    public void reset() {
+        requests.set(0L);
+        errors.set(0L);
+        errorsByCode.clear();
+        bytesSent.set(0L);
+        bytesReceived.set(0L);
+        latency.reset();
+        for( int i=0; i<phaseNanos.length; i++ ) {
+            phaseNanos[i].set(0L);
+            phaseCounts[i].set(0L);
+        }
+    }
+
+    /**
+     * @return a point-in-time copy of these metrics
+     */
+    public @Nonnull Snapshot snapshot() {
+        TreeMap<String,Long> codes = new TreeMap<String, Long>();
+
+        for( Map.Entry<String,AtomicLong> entry : errorsByCode.entrySet() ) {
+            codes.put(entry.getKey(), entry.getValue().get());
+        }
+        EnumMap<PhaseTimings.Phase,Double> phases = new EnumMap<PhaseTimings.Phase, Double>(PhaseTimings.Phase.class);
+
+        for( PhaseTimings.Phase p : PhaseTimings.Phase.values() ) {
+            long count = phaseCounts[p.ordinal()].get();
+
+            if( count > 0L ) {
+                phases.put(p, ((double)phaseNanos[p.ordinal()].get())/count);
+            }
+        }
+        return new Snapshot(operation, requests.get(), errors.get(), codes, bytesSent.get(), bytesReceived.get(), latency.snapshot(), phases);
+    }
+
+    /**
+     * An immutable copy of the metrics for an operation.
+     */
+    static public class Snapshot {
+        private final long                      bytesReceived;
+        private final long                      bytesSent;
+        private final long                      errors;
+        private final Map<String,Long>          errorsByCode;
+        private final LatencyHistogram.Snapshot latency;
+        private final String                    operation;
+        private final Map<PhaseTimings.Phase,Double> phaseMeans;
+        private final long                      requests;
+
+        Snapshot(@Nonnull String operation, long requests, long errors, @Nonnull Map<String,Long> errorsByCode, long bytesSent, long bytesReceived, @Nonnull LatencyHistogram.Snapshot latency, @Nonnull Map<PhaseTimings.Phase,Double> phaseMeans) {
+            this.operation = operation;
+            this.requests = requests;
+            this.errors = errors;
+            this.errorsByCode = Collections.unmodifiableMap(errorsByCode);
+            this.bytesSent = bytesSent;
+            this.bytesReceived = bytesReceived;
+            this.latency = latency;
+            this.phaseMeans = Collections.unmodifiableMap(phaseMeans);
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived;
+        }
+
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        public long getErrorCount() {
+            return errors;
+        }
+
+        /**
+         * @return the number of failed calls by DRL error code
+         */
+        public @Nonnull Map<String,Long> getErrorsByCode() {
+            return errorsByCode;
+        }
+
+        /**
+         * @return the latency distribution in nanoseconds
+         */
+        public @Nonnull LatencyHistogram.Snapshot getLatency() {
+            return latency;
+        }
+
+        public @Nonnull String getOperation() {
+            return operation;
+        }
+
+        /**
+         * @return the mean time in nanoseconds spent in each phase of a call, for the phases that have been observed
+         */
+        public @Nonnull Map<PhaseTimings.Phase,Double> getPhaseMeans() {
+            return phaseMeans;
+        }
+
+        public long getRequestCount() {
+            return requests;
+        }
+
+        @Override
+        public @Nonnull String toString() {
+            return operation + " [requests=" + requests + ", errors=" + errors + ", p50=" + latency.getPercentile(50.0)/NANOS_PER_MILLI + "ms, p99=" + latency.getPercentile(99.0)/NANOS_PER_MILLI + "ms, p999=" + latency.getPercentile(99.9)/NANOS_PER_MILLI + "ms]";
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm;
+
+/**
+ * JMX management interface for the metrics of a single Dell ASM API operation. Latencies are reported in milliseconds.
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public interface OperationMetricsMBean {
+    public long getBytesReceived();
+
+    public long getBytesSent();
+
+    public long getErrorCount();
+
+    /**
+     * @return the error counts by DRL error code, formatted as <code>code=count</code> pairs separated by commas
+     */
+    public String getErrorCounts();
+
+    public double getLatencyMaxMillis();
+
+    public double getLatencyMeanMillis();
+
+    public double getLatencyP50Millis();
+
+    public double getLatencyP99Millis();
+
+    public double getLatencyP999Millis();
+
+    public String getOperation();
+
+    /**
+     * @return the mean milliseconds spent in each phase of a call, formatted as <code>phase=millis</code> pairs separated by commas
+     */
+    public String getPhaseBreakdown();
+
+    public long getRequestCount();
+
+    public void reset();
+}
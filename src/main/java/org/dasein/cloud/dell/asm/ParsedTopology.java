@@ -0,0 +1,482 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.dell.asm;
+
+import org.dasein.cloud.InternalException;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * A compact, immutable form of the topology documents Dell ASM embeds in archive content and
+ * <code>readTopology</code> responses. The document is streamed once into a device table and an attribute table
+ * indexed by device, so no DOM is held while the virtual machine, topology, and machine image mappers run.
+ * Enforced properties are held in primitive arrays and the small vocabulary of models and attribute names is interned.
+ * <p>
+ *     Attribute values are kept as text. A value made up of <code>element</code> entries (as in the
+ *     <code>AL_OSImages</code> attribute) yields one value per entry, formed from its <code>name</code> and
+ *     <code>path</code>. Instances are safe to share among threads, so a parsed topology may be cached.
+ * </p>
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class ParsedTopology {
+    /**
+     * The value of an enforced property that is not present on a device.
+     */
+    static public final int UNSET   = -1;
+    /**
+     * The value of an enforced property that is present but not an integer.
+     */
+    static public final int INVALID = Integer.MIN_VALUE;
+
+    static private final String[]       NO_VALUES = new String[0];
+    static private final XMLInputFactory factory;
+
+    static {
+        factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    }
+
+    /**
+     * Parses a topology document.
+     * @param xml the topology document
+     * @return the parsed topology
+     * @throws InternalException the document is not well-formed XML
+     */
+    static public @Nonnull ParsedTopology parse(@Nonnull String xml) throws InternalException {
+        XMLStreamReader reader = null;
+
+        try {
+            synchronized( factory ) {
+                reader = factory.createXMLStreamReader(new StringReader(xml));
+            }
+            return new Builder().build(reader);
+        }
+        catch( XMLStreamException e ) {
+            throw new InternalException(e);
+        }
+        finally {
+            if( reader != null ) {
+                try { reader.close(); }
+                catch( XMLStreamException ignore ) { }
+            }
+        }
+    }
+
+    static private int toInt(@Nullable String value) {
+        if( value == null ) {
+            return UNSET;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        }
+        catch( NumberFormatException e ) {
+            return INVALID;
+        }
+    }
+
+    static private @Nullable String trim(@Nullable String value) {
+        return (value == null ? null : value.trim());
+    }
+
+    static private class Builder {
+        final ArrayList<String>   deviceKeys   = new ArrayList<String>();
+        final ArrayList<String>   deviceNames  = new ArrayList<String>();
+        final ArrayList<String>   descriptions = new ArrayList<String>();
+        final ArrayList<String>   models       = new ArrayList<String>();
+        final ArrayList<int[]>    properties   = new ArrayList<int[]>();
+        final ArrayList<String[]> rawValues    = new ArrayList<String[]>();
+
+        final ArrayList<String>   attributeNames = new ArrayList<String>();
+        final ArrayList<String>   attributeRefs  = new ArrayList<String>();
+        final ArrayList<String[]> values         = new ArrayList<String[]>();
+
+        @Nonnull ParsedTopology build(@Nonnull XMLStreamReader reader) throws XMLStreamException {
+            int topologyDepth = -1, depth = 0;
+            int[] device = null;
+            String[] raw = null;
+            ArrayList<String> attributeValues = null;
+            StringBuilder text = null;
+            boolean elements = false;
+
+            while( reader.hasNext() ) {
+                int event = reader.next();
+
+                if( event == XMLStreamConstants.START_ELEMENT ) {
+                    String name = reader.getLocalName();
+
+                    depth++;
+                    if( topologyDepth < 0 ) {
+                        if( name.equalsIgnoreCase("topology") ) {
+                            topologyDepth = depth;
+                        }
+                    }
+                    else if( depth == topologyDepth + 1 && name.equalsIgnoreCase("device") ) {
+                        String model = trim(reader.getAttributeValue(null, "model"));
+
+                        deviceKeys.add(trim(reader.getAttributeValue(null, "key")));
+                        deviceNames.add(trim(reader.getAttributeValue(null, "name")));
+                        descriptions.add(trim(reader.getAttributeValue(null, "description")));
+                        models.add(model == null ? null : model.toLowerCase(Locale.ENGLISH).intern());
+                        device = new int[] { UNSET, UNSET, UNSET };
+                        properties.add(device);
+                        raw = new String[2];
+                        rawValues.add(raw);
+                    }
+                    else if( depth == topologyDepth + 1 && name.equalsIgnoreCase("attribute") ) {
+                        String n = trim(reader.getAttributeValue(null, "name"));
+
+                        attributeNames.add(n == null ? null : n.intern());
+                        attributeRefs.add(trim(reader.getAttributeValue(null, "refs")));
+                        attributeValues = new ArrayList<String>();
+                    }
+                    else if( device != null && name.equalsIgnoreCase("property") ) {
+                        String n = reader.getAttributeValue(null, "name");
+                        String value = trim(reader.getAttributeValue(null, "value"));
+                        int v = toInt(value);
+
+                        if( n == null ) {
+                            continue;
+                        }
+                        if( n.equalsIgnoreCase("cpu") ) {
+                            device[0] = v;
+                            raw[0] = value;
+                        }
+                        else if( n.equalsIgnoreCase("ram") ) {
+                            device[1] = v;
+                            raw[1] = value;
+                        }
+                        else if( n.equalsIgnoreCase("servercount") ) {
+                            device[2] = v;
+                        }
+                    }
+                    else if( attributeValues != null && name.equalsIgnoreCase("value") ) {
+                        text = new StringBuilder();
+                        elements = false;
+                    }
+                    else if( text != null && name.equalsIgnoreCase("element") ) {
+                        String n = trim(reader.getAttributeValue(null, "name"));
+                        String p = trim(reader.getAttributeValue(null, "path"));
+                        StringBuilder entry = new StringBuilder();
+
+                        if( n != null ) {
+                            entry.append(n);
+                        }
+                        if( p != null ) {
+                            entry.append(" ").append(p);
+                        }
+                        attributeValues.add(entry.toString());
+                        elements = true;
+                    }
+                }
+                else if( event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA ) {
+                    if( text != null ) {
+                        text.append(reader.getText());
+                    }
+                }
+                else if( event == XMLStreamConstants.END_ELEMENT ) {
+                    String name = reader.getLocalName();
+
+                    if( depth == topologyDepth ) {
+                        topologyDepth = -1;
+                    }
+                    else if( depth == topologyDepth + 1 ) {
+                        if( device != null && name.equalsIgnoreCase("device") ) {
+                            device = null;
+                            raw = null;
+                        }
+                        else if( attributeValues != null && name.equalsIgnoreCase("attribute") ) {
+                            values.add(attributeValues.isEmpty() ? NO_VALUES : attributeValues.toArray(new String[attributeValues.size()]));
+                            attributeValues = null;
+                        }
+                    }
+                    else if( text != null && name.equalsIgnoreCase("value") ) {
+                        String v = text.toString().trim();
+
+                        if( !elements && v.length() > 0 ) {
+                            attributeValues.add(v);
+                        }
+                        text = null;
+                    }
+                    depth--;
+                }
+            }
+            return new ParsedTopology(this);
+        }
+    }
+
+    private final String[] attributeNames;
+    private final String[] attributeRefs;
+    private final int[]    attributeDevices;
+    private final int[][]  deviceAttributes;
+    private final String[] descriptions;
+    private final int[]    cpuCounts;
+    private final String[] cpuValues;
+    private final String[] deviceKeys;
+    private final String[] deviceNames;
+    private final String[] models;
+    private final int[]    ramInMb;
+    private final String[] ramValues;
+    private final int[]    serverCounts;
+    private final String[][] values;
+
+    private ParsedTopology(@Nonnull Builder b) {
+        int count = b.deviceKeys.size();
+        HashMap<String,Integer> index = new HashMap<String, Integer>();
+
+        deviceKeys = b.deviceKeys.toArray(new String[count]);
+        deviceNames = b.deviceNames.toArray(new String[count]);
+        descriptions = b.descriptions.toArray(new String[count]);
+        models = b.models.toArray(new String[count]);
+        cpuCounts = new int[count];
+        cpuValues = new String[count];
+        ramInMb = new int[count];
+        ramValues = new String[count];
+        serverCounts = new int[count];
+        for( int i=0; i<count; i++ ) {
+            int[] p = b.properties.get(i);
+
+            String[] raw = b.rawValues.get(i);
+
+            cpuCounts[i] = p[0];
+            cpuValues[i] = raw[0];
+            ramInMb[i] = p[1];
+            ramValues[i] = raw[1];
+            serverCounts[i] = p[2];
+            if( deviceKeys[i] != null && !index.containsKey(deviceKeys[i]) ) {
+                index.put(deviceKeys[i], i);
+            }
+        }
+        count = b.attributeNames.size();
+        attributeNames = b.attributeNames.toArray(new String[count]);
+        attributeRefs = b.attributeRefs.toArray(new String[count]);
+        values = b.values.toArray(new String[count][]);
+        attributeDevices = new int[count];
+        deviceAttributes = new int[deviceKeys.length][];
+
+        int[] perDevice = new int[deviceKeys.length];
+
+        for( int i=0; i<count; i++ ) {
+            Integer d = (attributeRefs[i] == null ? null : index.get(attributeRefs[i]));
+
+            attributeDevices[i] = (d == null ? -1 : d);
+            if( d != null ) {
+                perDevice[d]++;
+            }
+        }
+        for( int d=0; d<deviceKeys.length; d++ ) {
+            deviceAttributes[d] = new int[perDevice[d]];
+            perDevice[d] = 0;
+        }
+        for( int i=0; i<count; i++ ) {
+            int d = attributeDevices[i];
+
+            if( d > -1 ) {
+                deviceAttributes[d][perDevice[d]++] = i;
+            }
+        }
+    }
+
+    /**
+     * @return the number of attributes in the topology
+     */
+    public int getAttributeCount() {
+        return attributeNames.length;
+    }
+
+    /**
+     * @param device the index of the device
+     * @return the indexes of the attributes referring to the device in document order
+     */
+    public @Nonnull int[] getAttributes(@Nonnegative int device) {
+        int[] a = deviceAttributes[device];
+
+        return (a.length == 0 ? a : Arrays.copyOf(a, a.length));
+    }
+
+    /**
+     * @param attribute the index of the attribute
+     * @return the index of the device the attribute refers to, -1 if it refers to no device in the topology
+     */
+    public int getAttributeDevice(@Nonnegative int attribute) {
+        return attributeDevices[attribute];
+    }
+
+    /**
+     * @param attribute the index of the attribute
+     * @return the name of the attribute as given in the document
+     */
+    public @Nullable String getAttributeName(@Nonnegative int attribute) {
+        return attributeNames[attribute];
+    }
+
+    /**
+     * @param attribute the index of the attribute
+     * @return the key of the device the attribute refers to, as given in the document
+     */
+    public @Nullable String getAttributeRefs(@Nonnegative int attribute) {
+        return attributeRefs[attribute];
+    }
+
+    /**
+     * @param attribute the index of the attribute
+     * @return the non-empty values of the attribute in document order
+     */
+    public @Nonnull String[] getAttributeValues(@Nonnegative int attribute) {
+        String[] v = values[attribute];
+
+        return (v.length == 0 ? v : Arrays.copyOf(v, v.length));
+    }
+
+    /**
+     * @param device the index of the device
+     * @return the enforced CPU count of the device, {@link #UNSET} or {@link #INVALID} if it has no usable value
+     */
+    public int getCpuCount(@Nonnegative int device) {
+        return cpuCounts[device];
+    }
+
+    /**
+     * @param device the index of the device
+     * @return the enforced CPU value of the device as given in the document, trimmed, null if it is not present
+     */
+    public @Nullable String getCpuValue(@Nonnegative int device) {
+        return cpuValues[device];
+    }
+
+    /**
+     * @return the number of devices in the topology
+     */
+    public int getDeviceCount() {
+        return deviceKeys.length;
+    }
+
+    /**
+     * @param device the index of the device
+     * @return the description of the device
+     */
+    public @Nullable String getDeviceDescription(@Nonnegative int device) {
+        return descriptions[device];
+    }
+
+    /**
+     * @param device the index of the device
+     * @return the key of the device
+     */
+    public @Nullable String getDeviceKey(@Nonnegative int device) {
+        return deviceKeys[device];
+    }
+
+    /**
+     * @param device the index of the device
+     * @return the model of the device in lower case
+     */
+    public @Nullable String getDeviceModel(@Nonnegative int device) {
+        return models[device];
+    }
+
+    /**
+     * @param device the index of the device
+     * @return the name of the device
+     */
+    public @Nullable String getDeviceName(@Nonnegative int device) {
+        return deviceNames[device];
+    }
+
+    /**
+     * @param device the index of the device
+     * @return the enforced RAM of the device in megabytes, {@link #UNSET} or {@link #INVALID} if it has no usable value
+     */
+    public int getRamInMb(@Nonnegative int device) {
+        return ramInMb[device];
+    }
+
+    /**
+     * @param device the index of the device
+     * @return the enforced RAM value of the device as given in the document, trimmed, null if it is not present
+     */
+    public @Nullable String getRamValue(@Nonnegative int device) {
+        return ramValues[device];
+    }
+
+    /**
+     * @param device the index of the device
+     * @return the enforced server count of the device, {@link #UNSET} or {@link #INVALID} if it has no usable value
+     */
+    public int getServerCount(@Nonnegative int device) {
+        return serverCounts[device];
+    }
+
+    /**
+     * @param device the index of the device
+     * @param name the name of the attribute, matched without regard to case
+     * @return the last value of the last attribute with the specified name referring to the device, null if none exists
+     */
+    public @Nullable String getValue(@Nonnegative int device, @Nonnull String name) {
+        String value = null;
+
+        for( int i : deviceAttributes[device] ) {
+            if( name.equalsIgnoreCase(attributeNames[i]) && values[i].length > 0 ) {
+                value = values[i][values[i].length-1];
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @param key the key of a device
+     * @return the index of the first device with the specified key, -1 if none exists
+     */
+    public int indexOf(@Nonnull String key) {
+        for( int i=0; i<deviceKeys.length; i++ ) {
+            if( key.equals(deviceKeys[i]) ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if every device in the topology is a virtual machine
+     */
+    public boolean isAllVirtualMachines() {
+        for( String model : models ) {
+            if( !"virtualmachine".equals(model) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
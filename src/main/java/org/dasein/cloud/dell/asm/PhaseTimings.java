@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Breaks the time spent on a single Dell ASM call into its phases: merging the request template, setting up the
+ * connection, waiting on the server, downloading the body, parsing the XML, and mapping the parsed XML into Dasein Cloud
+ * objects. Every phase recorded here is also added to the per-operation aggregates in {@link OperationMetrics}.
+ * <p>
+ *     Template merging and mapping happen outside of {@link APIHandler#post(String, String)}, so they are tied to the
+ *     call through the calling thread: {@link APIHandler#merge(org.apache.velocity.Template, org.apache.velocity.VelocityContext, java.io.Writer)}
+ *     leaves its time for the next post on the same thread, and {@link #recordSince(Phase, long)} charges later work
+ *     to the most recent post made on the calling thread.
+ * </p>
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class PhaseTimings {
+    static public enum Phase { MERGE, CONNECT, SERVER, DOWNLOAD, PARSE, MAP }
+
+    static private final ThreadLocal<PhaseTimings> last         = new ThreadLocal<PhaseTimings>();
+    static private final ThreadLocal<long[]>       pendingMerge = new ThreadLocal<long[]>();
+
+    /**
+     * Charges time spent on the calling thread since the specified instant to the most recent call made on that
+     * thread. This is how work done on a response after {@link APIHandler#post(String, String)} returns, such as
+     * mapping or parsing embedded documents, is tied back to the call.
+     * @param phase the phase in which the time was spent
+     * @param startedNanos the value of {@link System#nanoTime()} when the work began
+     */
+    static public void recordSince(@Nonnull Phase phase, long startedNanos) {
+        PhaseTimings timings = last.get();
+
+        if( timings != null ) {
+            timings.record(phase, System.nanoTime() - startedNanos);
+        }
+    }
+
+    static void setPendingMerge(@Nonnegative long nanos) {
+        long[] pending = pendingMerge.get();
+
+        if( pending == null ) {
+            pending = new long[1];
+            pendingMerge.set(pending);
+        }
+        pending[0] = nanos;
+    }
+
+    /**
+     * Starts the timings for a call, picking up any template merge done on this thread since the last call.
+     * @param metrics the metrics for the operation being called
+     * @return the timings for the new call
+     */
+    static @Nonnull PhaseTimings start(@Nullable OperationMetrics metrics) {
+        PhaseTimings timings = new PhaseTimings(metrics);
+        long[] pending = pendingMerge.get();
+
+        if( pending != null && pending[0] > 0L ) {
+            timings.record(Phase.MERGE, pending[0]);
+            pending[0] = 0L;
+        }
+        last.set(timings);
+        return timings;
+    }
+
+    private final OperationMetrics metrics;
+    private final long[]           nanos = new long[Phase.values().length];
+
+    private PhaseTimings(@Nullable OperationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param phase the phase of interest
+     * @return the time spent in the phase in nanoseconds
+     */
+    public synchronized long get(@Nonnull Phase phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    /**
+     * @return the time spent in all recorded phases in nanoseconds
+     */
+    public synchronized long getTotal() {
+        long total = 0L;
+
+        for( long n : nanos ) {
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * Adds time to a phase of this call.
+     * @param phase the phase in which the time was spent
+     * @param elapsed the time spent in nanoseconds
+     */
+    public void record(@Nonnull Phase phase, long elapsed) {
+        if( elapsed < 0L ) {
+            return;
+        }
+        synchronized( this ) {
+            nanos[phase.ordinal()] += elapsed;
+        }
+        if( metrics != null ) {
+            metrics.addPhase(phase, elapsed);
+        }
+    }
+
+    @Override
+    public synchronized @Nonnull String toString() {
+        StringBuilder str = new StringBuilder();
+
+        for( Phase p : Phase.values() ) {
+            if( str.length() > 0 ) {
+                str.append(", ");
+            }
+            str.append(p.name().toLowerCase()).append("=").append(nanos[p.ordinal()]/1000000L).append("ms");
+        }
+        return str.toString();
+    }
+}
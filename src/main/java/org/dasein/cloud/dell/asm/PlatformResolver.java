@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm;
+
+import org.dasein.cloud.compute.Architecture;
+import org.dasein.cloud.compute.Platform;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the platform guessed for the operating system strings found in OS image attributes and guest types. A lab
+ * holds only a few dozen distinct strings, so each is guessed once and every later device bearing it is resolved with a
+ * single lookup. The guesses are pure functions of the string, so one resolver serves every provider in the JVM.
+ * <p>
+ *     The memo holds at most {@link #MAXIMUM_SIZE} strings and evicts the least recently used string when full.
+ *     Strings that are unique to a single resource, such as archive names, should be guessed with
+ *     {@link #guessPlatform(String)} and {@link #architecture(String)}, which remember nothing, so they never crowd
+ *     the shared strings out of the memo.
+ * </p>
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class PlatformResolver {
+    static public final int MAXIMUM_SIZE = 1024;
+
+    static private long evictions;
+    static private long hits;
+    static private long misses;
+
+    static private final LinkedHashMap<String,Platform> platforms = new LinkedHashMap<String, Platform>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,Platform> eldest) {
+            if( size() > MAXIMUM_SIZE ) {
+                evictions++;
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /**
+     * Guesses the architecture of an archive from its name. Names containing <code>x32</code> and no 64-bit marker map
+     * to {@link Architecture#I32}; everything else, including names that say nothing, maps to {@link Architecture#I64}.
+     * The guess is a few substring checks, which cost less than a lookup, so nothing is remembered.
+     * @param name the name of the archive
+     * @return the architecture suggested by the name
+     */
+    static public @Nonnull Architecture architecture(@Nullable String name) {
+        if( name == null ) {
+            return Architecture.I64;
+        }
+        if( name.contains("x64") || name.contains("64-bit") || name.contains("64 bit") ) {
+            return Architecture.I64;
+        }
+        if( name.contains("x32") ) {
+            return Architecture.I32;
+        }
+        return Architecture.I64;
+    }
+
+    /**
+     * @return the number of strings evicted from the memo to keep it within its maximum size
+     */
+    static public long getEvictions() {
+        synchronized( platforms ) {
+            return evictions;
+        }
+    }
+
+    /**
+     * @return the number of lookups answered from the memo
+     */
+    static public long getHits() {
+        synchronized( platforms ) {
+            return hits;
+        }
+    }
+
+    /**
+     * @return the number of lookups that had to guess
+     */
+    static public long getMisses() {
+        synchronized( platforms ) {
+            return misses;
+        }
+    }
+
+    /**
+     * Guesses the platform named by a string without consulting or filling the memo. Use this for strings unique to
+     * a single resource, such as archive names.
+     * @param name the string naming an operating system
+     * @return the platform suggested by the string, {@link Platform#UNKNOWN} if it suggests none
+     */
+    static public @Nonnull Platform guessPlatform(@Nullable String name) {
+        Platform platform = (name == null ? null : Platform.guess(name));
+
+        return (platform == null ? Platform.UNKNOWN : platform);
+    }
+
+    /**
+     * Guesses the platform named by an operating system string, as {@link Platform#guess(String)} does, remembering
+     * the guess for later lookups of the same string.
+     * @param name the operating system string
+     * @return the platform suggested by the string, {@link Platform#UNKNOWN} if it suggests none
+     */
+    static public @Nonnull Platform platform(@Nullable String name) {
+        if( name == null ) {
+            return Platform.UNKNOWN;
+        }
+        synchronized( platforms ) {
+            Platform platform = platforms.get(name);
+
+            if( platform != null ) {
+                hits++;
+                return platform;
+            }
+            misses++;
+        }
+        // guess outside the lock; concurrent misses on the same string simply guess twice
+        Platform platform = guessPlatform(name);
+
+        synchronized( platforms ) {
+            platforms.put(name, platform);
+        }
+        return platform;
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm;
+
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces out calls against a single Dell ASM endpoint so that bulk operations running on many threads do not flood
+ * the endpoint. Permits are handed out at evenly spaced instants; a caller asking for a permit before its slot
+ * sleeps until the slot arrives. A rate of zero or less disables limiting.
+ * <p>
+ *     Each endpoint has one shared limiter whose rate is read from the <code>dasein.asm.endpoint.callsPerSecond</code>
+ *     system property when it is created. Bulk operations pace themselves with a limiter of their own chained to the
+ *     shared one, so a caller asking for a low rate slows only its own calls and never the other callers.
+ * </p>
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class RateLimiter {
+    static private final Logger logger = DellASM.getLogger(RateLimiter.class);
+
+    /**
+     * The system property setting the rate of the limiter shared by all callers against an endpoint.
+     */
+    static public final String ENDPOINT_RATE = "dasein.asm.endpoint.callsPerSecond";
+
+    /**
+     * The rate of the shared endpoint limiter when {@link #ENDPOINT_RATE} is not set.
+     */
+    static public final double DEFAULT_ENDPOINT_RATE = 10.0;
+
+    static private final HashMap<String,RateLimiter> limiters = new HashMap<String, RateLimiter>();
+
+    /**
+     * Provides the limiter shared by all callers against the specified endpoint. Its rate is read from
+     * {@link #ENDPOINT_RATE} when it is created and is not changed by callers.
+     * @param endpoint the Dell ASM endpoint being called
+     * @return the shared limiter for the endpoint
+     */
+    static public @Nonnull RateLimiter getInstance(@Nonnull String endpoint) {
+        synchronized( limiters ) {
+            RateLimiter limiter = limiters.get(endpoint);
+
+            if( limiter == null ) {
+                limiter = new RateLimiter(getEndpointRate());
+                limiters.put(endpoint, limiter);
+            }
+            return limiter;
+        }
+    }
+
+    /**
+     * Provides a limiter for a single caller against the specified endpoint. The caller's calls are spaced at its own
+     * rate and are also paced by the endpoint's shared limiter, whose rate is left as it is.
+     * @param endpoint the Dell ASM endpoint being called
+     * @param permitsPerSecond the maximum number of calls per second the caller wants against the endpoint, zero or less for no limit of its own
+     * @return a new limiter chained to the shared limiter for the endpoint
+     */
+    static public @Nonnull RateLimiter getInstance(@Nonnull String endpoint, double permitsPerSecond) {
+        return new RateLimiter(permitsPerSecond, getInstance(endpoint));
+    }
+
+    static private double getEndpointRate() {
+        String value = System.getProperty(ENDPOINT_RATE);
+
+        if( value == null ) {
+            return DEFAULT_ENDPOINT_RATE;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        }
+        catch( NumberFormatException e ) {
+            logger.warn("Ignoring invalid " + ENDPOINT_RATE + " value " + value + "; using " + DEFAULT_ENDPOINT_RATE);
+            return DEFAULT_ENDPOINT_RATE;
+        }
+    }
+
+    private long              interval;
+    private long              nextFree;
+    private final RateLimiter parent;
+
+    /**
+     * Constructs a limiter not shared with other callers.
+     * @param permitsPerSecond the maximum number of permits handed out per second
+     */
+    public RateLimiter(double permitsPerSecond) {
+        this(permitsPerSecond, null);
+    }
+
+    /**
+     * Constructs a limiter whose permits are also subject to another limiter.
+     * @param permitsPerSecond the maximum number of permits handed out per second
+     * @param parent the limiter each permit must also be acquired from, null for none
+     */
+    public RateLimiter(double permitsPerSecond, @Nullable RateLimiter parent) {
+        setRate(permitsPerSecond);
+        nextFree = System.nanoTime();
+        this.parent = parent;
+    }
+
+    /**
+     * Blocks until the caller may make its call, first at this limiter's rate and then at its parent's.
+     * @throws InterruptedException the calling thread was interrupted while waiting for its slot
+     */
+    public void acquire() throws InterruptedException {
+        long wait;
+
+        synchronized( this ) {
+            long now = System.nanoTime();
+
+            if( nextFree < now ) {
+                nextFree = now;
+            }
+            wait = nextFree - now;
+            nextFree += interval;
+        }
+        if( wait > 0L ) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+        if( parent != null ) {
+            parent.acquire();
+        }
+    }
+
+    /**
+     * @return the maximum number of permits handed out per second, zero if unlimited
+     */
+    public synchronized double getRate() {
+        return (interval <= 0L ? 0.0 : ((double)TimeUnit.SECONDS.toNanos(1L))/interval);
+    }
+
+    /**
+     * Changes the rate at which permits are handed out. Slots already handed out are not affected.
+     * @param permitsPerSecond the maximum number of permits handed out per second, zero or less for unlimited
+     */
+    public synchronized void setRate(double permitsPerSecond) {
+        interval = (permitsPerSecond <= 0.0 ? 0L : (long)(TimeUnit.SECONDS.toNanos(1L)/permitsPerSecond));
+    }
+}
@@ -0,0 +1,277 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.dell.asm;
+
+import org.dasein.cloud.CloudErrorType;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Serves the exchanges in a {@link WireRecorder} recording back to {@link APIHandler#post(String, String)} in place
+ * of Dell ASM. With a replay transport installed through {@link DellASM#setReplayTransport(ReplayTransport)}, no
+ * network calls are made, so a captured scenario becomes a repeatable benchmark of everything from the response body
+ * onward: parsing, mapping, caching, and the metrics around them.
+ * <p>
+ *     A request is answered with the first unused recorded exchange for its operation whose request matches once
+ *     connection IDs, credentials, and timestamps are ignored. If none matches, the next unused exchange for the
+ *     operation is served instead and counted as a miss. Once every exchange for an operation has been served, they
+ *     are served again from the start. Latency is not simulated unless a latency scale is set.
+ * </p>
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class ReplayTransport {
+    static public final String HOST = "replay";
+
+    static private final Pattern volatileAttributes = Pattern.compile("(" + SlowCallLog.CREDENTIALS + "|start|end)(\\s*=\\s*)(\"[^\"]*\"|'[^']*')", Pattern.CASE_INSENSITIVE);
+
+    static private @Nonnull String normalize(@Nonnull String request) {
+        return volatileAttributes.matcher(request).replaceAll("$1=\"\"").replaceAll(">\\s+<", "><").trim();
+    }
+
+    /**
+     * A single recorded exchange.
+     */
+    static public class Exchange {
+        private final long   elapsed;
+        private final String operation;
+        private final String reason;
+        private final String request;
+        private final String response;
+        private final int    statusCode;
+        private final long   timestamp;
+
+        Exchange(@Nonnull String operation, long timestamp, long elapsed, int statusCode, @Nonnull String reason, @Nonnull String request, @Nonnull String response) {
+            this.operation = operation;
+            this.timestamp = timestamp;
+            this.elapsed = elapsed;
+            this.statusCode = statusCode;
+            this.reason = reason;
+            this.request = request;
+            this.response = response;
+        }
+
+        /**
+         * @return the time in nanoseconds the original exchange took
+         */
+        public long getElapsed() {
+            return elapsed;
+        }
+
+        /**
+         * @return the API operation
+         */
+        public @Nonnull String getOperation() {
+            return operation;
+        }
+
+        /**
+         * @return the HTTP reason phrase of the response
+         */
+        public @Nonnull String getReason() {
+            return reason;
+        }
+
+        /**
+         * @return the redacted request body
+         */
+        public @Nonnull String getRequest() {
+            return request;
+        }
+
+        /**
+         * @return the redacted response body
+         */
+        public @Nonnull String getResponse() {
+            return response;
+        }
+
+        /**
+         * @return the HTTP status of the response
+         */
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        /**
+         * @return the time the exchange was recorded in milliseconds since the epoch
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+    }
+
+    static private class Recorded {
+        final Exchange[]  exchanges;
+        final String[]    keys;
+        final boolean[]   used;
+        int               remaining;
+
+        Recorded(@Nonnull List<Exchange> list) {
+            exchanges = list.toArray(new Exchange[list.size()]);
+            keys = new String[exchanges.length];
+            used = new boolean[exchanges.length];
+            for( int i=0; i<exchanges.length; i++ ) {
+                keys[i] = normalize(exchanges[i].getRequest());
+            }
+            remaining = exchanges.length;
+        }
+    }
+
+    private final HashMap<String,Recorded> recordings = new HashMap<String, Recorded>();
+
+    private volatile double latencyScale;
+    private long            misses;
+    private long            replayed;
+
+    /**
+     * Constructs a replay transport serving the exchanges in a recording.
+     * @param file a recording made by {@link WireRecorder}
+     * @throws IOException the recording could not be read
+     */
+    public ReplayTransport(@Nonnull File file) throws IOException {
+        this(WireRecorder.read(file));
+    }
+
+    /**
+     * Constructs a replay transport serving the specified exchanges.
+     * @param exchanges the exchanges in the order they were recorded
+     */
+    public ReplayTransport(@Nonnull List<ReplayTransport.Exchange> exchanges) {
+        HashMap<String,List<Exchange>> byOperation = new HashMap<String, List<Exchange>>();
+
+        for( Exchange e : exchanges ) {
+            String key = e.getOperation().toLowerCase(Locale.ENGLISH);
+            List<Exchange> list = byOperation.get(key);
+
+            if( list == null ) {
+                list = new ArrayList<Exchange>();
+                byOperation.put(key, list);
+            }
+            list.add(e);
+        }
+        for( String key : byOperation.keySet() ) {
+            recordings.put(key, new Recorded(byOperation.get(key)));
+        }
+    }
+
+    /**
+     * @return the multiple of the recorded latency added to each replayed exchange, zero for none
+     */
+    public double getLatencyScale() {
+        return latencyScale;
+    }
+
+    /**
+     * @return the number of requests answered by an exchange whose request did not match
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of requests answered so far
+     */
+    public synchronized long getReplayed() {
+        return replayed;
+    }
+
+    /**
+     * Answers a request from the recording.
+     * @param operation the API operation being called
+     * @param request the request body
+     * @return the recorded exchange answering the request
+     * @throws CloudException the recording holds no exchanges for the operation
+     * @throws InternalException the calling thread was interrupted while simulating latency
+     */
+    public @Nonnull Exchange replay(@Nonnull String operation, @Nonnull String request) throws CloudException, InternalException {
+        Exchange exchange = null;
+
+        synchronized( this ) {
+            Recorded recorded = recordings.get(operation.toLowerCase(Locale.ENGLISH));
+
+            if( recorded == null || recorded.exchanges.length < 1 ) {
+                throw new ASMException(CloudErrorType.GENERAL, 404, "NoRecording", "No recorded exchange for " + operation);
+            }
+            if( recorded.remaining < 1 ) {
+                for( int i=0; i<recorded.used.length; i++ ) {
+                    recorded.used[i] = false;
+                }
+                recorded.remaining = recorded.used.length;
+            }
+            String key = normalize(request);
+            int match = -1, next = -1;
+
+            for( int i=0; i<recorded.exchanges.length; i++ ) {
+                if( !recorded.used[i] ) {
+                    if( next < 0 ) {
+                        next = i;
+                    }
+                    if( recorded.keys[i].equals(key) ) {
+                        match = i;
+                        break;
+                    }
+                }
+            }
+            if( match < 0 ) {
+                match = next;
+                misses++;
+            }
+            recorded.used[match] = true;
+            recorded.remaining--;
+            replayed++;
+            exchange = recorded.exchanges[match];
+        }
+        double scale = latencyScale;
+
+        if( scale > 0.0 ) {
+            try {
+                TimeUnit.NANOSECONDS.sleep((long)(exchange.getElapsed() * scale));
+            }
+            catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new InternalException(e);
+            }
+        }
+        return exchange;
+    }
+
+    /**
+     * Sets how much of the recorded latency is added to each replayed exchange. A scale of 1 reproduces the original
+     * latencies, 0.5 halves them, and 0 (the default) replays as fast as possible.
+     * @param latencyScale the multiple of the recorded latency to add
+     */
+    public void setLatencyScale(@Nonnegative double latencyScale) {
+        this.latencyScale = latencyScale;
+    }
+}
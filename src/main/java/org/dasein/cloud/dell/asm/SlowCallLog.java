@@ -0,0 +1,352 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.dell.asm;
+
+import org.apache.log4j.Logger;
+import org.dasein.util.CalendarWrapper;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Records Dell ASM calls that take longer than a configurable threshold. Each slow call produces one structured record
+ * holding the operation, its phase timings, the request and response sizes, and the start of the request and response
+ * payloads with the <code>connectionid</code>, <code>password</code>, <code>usertoken</code>, and <code>username</code>
+ * fields redacted. Records are written to the <code>dasein.cloud.dell.asm.slow</code> logger and kept in a fixed-size
+ * ring so they can be queried from the provider through {@link DellASM#getSlowCallLog()}.
+ * <p>
+ *     Phases recorded after {@link APIHandler#post(String, String)} returns, such as mapping, are not part of the record.
+ * </p>
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class SlowCallLog {
+    static private final Logger slow = Logger.getLogger("dasein.cloud.dell.asm.slow");
+
+    static public final int  DEFAULT_CAPACITY    = 100;
+    static public final int  DEFAULT_MAX_PAYLOAD = 4 * 1024;
+    static public final long DEFAULT_THRESHOLD   = 10L * CalendarWrapper.SECOND;
+
+    /**
+     * The names of the attributes and elements holding credentials or session tokens, as a regular expression alternation.
+     */
+    static final String CREDENTIALS = "connectionid|password|usertoken|username";
+
+    static private final Pattern redactAttributes = Pattern.compile("(" + CREDENTIALS + ")(\\s*=\\s*)(\"[^\"]*\"|'[^']*')", Pattern.CASE_INSENSITIVE);
+    static private final Pattern redactElements   = Pattern.compile("<(" + CREDENTIALS + ")>[^<]*</", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Removes credentials from a request or response payload and cuts it down to the specified length.
+     * @param payload the payload to redact
+     * @param maxPayload the maximum number of characters to keep
+     * @return the redacted and truncated payload, null if the payload was null
+     */
+    static @Nullable String redact(@Nullable String payload, @Nonnegative int maxPayload) {
+        if( payload == null ) {
+            return null;
+        }
+        payload = redactAttributes.matcher(payload).replaceAll("$1$2\"****\"");
+        payload = redactElements.matcher(payload).replaceAll("<$1>****</");
+        if( payload.length() > maxPayload ) {
+            payload = payload.substring(0, maxPayload) + "...[" + (payload.length() - maxPayload) + " more]";
+        }
+        return payload;
+    }
+
+    /**
+     * A single slow call.
+     */
+    static public class Record {
+        private final long   elapsed;
+        private final String errorCode;
+        private final String operation;
+        private final long[] phases;
+        private final String request;
+        private final long   requestBytes;
+        private final String response;
+        private final long   responseBytes;
+        private final int    statusCode;
+        private final long   timestamp;
+
+        Record(@Nonnull String operation, @Nonnull long[] phases, long elapsed, int statusCode, @Nullable String errorCode, long requestBytes, long responseBytes, @Nullable String request, @Nullable String response) {
+            this.timestamp = System.currentTimeMillis();
+            this.operation = operation;
+            this.phases = phases;
+            this.elapsed = elapsed;
+            this.statusCode = statusCode;
+            this.errorCode = errorCode;
+            this.requestBytes = requestBytes;
+            this.responseBytes = responseBytes;
+            this.request = request;
+            this.response = response;
+        }
+
+        /**
+         * @return the total time of the call in nanoseconds
+         */
+        public long getElapsed() {
+            return elapsed;
+        }
+
+        /**
+         * @return the error code with which the call failed, null if it succeeded
+         */
+        public @Nullable String getErrorCode() {
+            return errorCode;
+        }
+
+        /**
+         * @return the API operation that was called
+         */
+        public @Nonnull String getOperation() {
+            return operation;
+        }
+
+        /**
+         * @param phase the phase of interest
+         * @return the time spent in the phase in nanoseconds
+         */
+        public long getPhase(@Nonnull PhaseTimings.Phase phase) {
+            return phases[phase.ordinal()];
+        }
+
+        /**
+         * @return the redacted and truncated request payload
+         */
+        public @Nullable String getRequest() {
+            return request;
+        }
+
+        /**
+         * @return the size of the request body in bytes
+         */
+        public long getRequestBytes() {
+            return requestBytes;
+        }
+
+        /**
+         * @return the redacted and truncated response payload, null if no response body was read
+         */
+        public @Nullable String getResponse() {
+            return response;
+        }
+
+        /**
+         * @return the size of the response body in bytes
+         */
+        public long getResponseBytes() {
+            return responseBytes;
+        }
+
+        /**
+         * @return the HTTP status of the response, -1 if no response was received
+         */
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        /**
+         * @return the time the call completed in milliseconds since the epoch
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public @Nonnull String toString() {
+            StringBuilder str = new StringBuilder();
+
+            str.append("operation=").append(operation);
+            str.append(" elapsed=").append(TimeUnit.NANOSECONDS.toMillis(elapsed)).append("ms");
+            for( PhaseTimings.Phase p : PhaseTimings.Phase.values() ) {
+                str.append(" ").append(p.name().toLowerCase(Locale.ENGLISH)).append("=").append(TimeUnit.NANOSECONDS.toMillis(phases[p.ordinal()])).append("ms");
+            }
+            str.append(" status=").append(statusCode);
+            if( errorCode != null ) {
+                str.append(" error=").append(errorCode);
+            }
+            str.append(" requestBytes=").append(requestBytes);
+            str.append(" responseBytes=").append(responseBytes);
+            str.append(" request=").append(request);
+            str.append(" response=").append(response);
+            return str.toString();
+        }
+    }
+
+    private volatile int                          capacity         = DEFAULT_CAPACITY;
+    private volatile long                         defaultThreshold = DEFAULT_THRESHOLD;
+    private volatile int                          maxPayload       = DEFAULT_MAX_PAYLOAD;
+    private final LinkedList<Record>              ring             = new LinkedList<Record>();
+    private final ConcurrentHashMap<String,Long>  thresholds       = new ConcurrentHashMap<String, Long>();
+
+    /**
+     * Removes all records from the ring.
+     */
+    public void clear() {
+        synchronized( ring ) {
+            ring.clear();
+        }
+    }
+
+    /**
+     * @return the maximum number of records kept in the ring
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the maximum number of characters of each payload kept in a record
+     */
+    public int getMaxPayload() {
+        return maxPayload;
+    }
+
+    /**
+     * @return the records currently in the ring, oldest first
+     */
+    public @Nonnull List<Record> getRecords() {
+        synchronized( ring ) {
+            return Collections.unmodifiableList(new ArrayList<Record>(ring));
+        }
+    }
+
+    /**
+     * @param operation the API operation of interest
+     * @return the records for the specified operation currently in the ring, oldest first
+     */
+    public @Nonnull List<Record> getRecords(@Nonnull String operation) {
+        ArrayList<Record> matches = new ArrayList<Record>();
+
+        synchronized( ring ) {
+            for( Record r : ring ) {
+                if( r.getOperation().equalsIgnoreCase(operation) ) {
+                    matches.add(r);
+                }
+            }
+        }
+        return Collections.unmodifiableList(matches);
+    }
+
+    /**
+     * @param operation the API operation of interest
+     * @return the threshold in milliseconds above which calls to the operation are recorded
+     */
+    public long getThreshold(@Nonnull String operation) {
+        Long threshold = thresholds.get(operation.toLowerCase(Locale.ENGLISH));
+
+        return (threshold == null ? defaultThreshold : threshold);
+    }
+
+    /**
+     * @param operation the API operation that was called
+     * @param elapsed the total time of the call in nanoseconds
+     * @return true if the call exceeded the threshold for its operation
+     */
+    public boolean isSlow(@Nonnull String operation, long elapsed) {
+        long threshold = getThreshold(operation);
+
+        return (threshold >= 0L && elapsed > TimeUnit.MILLISECONDS.toNanos(threshold));
+    }
+
+    /**
+     * Records a slow call, writing it to the slow call logger and adding it to the ring.
+     * @param operation the API operation that was called
+     * @param timings the phase timings of the call
+     * @param elapsed the total time of the call in nanoseconds
+     * @param statusCode the HTTP status of the response, -1 if no response was received
+     * @param errorCode the error code with which the call failed, null if it succeeded
+     * @param requestBytes the size of the request body in bytes
+     * @param responseBytes the size of the response body in bytes
+     * @param request the request payload
+     * @param response the response payload, null if no response body was read
+     * @return the record that was written
+     */
+    public @Nonnull Record record(@Nonnull String operation, @Nonnull PhaseTimings timings, long elapsed, int statusCode, @Nullable String errorCode, long requestBytes, long responseBytes, @Nullable String request, @Nullable String response) {
+        PhaseTimings.Phase[] all = PhaseTimings.Phase.values();
+        long[] phases = new long[all.length];
+        int max = maxPayload;
+
+        for( PhaseTimings.Phase p : all ) {
+            phases[p.ordinal()] = timings.get(p);
+        }
+        Record r = new Record(operation, phases, elapsed, statusCode, errorCode, requestBytes, responseBytes, redact(request, max), redact(response, max));
+
+        synchronized( ring ) {
+            ring.addLast(r);
+            while( ring.size() > capacity ) {
+                ring.removeFirst();
+            }
+        }
+        if( slow.isInfoEnabled() ) {
+            slow.info(r.toString());
+        }
+        return r;
+    }
+
+    /**
+     * Sets the maximum number of records kept in the ring. The oldest records are discarded first.
+     * @param capacity the maximum number of records to keep
+     */
+    public void setCapacity(@Nonnegative int capacity) {
+        this.capacity = capacity;
+        synchronized( ring ) {
+            while( ring.size() > capacity ) {
+                ring.removeFirst();
+            }
+        }
+    }
+
+    /**
+     * Sets the threshold for operations with no threshold of their own.
+     * @param threshold the threshold in milliseconds, negative to record no calls
+     */
+    public void setDefaultThreshold(long threshold) {
+        this.defaultThreshold = threshold;
+    }
+
+    /**
+     * Sets the maximum number of characters of each payload kept in a record.
+     * @param maxPayload the maximum number of characters
+     */
+    public void setMaxPayload(@Nonnegative int maxPayload) {
+        this.maxPayload = maxPayload;
+    }
+
+    /**
+     * Sets the threshold above which calls to the specified operation are recorded.
+     * @param operation the API operation
+     * @param threshold the threshold in milliseconds, negative to record no calls to the operation
+     */
+    public void setThreshold(@Nonnull String operation, long threshold) {
+        thresholds.put(operation.toLowerCase(Locale.ENGLISH), threshold);
+    }
+}
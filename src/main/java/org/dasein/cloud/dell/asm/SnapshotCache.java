@@ -0,0 +1,292 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.ProviderContext;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Holds the last good snapshot of each slow listing so interactive callers can be answered without waiting on Dell
+ * ASM. A snapshot younger than the staleness bound is served as is. An older snapshot is still served, but a single
+ * revalidation is started in the background to replace it. Callers wait on a fresh listing only when there is no
+ * snapshot yet or the snapshot is older than the maximum age.
+ * <p>
+ *     There is one cache per context (endpoint, account, and region). Snapshots hold the unfiltered listing, so
+ *     callers apply their own filters to what is served. A failed revalidation leaves the old snapshot in place, and
+ *     the next stale read starts another. The age of a snapshot is measured from when its listing began.
+ * </p>
+ * <p>
+ *     Operations that change a listed resource {@link #invalidate(String) invalidate} its listing. Listings that
+ *     began before the invalidation, including revalidations already in flight, are then never stored.
+ * </p>
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class SnapshotCache {
+    static private final Logger logger = DellASM.getLogger(SnapshotCache.class);
+
+    static public final String IMAGES           = "images";
+    static public final String TOPOLOGIES       = "topologies";
+    static public final String VIRTUAL_MACHINES = "virtualMachines";
+
+    /**
+     * Produces a fresh, unfiltered listing for a snapshot.
+     * @param <T> the type of resource listed
+     */
+    static public interface Loader<T> {
+        /**
+         * @return the current listing from Dell ASM
+         * @throws CloudException an error occurred with Dell ASM producing the listing
+         * @throws InternalException an error occurred within Dasein Cloud producing the listing
+         */
+        public @Nonnull Iterable<T> load() throws CloudException, InternalException;
+    }
+
+    static private final HashMap<String,SnapshotCache> caches = new HashMap<String, SnapshotCache>();
+
+    static private ExecutorService revalidator;
+
+    /**
+     * Provides the snapshot cache for the provider's current context, creating an empty cache if none exists.
+     * @param provider the provider whose context identifies the account being listed
+     * @return the snapshot cache for the context
+     * @throws NoContextException no context has been set for the provider
+     */
+    static public @Nonnull SnapshotCache getInstance(@Nonnull DellASM provider) throws NoContextException {
+        ProviderContext ctx = provider.getContext();
+
+        if( ctx == null ) {
+            throw new NoContextException();
+        }
+        String key = DellASM.getContextKey(ctx);
+
+        synchronized( caches ) {
+            SnapshotCache cache = caches.get(key);
+
+            if( cache == null ) {
+                cache = new SnapshotCache();
+                caches.put(key, cache);
+            }
+            return cache;
+        }
+    }
+
+    static private synchronized @Nonnull ExecutorService getRevalidator() {
+        if( revalidator == null ) {
+            revalidator = Executors.newCachedThreadPool(new ASMThreadFactory("snapshot"));
+        }
+        return revalidator;
+    }
+
+    static private class Snapshot {
+        List<?> items; // null once invalidated
+        long    loadedAt;
+        boolean revalidating;
+    }
+
+    private final HashMap<String,Snapshot> snapshots = new HashMap<String, Snapshot>();
+
+    private long freshHits;
+    private long misses;
+    private long revalidations;
+    private long staleHits;
+
+    private SnapshotCache() { }
+
+    /**
+     * Removes every snapshot, so the next read of each listing waits on a fresh listing. The counters are not reset.
+     */
+    public synchronized void clear() {
+        snapshots.clear();
+    }
+
+    /**
+     * Provides a listing from its snapshot when the snapshot is young enough, otherwise from a fresh listing.
+     * @param provider the provider on whose behalf the listing is made, held while a revalidation runs
+     * @param listing the name of the listing, such as {@link #VIRTUAL_MACHINES}
+     * @param staleness the age in milliseconds past which a served snapshot is revalidated in the background
+     * @param maximumAge the age in milliseconds past which the snapshot may not be served
+     * @param loader the source of fresh listings
+     * @param <T> the type of resource listed
+     * @return the unfiltered listing, which must not be modified
+     * @throws CloudException an error occurred with Dell ASM producing a fresh listing
+     * @throws InternalException an error occurred within Dasein Cloud producing a fresh listing
+     */
+    @SuppressWarnings("unchecked")
+    public @Nonnull <T> List<T> get(@Nonnull DellASM provider, @Nonnull String listing, @Nonnegative long staleness, @Nonnegative long maximumAge, @Nonnull Loader<T> loader) throws CloudException, InternalException {
+        long now = System.currentTimeMillis();
+        boolean revalidate = false;
+        List<T> items = null;
+
+        synchronized( this ) {
+            Snapshot s = snapshots.get(listing);
+
+            if( s != null && s.items != null && now - s.loadedAt <= maximumAge ) {
+                items = (List<T>)s.items;
+                if( now - s.loadedAt <= staleness ) {
+                    freshHits++;
+                }
+                else {
+                    staleHits++;
+                    if( !s.revalidating ) {
+                        s.revalidating = true;
+                        revalidations++;
+                        revalidate = true;
+                    }
+                }
+            }
+            else {
+                misses++;
+            }
+        }
+        if( items == null ) {
+            return load(listing, loader);
+        }
+        if( revalidate ) {
+            revalidate(provider, listing, loader);
+        }
+        return items;
+    }
+
+    /**
+     * @param listing the name of the listing, such as {@link #VIRTUAL_MACHINES}
+     * @return the age in milliseconds of the listing's snapshot, -1 if there is no snapshot of the listing
+     */
+    public synchronized long getAge(@Nonnull String listing) {
+        Snapshot s = snapshots.get(listing);
+
+        return (s == null || s.items == null ? -1L : Math.max(0L, System.currentTimeMillis() - s.loadedAt));
+    }
+
+    /**
+     * @return the number of reads served from a snapshot younger than the staleness bound
+     */
+    public synchronized long getFreshHits() {
+        return freshHits;
+    }
+
+    /**
+     * @return the number of reads that waited on a fresh listing because no snapshot could be served
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of background revalidations started
+     */
+    public synchronized long getRevalidations() {
+        return revalidations;
+    }
+
+    /**
+     * @return the number of reads served from a snapshot older than the staleness bound
+     */
+    public synchronized long getStaleHits() {
+        return staleHits;
+    }
+
+    /**
+     * Drops the snapshot of a listing after the resources it lists have changed, so the next read waits on a fresh
+     * listing. Listings that began before this call are not stored when they complete.
+     * @param listing the name of the listing, such as {@link #VIRTUAL_MACHINES}
+     */
+    public synchronized void invalidate(@Nonnull String listing) {
+        Snapshot s = snapshots.get(listing);
+
+        if( s == null ) {
+            s = new Snapshot();
+            snapshots.put(listing, s);
+        }
+        s.items = null;
+        s.loadedAt = System.currentTimeMillis();
+    }
+
+    private @Nonnull <T> List<T> load(@Nonnull String listing, @Nonnull Loader<T> loader) throws CloudException, InternalException {
+        long loadedAt = System.currentTimeMillis();
+        ArrayList<T> items = new ArrayList<T>();
+
+        for( T item : loader.load() ) {
+            items.add(item);
+        }
+        List<T> snapshot = Collections.unmodifiableList(items);
+
+        synchronized( this ) {
+            Snapshot s = snapshots.get(listing);
+
+            // a listing that began earlier than the current snapshot's must not replace it
+            if( s == null || s.loadedAt <= loadedAt ) {
+                if( s == null ) {
+                    s = new Snapshot();
+                    snapshots.put(listing, s);
+                }
+                s.items = snapshot;
+                s.loadedAt = loadedAt;
+            }
+        }
+        return snapshot;
+    }
+
+    private <T> void revalidate(@Nonnull final DellASM provider, @Nonnull final String listing, @Nonnull final Loader<T> loader) {
+        provider.hold();
+        try {
+            getRevalidator().submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        load(listing, loader);
+                    }
+                    catch( Throwable t ) {
+                        logger.warn("Unable to revalidate the " + listing + " snapshot: " + t.getMessage());
+                    }
+                    finally {
+                        revalidated(listing);
+                        provider.release();
+                    }
+                }
+            });
+        }
+        catch( RuntimeException e ) {
+            revalidated(listing);
+            provider.release();
+            throw e;
+        }
+    }
+
+    private synchronized void revalidated(@Nonnull String listing) {
+        Snapshot s = snapshots.get(listing);
+
+        if( s != null ) {
+            s.revalidating = false;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nullable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collapses equal strings placed in the resources mapped by a provider onto a single instance. Large inventories hold
+ * tens of thousands of virtual machines, topologies, and machine images that repeat the same region IDs, owner IDs,
+ * product IDs, and tag values; interning them keeps one copy of each. Unlike {@link String#intern()}, the pool
+ * belongs to the provider and is released with it.
+ * <p>
+ *     The pool holds at most {@link #DEFAULT_MAXIMUM_SIZE} strings unless told otherwise. Strings arriving once it
+ *     is full are returned as given. Only values drawn from a small vocabulary should be interned; names, addresses,
+ *     and other values unique to a resource would only fill the pool.
+ * </p>
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class StringInterner {
+    static public final int DEFAULT_MAXIMUM_SIZE = 4096;
+
+    private volatile int                           maximumSize = DEFAULT_MAXIMUM_SIZE;
+    private final ConcurrentHashMap<String,String> pool        = new ConcurrentHashMap<String, String>();
+
+    /**
+     * Empties the pool. Strings already handed out remain valid.
+     */
+    public void clear() {
+        pool.clear();
+    }
+
+    /**
+     * @return the maximum number of strings held by the pool
+     */
+    public @Nonnegative int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * @return the number of strings currently held by the pool
+     */
+    public @Nonnegative int getSize() {
+        return pool.size();
+    }
+
+    /**
+     * Provides the pooled instance of a string, adding the string to the pool if no equal string is held.
+     * @param value the string to intern
+     * @return the pooled instance equal to the string, or the string itself if the pool is full
+     */
+    public @Nullable String intern(@Nullable String value) {
+        if( value == null ) {
+            return null;
+        }
+        String pooled = pool.get(value);
+
+        if( pooled != null ) {
+            return pooled;
+        }
+        if( pool.size() >= maximumSize ) {
+            return value;
+        }
+        pooled = pool.putIfAbsent(value, value);
+        return (pooled == null ? value : pooled);
+    }
+
+    /**
+     * Changes the maximum number of strings held by the pool. Lowering the size does not evict strings already held.
+     * @param maximumSize the maximum number of strings, zero to stop interning new strings
+     */
+    public void setMaximumSize(@Nonnegative int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+}
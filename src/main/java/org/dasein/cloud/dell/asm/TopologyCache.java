@@ -0,0 +1,190 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm;
+
+import org.dasein.cloud.InternalException;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of parsed topologies keyed by a hash of the raw embedded XML. Archive content and
+ * <code>readTopology</code> responses rarely change between polls, so most listings find their topologies already
+ * parsed. The least recently used topology is evicted once the cache holds its maximum size.
+ * <p>
+ *     A hit is confirmed against the raw XML, so two documents sharing a hash never share a topology. The maximum size
+ *     is read from the <code>dasein.asm.topology.cacheSize</code> system property (default {@link #DEFAULT_MAXIMUM_SIZE})
+ *     when the cache is first used; a size of zero disables caching.
+ * </p>
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class TopologyCache {
+    static public final int DEFAULT_MAXIMUM_SIZE = 512;
+
+    static private TopologyCache instance;
+
+    /**
+     * @return the cache shared by all topology parsing in this JVM
+     */
+    static public synchronized @Nonnull TopologyCache getInstance() {
+        if( instance == null ) {
+            instance = new TopologyCache(Integer.getInteger("dasein.asm.topology.cacheSize", DEFAULT_MAXIMUM_SIZE));
+        }
+        return instance;
+    }
+
+    static long hash(@Nonnull String xml) {
+        long h = 0xcbf29ce484222325L;
+
+        for( int i=0; i<xml.length(); i++ ) {
+            h ^= xml.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    static private class Cached {
+        ParsedTopology topology;
+        String         xml;
+    }
+
+    private final LinkedHashMap<Long,Cached> entries;
+    private long                             evictions;
+    private long                             hits;
+    private int                              maximumSize;
+    private long                             misses;
+
+    TopologyCache(@Nonnegative int maximumSize) {
+        this.maximumSize = maximumSize;
+        entries = new LinkedHashMap<Long, Cached>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long,Cached> eldest) {
+                if( size() > TopologyCache.this.maximumSize ) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Removes every cached topology. The counters are not reset.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return the number of topologies evicted to keep the cache within its maximum size
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the number of lookups served from the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the fraction of lookups served from the cache, zero if there have been no lookups
+     */
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+
+        return (total == 0L ? 0.0 : ((double)hits)/total);
+    }
+
+    /**
+     * @return the maximum number of topologies held by the cache
+     */
+    public synchronized int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * @return the number of lookups that had to parse the topology
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of topologies currently cached
+     */
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * Provides the parsed form of a topology document, parsing it only if identical XML is not already cached.
+     * @param xml the raw topology document
+     * @return the parsed topology
+     * @throws InternalException the document is not well-formed XML
+     */
+    public @Nonnull ParsedTopology parse(@Nonnull String xml) throws InternalException {
+        Long key = hash(xml);
+
+        synchronized( this ) {
+            Cached c = entries.get(key);
+
+            if( c != null && c.xml.equals(xml) ) {
+                hits++;
+                return c.topology;
+            }
+            misses++;
+        }
+        // parse outside the lock; concurrent misses on the same XML simply parse twice
+        ParsedTopology topology = ParsedTopology.parse(xml);
+
+        synchronized( this ) {
+            if( maximumSize > 0 ) {
+                Cached c = new Cached();
+
+                c.topology = topology;
+                c.xml = xml;
+                entries.put(key, c);
+            }
+        }
+        return topology;
+    }
+
+    /**
+     * Changes the maximum number of topologies held by the cache, evicting the least recently used topologies if the
+     * cache is over its new size.
+     * @param maximumSize the maximum number of topologies, zero to disable caching
+     */
+    public synchronized void setMaximumSize(@Nonnegative int maximumSize) {
+        this.maximumSize = maximumSize;
+        while( entries.size() > maximumSize ) {
+            Long eldest = entries.keySet().iterator().next();
+
+            entries.remove(eldest);
+            evictions++;
+        }
+    }
+}
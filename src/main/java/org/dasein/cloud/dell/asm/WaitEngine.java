@@ -0,0 +1,220 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.util.CalendarWrapper;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waits for resources to reach a desired state. Every wait registered with an engine is served by the same poll, so
+ * each tick costs a single enumeration call no matter how many threads are waiting. Between ticks the engine backs off
+ * exponentially (with jitter) from {@link #BASE_INTERVAL} to {@link #MAXIMUM_INTERVAL} while nothing changes and drops
+ * back to the base interval whenever a wait completes or a new wait is registered.
+ * @param <S> the type representing the state of the resources being waited on
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public abstract class WaitEngine<S> {
+    static private final Logger logger = DellASM.getLogger(WaitEngine.class);
+
+    static public final long BASE_INTERVAL    = 2L * CalendarWrapper.SECOND;
+    static public final long MAXIMUM_INTERVAL = 30L * CalendarWrapper.SECOND;
+
+    static private final Random random = new Random();
+
+    /**
+     * Determines whether a resource has reached the state being waited for.
+     * @param <S> the type representing the state of the resource
+     */
+    static public interface Condition<S> {
+        /**
+         * @param state the current state of the resource, null if the resource does not exist
+         * @return true if the wait is over
+         */
+        public boolean isSatisfied(@Nullable S state);
+    }
+
+    /**
+     * Constructs a condition satisfied when the resource is in any of the specified states.
+     * @param orGone whether the resource no longer existing also satisfies the condition
+     * @param states the states that satisfy the condition
+     * @param <S> the type representing the state of the resource
+     * @return a condition matching the specified states
+     */
+    static public @Nonnull <S> Condition<S> inState(final boolean orGone, @Nonnull final S ... states) {
+        return new Condition<S>() {
+            @Override
+            public boolean isSatisfied(@Nullable S state) {
+                if( state == null ) {
+                    return orGone;
+                }
+                for( S s : states ) {
+                    if( s.equals(state) ) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        };
+    }
+
+    private long                        interval = BASE_INTERVAL;
+    private ScheduledFuture<?>          nextTick;
+    private long                        nextTickAt;
+    private ScheduledExecutorService    timer;
+    private final ArrayList<WaitHandle<S>> waiters = new ArrayList<WaitHandle<S>>();
+
+    /**
+     * @return a name for the type of resource this engine waits on, used in logging and errors
+     */
+    protected abstract @Nonnull String getResourceType();
+
+    /**
+     * Called once the last registered wait has completed and the engine's timer has stopped. Engines shared through a
+     * registry use this to drop out of it. The engine's lock is held during the call. By default nothing happens.
+     */
+    protected void idle() {
+        // nothing to release by default
+    }
+
+    /**
+     * Fetches the current state of every resource this engine might be waiting on in a single call to Dell ASM.
+     * @return a map of resource IDs to their current states; resources missing from the map are treated as gone
+     * @throws CloudException an error occurred with Dell ASM fetching the states
+     * @throws InternalException an error occurred within Dasein Cloud fetching the states
+     */
+    protected abstract @Nonnull Map<String,S> poll() throws CloudException, InternalException;
+
+    /**
+     * Registers a wait for the specified resource.
+     * @param resourceId the ID of the resource being waited on
+     * @param condition the condition that ends the wait
+     * @param timeout the maximum time in milliseconds to wait
+     * @return a handle for awaiting or cancelling the wait
+     */
+    public @Nonnull WaitHandle<S> waitFor(@Nonnull String resourceId, @Nonnull Condition<S> condition, @Nonnegative long timeout) {
+        WaitHandle<S> handle = new WaitHandle<S>(this, resourceId, condition, System.currentTimeMillis() + timeout);
+
+        synchronized( this ) {
+            waiters.add(handle);
+            interval = BASE_INTERVAL;
+            if( timer == null ) {
+                timer = Executors.newSingleThreadScheduledExecutor(new ASMThreadFactory("wait-" + getResourceType()));
+                schedule(0L);
+            }
+            else if( nextTickAt - System.currentTimeMillis() > BASE_INTERVAL ) {
+                schedule(BASE_INTERVAL);
+            }
+        }
+        return handle;
+    }
+
+    synchronized void remove(@Nonnull WaitHandle<S> handle) {
+        waiters.remove(handle);
+    }
+
+    private void schedule(long delay) {
+        if( nextTick != null ) {
+            nextTick.cancel(false);
+        }
+        nextTickAt = System.currentTimeMillis() + delay;
+        nextTick = timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void tick() {
+        ArrayList<WaitHandle<S>> pending;
+
+        synchronized( this ) {
+            pending = new ArrayList<WaitHandle<S>>(waiters);
+        }
+        boolean progress = false;
+
+        if( !pending.isEmpty() ) {
+            Map<String,S> states = null;
+
+            try {
+                states = poll();
+            }
+            catch( Throwable t ) {
+                logger.warn("Unable to poll " + getResourceType() + " states: " + t.getMessage());
+            }
+            long now = System.currentTimeMillis();
+
+            for( WaitHandle<S> handle : pending ) {
+                boolean done;
+
+                if( states == null ) {
+                    // a failed poll can only expire waits, it cannot satisfy them
+                    done = handle.expire(now);
+                }
+                else {
+                    done = handle.check(states.get(handle.getResourceId()), now);
+                }
+                if( done ) {
+                    progress = true;
+                    remove(handle);
+                }
+            }
+        }
+        synchronized( this ) {
+            if( waiters.isEmpty() ) {
+                timer.shutdown();
+                timer = null;
+                nextTick = null;
+                idle();
+                return;
+            }
+            if( progress ) {
+                interval = BASE_INTERVAL;
+            }
+            else {
+                interval = Math.min(interval * 2, MAXIMUM_INTERVAL);
+            }
+            // equal jitter keeps concurrent engines from synchronizing their calls against the same endpoint
+            long delay = (interval / 2) + (long)(random.nextDouble() * (interval / 2));
+            long earliest = Long.MAX_VALUE;
+
+            for( WaitHandle<S> handle : waiters ) {
+                earliest = Math.min(earliest, handle.getDeadline());
+            }
+            delay = Math.max(0L, Math.min(delay, earliest - System.currentTimeMillis()));
+            schedule(delay);
+        }
+    }
+}
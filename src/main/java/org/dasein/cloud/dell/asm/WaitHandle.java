@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Tracks a single wait registered with a {@link WaitEngine}. The handle completes when the resource reaches a state
+ * satisfying the wait condition, when the deadline passes, or when the wait is cancelled.
+ * @param <S> the type representing the state of the resource being waited on
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class WaitHandle<S> {
+    private boolean                   cancelled;
+    private WaitEngine.Condition<S>   condition;
+    private long                      deadline;
+    private boolean                   done;
+    private WaitEngine<S>             engine;
+    private String                    resourceId;
+    private S                         state;
+    private boolean                   timedOut;
+
+    WaitHandle(@Nonnull WaitEngine<S> engine, @Nonnull String resourceId, @Nonnull WaitEngine.Condition<S> condition, long deadline) {
+        this.engine = engine;
+        this.resourceId = resourceId;
+        this.condition = condition;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Blocks until the wait completes.
+     * @return the state that satisfied the wait condition, null if the condition was satisfied by the resource no longer existing
+     * @throws CloudException the deadline passed before the resource reached a satisfying state
+     * @throws InternalException the waiting thread was interrupted (the wait is cancelled as a result)
+     * @throws CancellationException the wait was cancelled
+     */
+    public @Nullable S await() throws CloudException, InternalException {
+        synchronized( this ) {
+            while( !done ) {
+                try {
+                    wait(deadline - System.currentTimeMillis() > 0 ? deadline - System.currentTimeMillis() : 1000L);
+                }
+                catch( InterruptedException e ) {
+                    cancel();
+                    Thread.currentThread().interrupt();
+                    throw new InternalException(e);
+                }
+            }
+            if( cancelled ) {
+                throw new CancellationException("Wait on " + resourceId + " was cancelled");
+            }
+            if( timedOut ) {
+                throw new CloudException("Timed out waiting on " + engine.getResourceType() + " " + resourceId + " (last state: " + state + ")");
+            }
+            return state;
+        }
+    }
+
+    /**
+     * Abandons the wait. Any thread blocked in {@link #await()} will receive a {@link CancellationException}.
+     * @return true if the wait was cancelled, false if it had already completed
+     */
+    public boolean cancel() {
+        synchronized( this ) {
+            if( done ) {
+                return false;
+            }
+            cancelled = true;
+            done = true;
+            notifyAll();
+        }
+        engine.remove(this);
+        return true;
+    }
+
+    /**
+     * @return the ID of the resource being waited on
+     */
+    public @Nonnull String getResourceId() {
+        return resourceId;
+    }
+
+    /**
+     * @return the most recently observed state of the resource, null if it has not been seen (or no longer exists)
+     */
+    public synchronized @Nullable S getState() {
+        return state;
+    }
+
+    /**
+     * @return true if the wait was cancelled
+     */
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return true if the wait has completed for any reason
+     */
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    /**
+     * @return true if the deadline passed before the resource reached a satisfying state
+     */
+    public synchronized boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Ends the wait if its deadline has passed without checking the state of the resource.
+     * @param now the current time
+     * @return true if the wait has completed
+     */
+    boolean expire(long now) {
+        synchronized( this ) {
+            if( !done && now >= deadline ) {
+                timedOut = true;
+                done = true;
+                notifyAll();
+            }
+            return done;
+        }
+    }
+
+    long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Checks a freshly polled state against the wait condition.
+     * @param current the current state of the resource, null if it does not exist
+     * @param now the time of the poll
+     * @return true if the wait completed as a result of this check
+     */
+    boolean check(@Nullable S current, long now) {
+        synchronized( this ) {
+            if( done ) {
+                return true;
+            }
+            state = current;
+            if( condition.isSatisfied(current) ) {
+                done = true;
+            }
+            else if( now >= deadline ) {
+                timedOut = true;
+                done = true;
+            }
+            if( done ) {
+                notifyAll();
+            }
+            return done;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.dell.asm;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Records every exchange made through {@link APIHandler#post(String, String)} to a compact file so that a production
+ * scenario, such as a nightly inventory refresh, can later be replayed through a {@link ReplayTransport}. Each record
+ * holds the operation, the request, the HTTP status, the response, and the time the exchange took. Connection IDs,
+ * user names, passwords, and user tokens are redacted before anything is written, using the same credential list the
+ * {@link ReplayTransport} ignores when matching requests.
+ * <p>
+ *     The file is a gzipped stream of records, each written as the operation, the timestamp, the elapsed nanoseconds,
+ *     the status code, the reason phrase, and then the request and response as length-prefixed UTF-8. Install a
+ *     recorder with {@link DellASM#setWireRecorder(WireRecorder)} and close it when the scenario is complete.
+ * </p>
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class WireRecorder {
+    static public final int MAGIC   = 0x41534d57;
+    static public final int VERSION = 1;
+
+    /**
+     * Reads every exchange from a recording.
+     * @param file the recording
+     * @return the recorded exchanges in the order they were made
+     * @throws IOException the file could not be read or is not a recording
+     */
+    static public @Nonnull List<ReplayTransport.Exchange> read(@Nonnull File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+
+        try {
+            return read(input);
+        }
+        finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Reads every exchange from a recording.
+     * @param input a stream of the recording
+     * @return the recorded exchanges in the order they were made
+     * @throws IOException the stream could not be read or is not a recording
+     */
+    static public @Nonnull List<ReplayTransport.Exchange> read(@Nonnull InputStream input) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(input)));
+        ArrayList<ReplayTransport.Exchange> exchanges = new ArrayList<ReplayTransport.Exchange>();
+
+        if( in.readInt() != MAGIC ) {
+            throw new IOException("Not a Dell ASM wire recording");
+        }
+        int version = in.readInt();
+
+        if( version != VERSION ) {
+            throw new IOException("Unsupported wire recording version: " + version);
+        }
+        while( true ) {
+            String operation;
+
+            try {
+                operation = in.readUTF();
+            }
+            catch( EOFException e ) {
+                break;
+            }
+            long timestamp = in.readLong();
+            long elapsed = in.readLong();
+            int statusCode = in.readInt();
+            String reason = in.readUTF();
+            String request = readString(in);
+            String response = readString(in);
+
+            exchanges.add(new ReplayTransport.Exchange(operation, timestamp, elapsed, statusCode, reason, request, response));
+        }
+        return exchanges;
+    }
+
+    static private @Nonnull String readString(@Nonnull DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+
+        in.readFully(bytes);
+        return new String(bytes, "utf-8");
+    }
+
+    static private void writeString(@Nonnull DataOutputStream out, @Nonnull String value) throws IOException {
+        byte[] bytes = value.getBytes("utf-8");
+
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private DataOutputStream out;
+    private long             records;
+
+    /**
+     * Constructs a recorder writing to the specified file, replacing any existing content.
+     * @param file the file to which exchanges are recorded
+     * @throws IOException the file could not be opened
+     */
+    public WireRecorder(@Nonnull File file) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    /**
+     * Finishes the recording. Exchanges recorded after the recorder is closed are ignored.
+     * @throws IOException an error occurred completing the file
+     */
+    public synchronized void close() throws IOException {
+        if( out != null ) {
+            try {
+                out.close();
+            }
+            finally {
+                out = null;
+            }
+        }
+    }
+
+    /**
+     * @return the number of exchanges recorded so far
+     */
+    public synchronized long getRecordCount() {
+        return records;
+    }
+
+    /**
+     * Records a single exchange. Errors writing the recording are logged rather than failing the call being recorded.
+     * @param operation the API operation
+     * @param request the request body
+     * @param statusCode the HTTP status of the response
+     * @param reason the HTTP reason phrase of the response
+     * @param response the response body
+     * @param elapsed the time in nanoseconds from sending the request to receiving the full response
+     */
+    public synchronized void record(@Nonnull String operation, @Nonnull String request, int statusCode, @Nullable String reason, @Nonnull String response, @Nonnegative long elapsed) {
+        if( out == null ) {
+            return;
+        }
+        try {
+            out.writeUTF(operation);
+            out.writeLong(System.currentTimeMillis());
+            out.writeLong(elapsed);
+            out.writeInt(statusCode);
+            out.writeUTF(reason == null ? "" : reason);
+            writeString(out, SlowCallLog.redact(request, Integer.MAX_VALUE));
+            writeString(out, SlowCallLog.redact(response, Integer.MAX_VALUE));
+            records++;
+        }
+        catch( IOException e ) {
+            DellASM.getLogger(WireRecorder.class).warn("Unable to record " + operation + ": " + e.getMessage());
+        }
+    }
+}
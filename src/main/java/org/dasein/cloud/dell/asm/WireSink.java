@@ -0,0 +1,269 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm;
+
+import org.apache.http.Header;
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Captures wire traffic off the request thread. Request threads hand each exchange to a bounded queue and return
+ * immediately; a single background thread formats the exchanges and writes them to the wire logger. When the queue is
+ * full, exchanges are dropped and counted rather than blocking the request. Bodies longer than the maximum payload are
+ * truncated, and each operation may be sampled at its own rate so wire capture can be left on in production.
+ * <p>
+ *     The capacity of the queue is read from the <code>dasein.asm.wire.capacity</code> system property (default
+ *     {@link #DEFAULT_CAPACITY}) when the sink is first used.
+ * </p>
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class WireSink {
+    static private final Logger logger = DellASM.getLogger(WireSink.class);
+
+    static public final int DEFAULT_CAPACITY    = 1024;
+    static public final int DEFAULT_MAX_PAYLOAD = 64 * 1024;
+
+    static private WireSink instance;
+
+    /**
+     * @return the sink shared by all wire capture in this JVM
+     */
+    static public synchronized @Nonnull WireSink getInstance() {
+        if( instance == null ) {
+            instance = new WireSink(Integer.getInteger("dasein.asm.wire.capacity", DEFAULT_CAPACITY));
+        }
+        return instance;
+    }
+
+    static private class Exchange {
+        String   body;
+        Header[] headers;
+        String   line;
+        Logger   log;
+        String   operation;
+        boolean  request;
+        String   target;
+        long     timestamp;
+        int      truncated;
+    }
+
+    private final AtomicLong                        captured      = new AtomicLong(0L);
+    private volatile double                         defaultRate   = 1.0;
+    private final AtomicLong                        dropped       = new AtomicLong(0L);
+    private volatile int                            maxPayload    = DEFAULT_MAX_PAYLOAD;
+    private final ArrayBlockingQueue<Exchange>      queue;
+    private final Random                            random        = new Random();
+    private final ConcurrentHashMap<String,Double>  rates         = new ConcurrentHashMap<String, Double>();
+    private final AtomicLong                        sampledOut    = new AtomicLong(0L);
+    private final AtomicLong                        truncated     = new AtomicLong(0L);
+
+    private WireSink(@Nonnegative int capacity) {
+        queue = new ArrayBlockingQueue<Exchange>(Math.max(1, capacity));
+        Thread writer = new ASMThreadFactory("wire").newThread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        });
+
+        writer.start();
+    }
+
+    /**
+     * Queues a request or response for writing to the wire log.
+     * @param log the wire logger to write to
+     * @param operation the API operation of the exchange
+     * @param request true for the request, false for the response
+     * @param target the URL of the exchange
+     * @param line the request or status line
+     * @param headers the headers of the request or response
+     * @param body the body of the request or response
+     */
+    public void capture(@Nonnull Logger log, @Nonnull String operation, boolean request, @Nonnull String target, @Nullable String line, @Nullable Header[] headers, @Nullable String body) {
+        Exchange e = new Exchange();
+        int max = maxPayload;
+
+        e.log = log;
+        e.operation = operation;
+        e.request = request;
+        e.target = target;
+        e.line = line;
+        e.headers = headers;
+        e.timestamp = System.currentTimeMillis();
+        if( body != null && body.length() > max ) {
+            // copy so the queue does not pin the full body in memory
+            e.body = new String(body.substring(0, max));
+            e.truncated = body.length() - max;
+            truncated.incrementAndGet();
+        }
+        else {
+            e.body = body;
+        }
+        if( queue.offer(e) ) {
+            captured.incrementAndGet();
+        }
+        else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the number of exchanges queued for writing
+     */
+    public long getCaptured() {
+        return captured.get();
+    }
+
+    /**
+     * @return the number of exchanges dropped because the queue was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the maximum number of characters of a body written to the wire log
+     */
+    public int getMaxPayload() {
+        return maxPayload;
+    }
+
+    /**
+     * @return the number of calls skipped by sampling
+     */
+    public long getSampledOut() {
+        return sampledOut.get();
+    }
+
+    /**
+     * @param operation the API operation of interest
+     * @return the fraction of calls to the operation that are captured
+     */
+    public double getSampleRate(@Nonnull String operation) {
+        Double rate = rates.get(operation.toLowerCase(Locale.ENGLISH));
+
+        return (rate == null ? defaultRate : rate);
+    }
+
+    /**
+     * @return the number of bodies truncated to the maximum payload
+     */
+    public long getTruncated() {
+        return truncated.get();
+    }
+
+    /**
+     * Decides whether a call should be captured. Each call is sampled once, so its request and response are either
+     * both captured or both skipped.
+     * @param log the wire logger the call would be written to
+     * @param operation the API operation being called
+     * @return true if the call should be captured
+     */
+    public boolean sample(@Nonnull Logger log, @Nonnull String operation) {
+        if( !log.isDebugEnabled() ) {
+            return false;
+        }
+        double rate = getSampleRate(operation);
+
+        if( rate >= 1.0 || (rate > 0.0 && random.nextDouble() < rate) ) {
+            return true;
+        }
+        sampledOut.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Sets the maximum number of characters of a body written to the wire log; longer bodies are truncated.
+     * @param maxPayload the maximum payload in characters
+     */
+    public void setMaxPayload(@Nonnegative int maxPayload) {
+        this.maxPayload = maxPayload;
+    }
+
+    /**
+     * Sets the fraction of calls captured for operations without their own sample rate.
+     * @param rate the fraction of calls captured, from 0 (none) to 1 (all)
+     */
+    public void setDefaultSampleRate(double rate) {
+        defaultRate = rate;
+    }
+
+    /**
+     * Sets the fraction of calls captured for a specific operation.
+     * @param operation the API operation being sampled
+     * @param rate the fraction of calls captured, from 0 (none) to 1 (all)
+     */
+    public void setSampleRate(@Nonnull String operation, double rate) {
+        rates.put(operation.toLowerCase(Locale.ENGLISH), rate);
+    }
+
+    private void drain() {
+        while( true ) {
+            Exchange e;
+
+            try {
+                e = queue.take();
+            }
+            catch( InterruptedException ignore ) {
+                continue;
+            }
+            try {
+                write(e);
+            }
+            catch( Throwable t ) {
+                logger.warn("Unable to write wire log: " + t.getMessage());
+            }
+        }
+    }
+
+    private void write(@Nonnull Exchange e) {
+        Logger log = e.log;
+
+        log.debug("");
+        log.debug((e.request ? ">>> [POST (" : "<<< [POST (") + new Date(e.timestamp) + ")] " + e.operation + (e.request ? " -> " : " <- ") + e.target + (e.request ? " >" : " <") + "--------------------------------------------------------------------------------------");
+        if( e.line != null ) {
+            log.debug(e.line);
+        }
+        if( e.headers != null ) {
+            for( Header h : e.headers ) {
+                log.debug(h.getName() + ": " + (h.getValue() == null ? "" : h.getValue().trim()));
+            }
+        }
+        log.debug("");
+        if( e.body != null ) {
+            log.debug(e.body);
+            if( e.truncated > 0 ) {
+                log.debug("... [" + e.truncated + " more characters truncated]");
+            }
+        }
+        log.debug("");
+    }
+}
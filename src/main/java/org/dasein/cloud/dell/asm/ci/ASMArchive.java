@@ -30,29 +30,32 @@ import org.dasein.cloud.compute.Architecture;
 import org.dasein.cloud.compute.Platform;
 import org.dasein.cloud.dell.asm.APIHandler;
 import org.dasein.cloud.dell.asm.APIResponse;
+import org.dasein.cloud.dell.asm.ASMEvents;
+import org.dasein.cloud.dell.asm.ContentParser;
 import org.dasein.cloud.dell.asm.DellASM;
 import org.dasein.cloud.dell.asm.NoContextException;
+import org.dasein.cloud.dell.asm.ParsedTopology;
+import org.dasein.cloud.dell.asm.PhaseTimings;
+import org.dasein.cloud.dell.asm.PlatformResolver;
+import org.dasein.cloud.dell.asm.SnapshotCache;
+import org.dasein.cloud.dell.asm.StringInterner;
+import org.dasein.cloud.dell.asm.TopologyCache;
 import org.dasein.cloud.util.APITrace;
-import org.dasein.cloud.util.XMLParser;
 import org.dasein.util.uom.storage.Megabyte;
 import org.dasein.util.uom.storage.Storage;
 import org.w3c.dom.Document;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import javax.xml.parsers.ParserConfigurationException;
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 /**
  * [Class Documentation]
@@ -117,37 +120,25 @@ public class ASMArchive extends AbstractTopologySupport<DellASM> {
                 logger.trace("ENTER: " + ASMArchive.class.getName() + ".listTopologies(" + options + ")");
             }
             try {
-                APIHandler handler = new APIHandler(getProvider());
-                StringBuilder xml = new StringBuilder();
+                long staleness = getProvider().getSnapshotStaleness();
+                List<Topology> topologies;
 
-                xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-                xml.append("<!DOCTYPE drl SYSTEM \"").append(handler.getEndpoint()).append("/labmagic/v1_2/api/archive/enumerateArchiveRequest.dtd\">");
-
-                xml.append("<drl mode=\"normal\" connectionid=\"").append(handler.getConnectionId()).append("\">");
-                xml.append("<").append(APIHandler.ENUMERATE_ARCHIVE).append(" type=\"TOPOLOGY\" fetch=\"deep\"").append("/>");
-                xml.append("</drl>");
-
-                APIResponse response = handler.post(APIHandler.ENUMERATE_ARCHIVE, xml.toString());
-
-                Document doc = response.getXML();
-
-                if( doc == null ) {
-                    Collection<Topology> topologies = Collections.emptyList();
-
-                    if( logger.isDebugEnabled() ) {
-                        logger.debug("listTopologies(" + options + ")=" + topologies);
-                    }
-                    return topologies;
+                if( staleness < 1L ) {
+                    topologies = loadTopologies(options);
                 }
-                NodeList archives = doc.getElementsByTagName("archive");
-                ArrayList<Topology> topologies = new ArrayList<Topology>();
-
-                for( int i=0; i<archives.getLength(); i++ ) {
-                    Node archive = archives.item(i);
-                    Topology t = toTopology(archive);
+                else {
+                    List<Topology> snapshot = SnapshotCache.getInstance(getProvider()).get(getProvider(), SnapshotCache.TOPOLOGIES, staleness, getProvider().getSnapshotMaximumAge(), new SnapshotCache.Loader<Topology>() {
+                        @Override
+                        public @Nonnull Iterable<Topology> load() throws CloudException, InternalException {
+                            return loadTopologies(null);
+                        }
+                    });
 
-                    if( t != null && (options == null || options.matches(t)) ) {
-                        topologies.add(t);
+                    topologies = new ArrayList<Topology>();
+                    for( Topology t : snapshot ) {
+                        if( options == null || options.matches(t) ) {
+                            topologies.add(copy(t));
+                        }
                     }
                 }
                 if( logger.isDebugEnabled() ) {
@@ -167,15 +158,78 @@ public class ASMArchive extends AbstractTopologySupport<DellASM> {
     }
 
 
-    private @Nullable  Topology toTopology(@Nullable Node archive) throws CloudException, InternalException {
+    private @Nonnull List<Topology> loadTopologies(@Nullable TopologyFilterOptions options) throws CloudException, InternalException {
+        APIHandler handler = new APIHandler(getProvider());
+        StringBuilder xml = new StringBuilder();
+
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        xml.append("<!DOCTYPE drl SYSTEM \"").append(handler.getEndpoint()).append("/labmagic/v1_2/api/archive/enumerateArchiveRequest.dtd\">");
+
+        xml.append("<drl mode=\"normal\" connectionid=\"").append(handler.getConnectionId()).append("\">");
+        xml.append("<").append(APIHandler.ENUMERATE_ARCHIVE).append(" type=\"TOPOLOGY\" fetch=\"deep\"").append("/>");
+        xml.append("</drl>");
+
+        APIResponse response = handler.post(APIHandler.ENUMERATE_ARCHIVE, xml.toString());
+
+        Document doc = response.getXML();
+
+        if( doc == null ) {
+            return Collections.emptyList();
+        }
+        NodeList archives = doc.getElementsByTagName("archive");
+        ArrayList<Topology> topologies = new ArrayList<Topology>();
+        int parallelism = getProvider().getMappingParallelism();
+        long mapping = System.nanoTime();
+        ParsedTopology[] contents = (parallelism > 1 ? ContentParser.parse(archives, parallelism) : null);
+
+        for( int i=0; i<archives.getLength(); i++ ) {
+            Node archive = archives.item(i);
+            Topology t = (contents == null ? toTopology(archive) : toTopology(archive, contents[i]));
+
+            if( t != null && (options == null || options.matches(t)) ) {
+                topologies.add(t);
+            }
+        }
+        PhaseTimings.recordSince(PhaseTimings.Phase.MAP, mapping);
+        return topologies;
+    }
+
+    @Nullable Topology toTopology(@Nullable Node archive) throws CloudException, InternalException {
+        if( archive == null ) {
+            return null;
+        }
+        String xml = ContentParser.getContent(archive);
+        ParsedTopology content = null;
+
+        if( xml != null ) {
+            long parsing = System.nanoTime();
+
+            content = TopologyCache.getInstance().parse(xml);
+            if( ASMEvents.isEnabled() ) {
+                ASMEvents.contentParsed("archive", xml.length(), System.nanoTime() - parsing);
+            }
+        }
+        return toTopology(archive, content);
+    }
+
+    /**
+     * Maps an archive whose embedded content has already been parsed.
+     * @param archive the archive element of an <code>enumerateArchive</code> response
+     * @param topology the parsed content of the archive, null if it has none
+     * @return the topology for the archive, null if the archive does not identify a topology
+     * @throws CloudException the provider has no context
+     * @throws InternalException an error occurred mapping the archive
+     */
+    @Nullable Topology toTopology(@Nullable Node archive, @Nullable ParsedTopology topology) throws CloudException, InternalException {
         if( archive == null ) {
             return null;
         }
+        StringInterner strings = getProvider().getStringInterner();
         HashMap<String,String> tags = new HashMap<String, String>();
         ArrayList<Topology.VMDevice> vms = new ArrayList<Topology.VMDevice>();
         ArrayList<Topology.VLANDevice> vlans = new ArrayList<Topology.VLANDevice>();
         TopologyState state = TopologyState.OFFLINE;
-        String regionId = getContext().getRegionId();
+        String regionId = strings.intern(getContext().getRegionId());
         String ownerId = null, topologyId = null;
         String name = null, description = null;
         long created = 0L;
@@ -201,7 +255,7 @@ public class ASMArchive extends AbstractTopologySupport<DellASM> {
             }
             n = attrs.getNamedItem("owner");
             if( n != null ) {
-                ownerId = n.getNodeValue().trim();
+                ownerId = strings.intern(n.getNodeValue().trim());
             }
             else {
                 ownerId = "--public--";
@@ -212,69 +266,28 @@ public class ASMArchive extends AbstractTopologySupport<DellASM> {
             }
             n = attrs.getNamedItem("devicemodel");
             if( n != null ) {
-                tags.put("devicemodel", n.getNodeValue().trim());
+                tags.put("devicemodel", strings.intern(n.getNodeValue().trim()));
             }
             n = attrs.getNamedItem("devicemanufacturer");
             if( n != null ) {
-                tags.put("devicemanufacturer", n.getNodeValue().trim());
+                tags.put("devicemanufacturer", strings.intern(n.getNodeValue().trim()));
             }
             n = attrs.getNamedItem("isrecycled");
             if( n != null ) {
-                tags.put("isrecycled", n.getNodeValue().trim());
+                tags.put("isrecycled", strings.intern(n.getNodeValue().trim()));
             }
             n = attrs.getNamedItem("ismaster");
             if( n != null ) {
-                tags.put("ismaster", n.getNodeValue().trim());
+                tags.put("ismaster", strings.intern(n.getNodeValue().trim()));
             }
         }
-        if( archive.hasChildNodes() ) {
-            NodeList items = archive.getChildNodes();
-
-            for( int i=0; i<items.getLength(); i++ ) {
-                Node n = items.item(i);
-
-                if( n.getNodeName().equalsIgnoreCase("content") && n.hasChildNodes() ) {
-                    String xml = n.getFirstChild().getNodeValue();
-
-                    try {
-                        Document doc = XMLParser.parse(new ByteArrayInputStream(xml.getBytes()));
-                        NodeList topologies = doc.getElementsByTagName("topology");
-
-                        for( int j=0; j<topologies.getLength(); j++ ) {
-                            Node t = topologies.item(j);
-
-                            if( t.hasChildNodes() ) {
-                                NodeList children = t.getChildNodes();
-
-                                // have to parse all devices first
-                                // yes, the DTD says they should all come first, but I never trust that
-                                for( int k=0; k<children.getLength(); k++ ) {
-                                    Node child = children.item(k);
-
-                                    if( child.getNodeName().equalsIgnoreCase("device") ) {
-                                        parseDevice(child, vms, vlans);
-                                    }
-                                }
-                                // then attributes
-                                for( int k=0; k<children.getLength(); k++ ) {
-                                    Node child = children.item(k);
-                                    if( child.getNodeName().equalsIgnoreCase("attribute") ) {
-                                        parseAttribute(child, vms, vlans);
-                                    }
-                                }
-                            }
-                        }
-                    }
-                    catch( IOException e ) {
-                        throw new CloudException(e);
-                    }
-                    catch( ParserConfigurationException e ) {
-                        throw new InternalException(e);
-                    }
-                    catch( SAXException e ) {
-                        throw new CloudException(e);
-                    }
-                }
+        if( topology != null ) {
+            // have to parse all devices first so attributes can find the devices they refer to
+            for( int k=0; k<topology.getDeviceCount(); k++ ) {
+                parseDevice(topology, k, vms, vlans);
+            }
+            for( int k=0; k<topology.getAttributeCount(); k++ ) {
+                parseAttribute(topology, k, vms, vlans);
             }
         }
         if( topologyId == null ) {
@@ -298,27 +311,40 @@ public class ASMArchive extends AbstractTopologySupport<DellASM> {
         return t;
     }
 
-    private void parseAttribute(@Nonnull Node node, @Nonnull List<Topology.VMDevice> vms, @Nonnull List<Topology.VLANDevice> vlans) throws CloudException, InternalException {
-        if( !node.hasAttributes() || !node.hasChildNodes() ) {
-            return;
-        }
-        NamedNodeMap attrs = node.getAttributes();
-        String name = null, refs = null;
-
-        Node a = attrs.getNamedItem("name");
+    /**
+     * Copies the fields this archive fills in on a topology, so topologies served from a snapshot are never shared
+     * between callers. Interfaces and VLANs are not parsed yet, so there are none to copy.
+     * @param t the topology to copy
+     * @return a new topology holding the same values
+     */
+    static @Nonnull Topology copy(@Nonnull Topology t) {
+        Topology c = Topology.getInstance(t.getProviderOwnerId(), t.getProviderRegionId(), t.getProviderTopologyId(), t.getCurrentState(), t.getName(), t.getDescription()).createdAt(t.getCreationTimestamp());
+        Map<String,String> tags = t.getTags();
+        Iterable<Topology.VMDevice> devices = t.getVirtualMachines();
+        ArrayList<Topology.VMDevice> vms = new ArrayList<Topology.VMDevice>();
 
-        if( a != null ) {
-            name = a.getNodeValue().trim().toLowerCase();
+        if( tags != null ) {
+            c.setTags(new HashMap<String, String>(tags));
         }
-        a = attrs.getNamedItem("refs");
-        if( a != null ) {
-            refs = a.getNodeValue().trim().toLowerCase();
+        if( devices != null ) {
+            for( Topology.VMDevice d : devices ) {
+                vms.add(Topology.VMDevice.getInstance(d.getDeviceId(), d.getCapacity(), d.getName(), d.getCpuCount(), d.getMemory(), d.getArchitecture(), d.getPlatform()));
+            }
         }
-        if( name == null || refs == null ) {
-            return;
+        if( !vms.isEmpty() ) {
+            c.withVirtualMachines(vms.toArray(new Topology.VMDevice[vms.size()]));
         }
+        return c;
+    }
 
+    void parseAttribute(@Nonnull ParsedTopology topology, int attribute, @Nonnull List<Topology.VMDevice> vms, @Nonnull List<Topology.VLANDevice> vlans) throws CloudException, InternalException {
+        String name = topology.getAttributeName(attribute);
+        int device = topology.getAttributeDevice(attribute);
 
+        if( name == null || device < 0 ) {
+            return;
+        }
+        String refs = topology.getDeviceKey(device);
         Topology.VLANDevice vlan = null;
         Topology.VMDevice vm = null;
 
@@ -342,45 +368,11 @@ public class ASMArchive extends AbstractTopologySupport<DellASM> {
         }
         else {
             if( name.equalsIgnoreCase("al_osimages") ) {
-                NodeList values = node.getChildNodes();
-
-                for( int i=0; i<values.getLength(); i++ ) {
-                    Node n = values.item(i);
-
-                    if( n.getNodeName().equalsIgnoreCase("value") && n.hasChildNodes() ) {
-                        NodeList osimages = n.getChildNodes();
-
-                        for( int j=0; j<osimages.getLength(); j++ ) {
-                            Node item = osimages.item(j);
-
-                            if( item.getNodeName().equalsIgnoreCase("osimages") && item.hasChildNodes() ) {
-                                NodeList elements = item.getChildNodes();
-
-                                for( int k=0; k<elements.getLength(); k++ ) {
-                                    Node element = elements.item(k);
-
-                                    if( element.getNodeName().equalsIgnoreCase("element") && element.hasAttributes() ) {
-                                        NamedNodeMap os = element.getAttributes();
-                                        StringBuilder osname = new StringBuilder();
-                                        Node o;
-
-                                        o = os.getNamedItem("name");
-                                        if( o != null ) {
-                                            osname.append(o.getNodeValue().trim());
-                                        }
-                                        o = os.getNamedItem("path");
-                                        if( o != null ) {
-                                            osname.append(" ").append(o.getNodeValue().trim());
-                                        }
-                                        Platform platform = Platform.guess(osname.toString());
-
-                                        if( !platform.equals(Platform.UNKNOWN) ) {
-                                            vm.withPlatform(platform);
-                                        }
-                                    }
-                                }
-                            }
-                        }
+                for( String osname : topology.getAttributeValues(attribute) ) {
+                    Platform platform = PlatformResolver.platform(osname);
+
+                    if( !platform.equals(Platform.UNKNOWN) ) {
+                        vm.withPlatform(platform);
                     }
                 }
             }
@@ -388,18 +380,9 @@ public class ASMArchive extends AbstractTopologySupport<DellASM> {
 
     }
 
-    private void parseDevice(@Nonnull Node node, @Nonnull List<Topology.VMDevice> vms, @Nonnull List<Topology.VLANDevice> vlans) throws CloudException, InternalException {
-        if( !node.hasAttributes() ) {
-            return;
-        }
-        NamedNodeMap attrs = node.getAttributes();
-        String type = null;
-
-        Node a = attrs.getNamedItem("model");
+    void parseDevice(@Nonnull ParsedTopology topology, int device, @Nonnull List<Topology.VMDevice> vms, @Nonnull List<Topology.VLANDevice> vlans) throws CloudException, InternalException {
+        String type = topology.getDeviceModel(device);
 
-        if( a != null ) {
-            type = a.getNodeValue().trim().toLowerCase();
-        }
         if( type == null ) {
             return;
         }
@@ -411,75 +394,40 @@ public class ASMArchive extends AbstractTopologySupport<DellASM> {
             String deviceId, name;
             String[] interfaces = new String[0];
 
-            a = attrs.getNamedItem("key");
-            if( a == null ) {
+            deviceId = topology.getDeviceKey(device);
+            if( deviceId == null || deviceId.equals("") ) {
                 return;
             }
-            deviceId = a.getNodeValue().trim();
-            if( deviceId.equals("") ) {
+            name = topology.getDeviceName(device);
+            if( name == null ) {
+                name = deviceId;
+            }
+            int value = topology.getCpuCount(device);
+
+            if( value == ParsedTopology.INVALID ) {
+                logger.warn("Invalid CPU count value for " + deviceId);
                 return;
             }
-            a = attrs.getNamedItem("name");
-            if( a == null ) {
-                name = deviceId;
+            else if( value != ParsedTopology.UNSET ) {
+                cpuCount = value;
             }
-            else {
-                name = a.getNodeValue().trim();
-            }
-            if( node.hasChildNodes() ) {
-                NodeList children = node.getChildNodes();
-
-                for( int i=0; i<children.getLength(); i++ ) {
-                    Node child = children.item(i);
-
-                    if( child.getNodeName().equalsIgnoreCase("enforcedproperties") && child.hasChildNodes() ) {
-                        NodeList properties = child.getChildNodes();
-
-                        for( int j=0; j<properties.getLength(); j++ ) {
-                            Node property = properties.item(j);
-
-                            if( property.getNodeName().equalsIgnoreCase("property") && property.hasAttributes() ) {
-                                NamedNodeMap pa = property.getAttributes();
-                                Node n = pa.getNamedItem("name");
-                                Node v = pa.getNamedItem("value");
-
-                                if( n != null && v != null ) {
-                                    if( n.getNodeValue().equalsIgnoreCase("cpu") ) {
-                                        try {
-                                            cpuCount = Integer.parseInt(v.getNodeValue());
-                                        }
-                                        catch( NumberFormatException e ) {
-                                            logger.warn("Invalid CPU count value: " + v.getNodeValue());
-                                            return;
-                                        }
-                                    }
-                                    else if( n.getNodeValue().equalsIgnoreCase("ram") ) {
-                                        try {
-                                            memory = new Storage<Megabyte>(Integer.parseInt(v.getNodeValue()), Storage.MEGABYTE);
-                                        }
-                                        catch( NumberFormatException e ) {
-                                            logger.warn("Invalid RAM value: " + v.getNodeValue());
-                                            return;
-                                        }
-                                    }
-                                    else if( n.getNodeValue().equalsIgnoreCase("servercount") ) {
-                                        try {
-                                            capacity = Integer.parseInt(v.getNodeValue());
-                                        }
-                                        catch( NumberFormatException e ) {
-                                            logger.warn("Invalid server count value: " + v.getNodeValue());
-                                            return;
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                    }
-                    else if( child.getNodeName().equalsIgnoreCase("interface") && child.hasChildNodes() ) {
-                        // TODO: interface parsing
-                    }
-                }
+            value = topology.getRamInMb(device);
+            if( value == ParsedTopology.INVALID ) {
+                logger.warn("Invalid RAM value for " + deviceId);
+                return;
+            }
+            else if( value != ParsedTopology.UNSET ) {
+                memory = new Storage<Megabyte>(value, Storage.MEGABYTE);
+            }
+            value = topology.getServerCount(device);
+            if( value == ParsedTopology.INVALID ) {
+                logger.warn("Invalid server count value for " + deviceId);
+                return;
+            }
+            else if( value != ParsedTopology.UNSET ) {
+                capacity = value;
             }
+            // TODO: interface parsing
             vms.add(Topology.VMDevice.getInstance(deviceId, capacity, name, cpuCount, memory, architecture, platform, interfaces));
         }
         else if( type.equals("vlan") ) {
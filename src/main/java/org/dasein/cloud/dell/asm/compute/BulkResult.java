@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm.compute;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * The outcome of a single item in a bulk operation. Bulk operations never roll back the items that succeeded, so
+ * each item reports its own success or failure.
+ * @param <T> the type of value produced by a successful item
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class BulkResult<T> {
+    private Throwable error;
+    private String    id;
+    private T         result;
+
+    BulkResult(@Nullable String id, @Nullable T result, @Nullable Throwable error) {
+        this.id = id;
+        this.result = result;
+        this.error = error;
+    }
+
+    /**
+     * @return the error that caused this item to fail, null if it succeeded
+     */
+    public @Nullable Throwable getError() {
+        return error;
+    }
+
+    /**
+     * @return the ID of the resource this item operated on; for launches, the reservation ID if a reservation was confirmed
+     */
+    public @Nullable String getId() {
+        return id;
+    }
+
+    /**
+     * @return the value produced by this item, null if it failed or produced nothing
+     */
+    public @Nullable T getResult() {
+        return result;
+    }
+
+    /**
+     * @return true if this item completed without error
+     */
+    public boolean isSuccess() {
+        return (error == null);
+    }
+
+    @Override
+    public @Nonnull String toString() {
+        return (isSuccess() ? "OK" : "FAILED") + "[" + id + "]" + (error == null ? "" : ": " + error.getMessage());
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm.compute;
+
+import org.dasein.cloud.compute.VirtualMachine;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A launch whose reservation has been confirmed by Dell ASM but whose topology is still being read in the background.
+ * The pending virtual machine is available immediately; {@link #get()} blocks until the fully resolved virtual machine
+ * is available. Cancelling the handle abandons the background resolution but does not cancel the reservation.
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class PendingLaunch implements Future<VirtualMachine> {
+    private Future<VirtualMachine> completion;
+    private VirtualMachine         pending;
+    private String                 reservationId;
+
+    PendingLaunch(@Nonnull String reservationId, @Nonnull VirtualMachine pending, @Nonnull Future<VirtualMachine> completion) {
+        this.reservationId = reservationId;
+        this.pending = pending;
+        this.completion = completion;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return completion.cancel(mayInterruptIfRunning);
+    }
+
+    /**
+     * Blocks until the topology of the reservation has been read.
+     * @return the launched virtual machine, null if the topology contained no virtual machines
+     * @throws InterruptedException the waiting thread was interrupted
+     * @throws ExecutionException reading the topology failed; the cause is the underlying cloud or internal exception
+     */
+    @Override
+    public VirtualMachine get() throws InterruptedException, ExecutionException {
+        return completion.get();
+    }
+
+    @Override
+    public VirtualMachine get(long timeout, @Nonnull TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        return completion.get(timeout, unit);
+    }
+
+    /**
+     * The placeholder is a handle only. Its ID is the bare reservation ID rather than a virtual machine ID, because
+     * the device key is not known until the topology is read, so it cannot be looked up or waited on by ID. Use
+     * {@link #get()} for the launched virtual machine or wait on {@link #getReservationId()}.
+     * @return a placeholder for the virtual machine in the {@link org.dasein.cloud.compute.VmState#PENDING} state
+     */
+    public @Nonnull VirtualMachine getPendingVirtualMachine() {
+        return pending;
+    }
+
+    /**
+     * @return the ID of the confirmed reservation backing this launch
+     */
+    public @Nonnull String getReservationId() {
+        return reservationId;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return completion.isCancelled();
+    }
+
+    @Override
+    public boolean isDone() {
+        return completion.isDone();
+    }
+
+    @Override
+    public @Nonnull String toString() {
+        return "PendingLaunch[" + reservationId + "]";
+    }
+}
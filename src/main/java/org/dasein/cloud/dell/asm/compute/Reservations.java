@@ -0,0 +1,511 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm.compute;
+
+import org.apache.log4j.Logger;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.Velocity;
+import org.apache.velocity.exception.ResourceNotFoundException;
+import org.dasein.cloud.CloudErrorType;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.dell.asm.APIHandler;
+import org.dasein.cloud.dell.asm.APIResponse;
+import org.dasein.cloud.dell.asm.ASMException;
+import org.dasein.cloud.dell.asm.ASMTimestamps;
+import org.dasein.cloud.dell.asm.DellASM;
+import org.dasein.cloud.dell.asm.NoContextException;
+import org.dasein.cloud.dell.asm.ParsedTopology;
+import org.dasein.cloud.dell.asm.PhaseTimings;
+import org.dasein.cloud.dell.asm.RateLimiter;
+import org.dasein.cloud.dell.asm.TopologyCache;
+import org.dasein.util.CalendarWrapper;
+import org.w3c.dom.CharacterData;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Wraps the Dell ASM reservation calls that back virtual machines so they can be shared among the different ways
+ * this module launches, watches, and tears down sessions.
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+class Reservations {
+    static private final Logger logger = DellASM.getLogger(Reservations.class);
+
+    /**
+     * The attributes of a reservation as reported by enumerateReservations.
+     */
+    static class Summary {
+        String createdTime;
+        String name;
+        String reservationId;
+        String status;
+    }
+
+    /**
+     * How long a client token is remembered locally after its reservation is confirmed.
+     */
+    static public final long CLIENT_TOKEN_RETENTION = CalendarWrapper.DAY;
+
+    /**
+     * Tracks a launch made under a client token. An entry is in flight until the launch holding it either confirms a
+     * reservation or fails; other launches with the same token wait on the entry rather than making their own reservation.
+     */
+    static private class ClientToken {
+        long    completedAt;
+        boolean done;
+        String  reservationId;
+
+        synchronized @Nullable String await() throws InternalException {
+            while( !done ) {
+                try {
+                    wait();
+                }
+                catch( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    throw new InternalException(e);
+                }
+            }
+            return reservationId;
+        }
+
+        synchronized void complete(@Nullable String reservationId) {
+            this.reservationId = reservationId;
+            this.completedAt = System.currentTimeMillis();
+            this.done = true;
+            notifyAll();
+        }
+    }
+
+    static private final HashMap<String,ClientToken> clientTokens = new HashMap<String, ClientToken>();
+
+    static private void pruneClientTokens() {
+        long cutoff = System.currentTimeMillis() - CLIENT_TOKEN_RETENTION;
+        Iterator<ClientToken> it = clientTokens.values().iterator();
+
+        while( it.hasNext() ) {
+            ClientToken token = it.next();
+
+            synchronized( token ) {
+                if( token.done && token.completedAt < cutoff ) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private RateLimiter limiter;
+    private DellASM     provider;
+
+    Reservations(@Nonnull DellASM provider) {
+        this(provider, null);
+    }
+
+    /**
+     * Constructs a reservation helper whose calls against Dell ASM are paced by the specified limiter.
+     * @param provider the provider through which calls are made
+     * @param limiter the limiter pacing each call, null for no limit
+     */
+    Reservations(@Nonnull DellASM provider, @Nullable RateLimiter limiter) {
+        this.provider = provider;
+        this.limiter = limiter;
+    }
+
+    /**
+     * Cancels a reservation, tearing down every device in its session.
+     * @param reservationId the reservation to be cancelled
+     * @throws CloudException Dell ASM refused to cancel the reservation or an error occurred with Dell ASM
+     * @throws InternalException an error occurred within Dasein Cloud cancelling the reservation
+     */
+    void cancel(@Nonnull String reservationId) throws CloudException, InternalException {
+        APIHandler handler = new APIHandler(provider);
+        org.apache.velocity.Template template;
+        StringWriter sw = new StringWriter();
+
+        try{
+            template = Velocity.getTemplate("templates/ASM-cancelReservation.vm");
+        }
+        catch(ResourceNotFoundException ex){
+            throw new InternalException("An error occurred cancelling the reservation: " + ex.getMessage());
+        }
+        VelocityContext vc = new VelocityContext();
+
+        vc.put("endpoint", handler.getEndpoint());
+        vc.put("connectionId", handler.getConnectionId());
+        vc.put("cancelReservation", VirtualVM.CANCEL_RESERVATION.toLowerCase());
+        vc.put("cancelReservationDtd", VirtualVM.CANCEL_RESERVATION + "Request.dtd");
+        vc.put("reservationId", reservationId);
+
+        handler.merge(template, vc, sw);
+        throttle();
+        APIResponse response = handler.post(VirtualVM.CANCEL_RESERVATION, sw.toString());
+        Document doc = response.getXML();
+
+        if( doc == null ) {
+            throw new ASMException(CloudErrorType.COMMUNICATION, response.getCode(), "NoResponse", "No response to cancel request");
+        }
+        NodeList errors = doc.getElementsByTagName("error");
+
+        if( errors.getLength() > 0 ) {
+            NamedNodeMap attrs = errors.item(0).getAttributes();
+            String errorCode = getValue(attrs, "code");
+            String errorMsg = getValue(attrs, "message");
+
+            throw new ASMException(CloudErrorType.GENERAL, -1, errorCode == null ? "CancelFailed" : errorCode, errorMsg == null ? "Unable to cancel " + reservationId : errorMsg);
+        }
+    }
+
+    /**
+     * Lists all reservations that are neither completed nor canceled.
+     * @return the active reservations
+     * @throws CloudException an error occurred with Dell ASM listing the reservations
+     * @throws InternalException an error occurred within Dasein Cloud listing the reservations
+     */
+    @Nonnull List<Summary> enumerate() throws CloudException, InternalException {
+        APIHandler handler = new APIHandler(provider);
+        org.apache.velocity.Template template;
+        StringWriter sw = new StringWriter();
+
+        try{
+            template = Velocity.getTemplate("templates/ASM-enumerateReservations.vm");
+        }
+        catch(ResourceNotFoundException ex){
+            throw new InternalException("An error occurred while listing reservations: " + ex.getMessage());
+        }
+        VelocityContext vc = new VelocityContext();
+
+        vc.put("endpoint", handler.getEndpoint());
+        vc.put("connectionId", handler.getConnectionId());
+        vc.put("enumerateReservations", VirtualVM.ENUMERATE_RESERVATIONS.toLowerCase());
+        vc.put("enumerateReservationsDtd", VirtualVM.ENUMERATE_RESERVATIONS + "Request.dtd");
+
+        handler.merge(template, vc, sw);
+        throttle();
+        APIResponse response = handler.post(VirtualVM.ENUMERATE_RESERVATIONS, sw.toString());
+        Document doc = response.getXML();
+
+        if( doc == null ) {
+            throw new ASMException(CloudErrorType.COMMUNICATION, response.getCode(), "NoVMs", "No reservations in lab response");
+        }
+        ArrayList<Summary> summaries = new ArrayList<Summary>();
+        NodeList reservations = doc.getElementsByTagName("reservation");
+
+        for( int i=0; i<reservations.getLength(); i++ ) {
+            Node node = reservations.item(i);
+
+            if( !node.hasAttributes() ) {
+                continue;
+            }
+            NamedNodeMap attrs = node.getAttributes();
+            Summary s = new Summary();
+
+            s.reservationId = getValue(attrs, "reservationid");
+            if( s.reservationId == null ) {
+                continue;
+            }
+            s.name = getValue(attrs, "name");
+            s.status = getValue(attrs, "status");
+            s.createdTime = getValue(attrs, "createdtime");
+            summaries.add(s);
+        }
+        return summaries;
+    }
+
+    /**
+     * Reads the topology of a reservation and parses the embedded topology document.
+     * @param reservationId the reservation whose topology is being read
+     * @return the parsed topology
+     * @throws CloudException an error occurred with Dell ASM reading the topology
+     * @throws InternalException an error occurred within Dasein Cloud parsing the topology
+     */
+    @Nonnull ParsedTopology readTopology(@Nonnull String reservationId) throws CloudException, InternalException {
+        APIHandler handler = new APIHandler(provider);
+        org.apache.velocity.Template template;
+        StringWriter sw = new StringWriter();
+
+        try{
+            template = Velocity.getTemplate("templates/ASM-readTopology.vm");
+        }
+        catch(ResourceNotFoundException ex){
+            throw new InternalException("An error occurred reading the current topology: " + ex.getMessage());
+        }
+        VelocityContext vc = new VelocityContext();
+
+        vc.put("endpoint", handler.getEndpoint());
+        vc.put("connectionId", handler.getConnectionId());
+        vc.put("readTopologyDtd", VirtualVM.READ_TOPOLOGY + "Request.dtd");
+        vc.put("reservationId", reservationId);
+
+        handler.merge(template, vc, sw);
+        throttle();
+        APIResponse response = handler.post(VirtualVM.READ_TOPOLOGY, sw.toString());
+        Document doc = response.getXML();
+        NodeList xmltext = (doc == null ? null : doc.getElementsByTagName("xmltext"));
+
+        if( xmltext == null || xmltext.getLength() < 1 || xmltext.item(0).getFirstChild() == null ) {
+            logger.error("No content in topology for " + reservationId);
+            throw new ASMException(CloudErrorType.COMMUNICATION, response.getCode(), "NoContent", "No content in topology");
+        }
+        long parsing = System.nanoTime();
+
+        try {
+            String xml = ((CharacterData)xmltext.item(0).getFirstChild()).getData().trim();
+            ParsedTopology topology = TopologyCache.getInstance().parse(xml);
+
+            PhaseTimings.recordSince(PhaseTimings.Phase.PARSE, parsing);
+            return topology;
+        }
+        catch( Exception e ) {
+            logger.error("Unable to parse topology for " + reservationId + ": " + e.getMessage());
+            throw new InternalException(e);
+        }
+    }
+
+    /**
+     * Makes a reservation for the specified archive and confirms the first host offered by the ASM scheduler. Dell ASM
+     * provides no way to judge host health, so the first offer is as good as any.
+     * @param imageId the archive being reserved
+     * @param name the name to give the reservation
+     * @return the ID of the confirmed reservation
+     * @throws CloudException the scheduler rejected the reservation or an error occurred with Dell ASM
+     * @throws InternalException an error occurred within Dasein Cloud making the reservation
+     */
+    @Nonnull String reserve(@Nonnull String imageId, @Nullable String name) throws CloudException, InternalException {
+        return confirm(offer(imageId, name), name);
+    }
+
+    /**
+     * Asks the ASM scheduler where the specified archive could run and picks the first host it offers. Dell ASM
+     * provides no way to judge host health, so the first offer is as good as any. An offer is not a reservation: it
+     * does not show up among the account's reservations, and the scheduler may withdraw it before it is confirmed.
+     * @param imageId the archive being reserved
+     * @param name the name under which the scheduler is asked
+     * @return the ID of the offer, to be passed to {@link #confirm(String, String)}
+     * @throws CloudException the scheduler found no host or an error occurred with Dell ASM
+     * @throws InternalException an error occurred within Dasein Cloud making the request
+     */
+    @Nonnull String offer(@Nonnull String imageId, @Nullable String name) throws CloudException, InternalException {
+        APIHandler handler = new APIHandler(provider);
+        org.apache.velocity.Template template;
+        StringWriter sw = new StringWriter();
+
+        try{
+            template = Velocity.getTemplate("templates/ASM-makeReservation.vm");
+        }
+        catch(ResourceNotFoundException ex){
+            throw new InternalException("An error occurred while launching a VM: " + ex.getMessage());
+        }
+        VelocityContext vc = new VelocityContext();
+
+        vc.put("endpoint", handler.getEndpoint());
+        vc.put("connectionId", handler.getConnectionId());
+        vc.put("makeReservation", VirtualVM.MAKE_RESERVATION.toLowerCase());
+        vc.put("makeReservationDtd", VirtualVM.MAKE_RESERVATION + "Request.dtd");
+        vc.put("machineImageId", imageId);
+        vc.put("hostName", name);
+        String sessionDuration = "<permanent start=\"" + ASMTimestamps.format(System.currentTimeMillis()) + "\" />";//TODO: if start/end times provided add here
+        vc.put("sessionDuration", sessionDuration);
+
+        handler.merge(template, vc, sw);
+        throttle();
+        APIResponse response = handler.post(VirtualVM.MAKE_RESERVATION, sw.toString());
+        Document doc = response.getXML();
+
+        if( doc == null ) {
+            throw new ASMException(CloudErrorType.COMMUNICATION, response.getCode(), "NoResponse", "No response from make reservation request");
+        }
+        Node responseSet = doc.getElementsByTagName("responseset").item(0);
+        String responseCode = responseSet.getAttributes().getNamedItem("code").getNodeValue().trim();
+
+        if( !responseCode.equalsIgnoreCase(VirtualVM.FOUND_RESERVATION_OPTIONS) ) {
+            String error = responseSet.getAttributes().getNamedItem("message").getNodeValue().trim();
+
+            throw new ASMException(CloudErrorType.GENERAL, -1, responseCode, error);
+        }
+        String responseId = null;
+        NodeList hosts = responseSet.getChildNodes();
+
+        for( int i=0; i<hosts.getLength(); i++ ) {
+            Node host = hosts.item(i);
+
+            if( host.getNodeType() == Node.TEXT_NODE ) {
+                continue;
+            }
+            if( host.getNodeName().equalsIgnoreCase("response") ) {
+                responseId = host.getAttributes().getNamedItem("responseid").getNodeValue();
+                break;
+            }
+        }
+        if( responseId == null ) {
+            throw new InternalException("An error occurred establishing a session for launch");
+        }
+        return responseId;
+    }
+
+    /**
+     * Confirms an offer from the ASM scheduler, turning it into a reservation.
+     * @param responseId the offer being confirmed
+     * @param name the name to give the reservation
+     * @return the ID of the confirmed reservation
+     * @throws CloudException the offer is no longer available or an error occurred with Dell ASM
+     * @throws InternalException an error occurred within Dasein Cloud confirming the offer
+     */
+    @Nonnull String confirm(@Nonnull String responseId, @Nullable String name) throws CloudException, InternalException {
+        APIHandler handler = new APIHandler(provider);
+        org.apache.velocity.Template template;
+        StringWriter sw = new StringWriter();
+
+        try{
+            template = Velocity.getTemplate("templates/ASM-confirmResponse.vm");
+        }
+        catch(ResourceNotFoundException ex){
+            throw new InternalException("An error occurred while launching a VM: " + ex.getMessage());
+        }
+        VelocityContext vc = new VelocityContext();
+        vc.put("endpoint", handler.getEndpoint());
+        vc.put("connectionId", handler.getConnectionId());
+        vc.put("confirmResponse", VirtualVM.CONFIRM_RESPONSE.toLowerCase());
+        vc.put("confirmResponseDtd", VirtualVM.CONFIRM_RESPONSE + "Request.dtd");
+        vc.put("responseId", responseId);
+        vc.put("name", name);
+
+        handler.merge(template, vc, sw);
+        throttle();
+        APIResponse confirmResponse = handler.post(VirtualVM.CONFIRM_RESPONSE, sw.toString());
+        Document confirmDoc = confirmResponse.getXML();
+
+        if( confirmDoc == null ) {
+            throw new ASMException(CloudErrorType.COMMUNICATION, confirmResponse.getCode(), "NoVM", "An error occurred while creating a session for the VM");
+        }
+        Node confirmed = confirmDoc.getElementsByTagName("confirmresponse").item(0);
+
+        if( confirmed == null || confirmed.getAttributes().getNamedItem("reservationid") == null ) {
+            throw new ASMException(CloudErrorType.GENERAL, confirmResponse.getCode(), "NoReservation", "Offer " + responseId + " could not be confirmed");
+        }
+        return confirmed.getAttributes().getNamedItem("reservationid").getNodeValue().trim();
+    }
+
+    /**
+     * Makes a reservation idempotently. The client token is recorded in the reservation name, and a launch with a token
+     * already seen returns the reservation made under that token instead of making another. Tokens are tracked locally
+     * while their launch is in flight and for {@link #CLIENT_TOKEN_RETENTION} afterwards; a token not known locally
+     * (for example, because the earlier attempt timed out before its response arrived) is looked up among the active
+     * reservations in Dell ASM before a new reservation is made.
+     * @param imageId the archive being reserved
+     * @param name the name to give the reservation
+     * @param clientToken the idempotency key for the launch, null to always make a new reservation
+     * @return the ID of the confirmed reservation
+     * @throws CloudException the scheduler rejected the reservation or an error occurred with Dell ASM
+     * @throws InternalException the client token is invalid or an error occurred within Dasein Cloud making the reservation
+     */
+    @Nonnull String reserve(@Nonnull String imageId, @Nullable String name, @Nullable String clientToken) throws CloudException, InternalException {
+        if( clientToken == null ) {
+            return reserve(imageId, name);
+        }
+        if( !clientToken.matches("[A-Za-z0-9_.\\-]{1,64}") ) {
+            throw new InternalException("Client tokens must be 1-64 letters, digits, periods, underscores, or hyphens: " + clientToken);
+        }
+        ProviderContext ctx = provider.getContext();
+
+        if( ctx == null ) {
+            throw new NoContextException();
+        }
+        String key = DellASM.getContextKey(ctx) + "#" + clientToken;
+        String marker = " (" + clientToken + ")";
+
+        while( true ) {
+            ClientToken token;
+            boolean owner = false;
+
+            synchronized( clientTokens ) {
+                pruneClientTokens();
+                token = clientTokens.get(key);
+                if( token == null ) {
+                    token = new ClientToken();
+                    clientTokens.put(key, token);
+                    owner = true;
+                }
+            }
+            if( !owner ) {
+                String reservationId = token.await();
+
+                if( reservationId != null ) {
+                    return reservationId;
+                }
+                // the launch holding the token failed, so this one takes over
+                continue;
+            }
+            String reservationId = null;
+
+            try {
+                for( Summary s : enumerate() ) {
+                    if( s.name != null && s.name.endsWith(marker) ) {
+                        logger.info("Found existing reservation " + s.reservationId + " for client token " + clientToken);
+                        reservationId = s.reservationId;
+                        break;
+                    }
+                }
+                if( reservationId == null ) {
+                    reservationId = reserve(imageId, (name == null ? "" : name) + marker);
+                }
+                return reservationId;
+            }
+            finally {
+                if( reservationId == null ) {
+                    synchronized( clientTokens ) {
+                        clientTokens.remove(key);
+                    }
+                }
+                token.complete(reservationId);
+            }
+        }
+    }
+
+    private void throttle() throws InternalException {
+        if( limiter != null ) {
+            try {
+                limiter.acquire();
+            }
+            catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new InternalException(e);
+            }
+        }
+    }
+
+    private @Nullable String getValue(@Nonnull NamedNodeMap attrs, @Nonnull String name) {
+        Node n = attrs.getNamedItem(name);
+
+        return (n == null ? null : n.getNodeValue().trim());
+    }
+}
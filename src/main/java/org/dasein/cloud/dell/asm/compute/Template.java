@@ -28,10 +28,19 @@ import org.dasein.cloud.*;
 import org.dasein.cloud.compute.*;
 import org.dasein.cloud.dell.asm.APIHandler;
 import org.dasein.cloud.dell.asm.APIResponse;
+import org.dasein.cloud.dell.asm.ASMEvents;
 import org.dasein.cloud.dell.asm.ASMException;
+import org.dasein.cloud.dell.asm.ContentParser;
 import org.dasein.cloud.dell.asm.DellASM;
+import org.dasein.cloud.dell.asm.ParsedTopology;
+import org.dasein.cloud.dell.asm.PhaseTimings;
+import org.dasein.cloud.dell.asm.PlatformResolver;
+import org.dasein.cloud.dell.asm.SnapshotCache;
+import org.dasein.cloud.dell.asm.StringInterner;
+import org.dasein.cloud.dell.asm.TopologyCache;
+import org.dasein.cloud.dell.asm.WaitEngine;
+import org.dasein.cloud.dell.asm.WaitHandle;
 import org.dasein.cloud.util.APITrace;
-import org.dasein.cloud.util.XMLParser;
 import org.dasein.util.CalendarWrapper;
 import org.dasein.util.Jiterator;
 import org.dasein.util.JiteratorPopulator;
@@ -40,6 +49,7 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.xml.transform.OutputKeys;
@@ -47,10 +57,11 @@ import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
-import java.io.ByteArrayInputStream;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
 import java.util.TreeSet;
 
@@ -106,9 +117,36 @@ public class Template extends AbstractImageSupport {
         return true;
     }
 
+    /**
+     * Lists the templates matching the specified filters. When the provider serves listings from snapshots, the last
+     * good snapshot is filtered and revalidated in the background as described in {@link SnapshotCache}, and its age
+     * is available from {@link SnapshotCache#getAge(String)} for {@link SnapshotCache#IMAGES}.
+     * @param options the filters to match, null to list all templates
+     * @return the matching templates
+     * @throws CloudException an error occurred with Dell ASM listing the templates
+     * @throws InternalException an error occurred within Dasein Cloud listing the templates
+     */
     @Override
     public @Nonnull Iterable<MachineImage> listImages(@Nullable ImageFilterOptions options) throws CloudException, InternalException {
-        return searchImages(false, options);
+        long staleness = provider.getSnapshotStaleness();
+
+        if( staleness < 1L ) {
+            return searchImages(false, options);
+        }
+        List<MachineImage> snapshot = SnapshotCache.getInstance(provider).get(provider, SnapshotCache.IMAGES, staleness, provider.getSnapshotMaximumAge(), new SnapshotCache.Loader<MachineImage>() {
+            @Override
+            public @Nonnull Iterable<MachineImage> load() throws CloudException, InternalException {
+                return searchMachineImages(false, null, null);
+            }
+        });
+        ArrayList<MachineImage> images = new ArrayList<MachineImage>();
+
+        for( MachineImage img : snapshot ) {
+            if( options == null || options.matches(img) ) {
+                images.add(copy(img));
+            }
+        }
+        return images;
     }
 
     @Override
@@ -150,7 +188,7 @@ public class Template extends AbstractImageSupport {
         return populator.getResult();
     }
 
-    private Iterable<MachineImage> searchMachineImages(boolean isPublic, @Nullable ImageFilterOptions options, @Nullable String withProviderId) throws CloudException, InternalException{
+    Iterable<MachineImage> searchMachineImages(boolean isPublic, @Nullable ImageFilterOptions options, @Nullable String withProviderId) throws CloudException, InternalException{
         APITrace.begin(getProvider(), "Image.executeImageSearch");
         try{
             APIHandler handler = new APIHandler(provider);
@@ -179,7 +217,7 @@ public class Template extends AbstractImageSupport {
             vc.put("enumerateArchiveDtd", ENUMERATE_ARCHIVE + "Request.dtd");
             vc.put("extraFilters", filterString);
 
-            template.merge(vc, sw);
+            handler.merge(template, vc, sw);
             APIResponse response = handler.post(ENUMERATE_ARCHIVE, sw.toString());
             Document doc = response.getXML();
             if(doc == null){
@@ -188,12 +226,16 @@ public class Template extends AbstractImageSupport {
 
             ArrayList<MachineImage> templates = new ArrayList<MachineImage>();
             NodeList archives = doc.getElementsByTagName("archive");
+            int parallelism = provider.getMappingParallelism();
+            long mapping = System.nanoTime();
+            ParsedTopology[] contents = (parallelism > 1 ? ContentParser.parse(archives, parallelism) : null);
             for(int i=0;i<archives.getLength();i++){
-                MachineImage img = toImage(archives.item(i));
+                MachineImage img = (contents == null ? toImage(archives.item(i)) : toImage(archives.item(i), contents[i]));
                 if(img != null){
                     templates.add(img);
                 }
             }
+            PhaseTimings.recordSince(PhaseTimings.Phase.MAP, mapping);
             return templates;
         }
         finally {
@@ -206,24 +248,19 @@ public class Template extends AbstractImageSupport {
         APITrace.begin(getProvider(), "Image.remove");
         try{
             if (checkState){
-                long timeout = System.currentTimeMillis() + (CalendarWrapper.MINUTE * 30L);
-                while (timeout > System.currentTimeMillis()){
-                    try{
-                        MachineImage img = getMachineImage( providerImageId );
-                        if (img == null || MachineImageState.DELETED.equals(img.getCurrentState())){
-                            return;
-                        }
-                        if (MachineImageState.ACTIVE.equals( img.getCurrentState())){
-                            break;
-                        }
-                    }
-                    catch(Throwable ignore){}
-                    try {
-                        Thread.sleep( 15000L );
-                    }
-                    catch ( InterruptedException ignore ) {
+                WaitHandle<MachineImageState> wait = waitForState(providerImageId, CalendarWrapper.MINUTE * 30L, MachineImageState.ACTIVE, MachineImageState.DELETED);
+
+                try {
+                    MachineImageState state = wait.await();
+
+                    if( state == null || MachineImageState.DELETED.equals(state) ) {
+                        SnapshotCache.getInstance(provider).invalidate(SnapshotCache.IMAGES);
+                        return;
                     }
                 }
+                catch( CloudException e ) {
+                    logger.warn("Proceeding with removal of " + providerImageId + ": " + e.getMessage());
+                }
             }
 
             APIHandler handler = new APIHandler(provider);
@@ -243,15 +280,68 @@ public class Template extends AbstractImageSupport {
             vc.put("deleteArchive", DELETE_ARCHIVE.toLowerCase());
             vc.put("deleteArchiveDtd", DELETE_ARCHIVE + "Request.dtd");
 
-            template.merge(vc, sw);
+            handler.merge(template, vc, sw);
             APIResponse response = handler.post(DELETE_ARCHIVE, sw.toString());
+
+            SnapshotCache.getInstance(provider).invalidate(SnapshotCache.IMAGES);
         }
         finally {
             APITrace.end();
         }
     }
 
-    private MachineImage toImage(Node node)throws CloudException, InternalException{
+    /**
+     * Waits for an image to reach one of the specified states. All waits against images in this account share one
+     * archive enumeration per poll, so this is considerably cheaper than polling {@link #getImage(String)}.
+     * @param providerImageId the image being waited on
+     * @param timeout the maximum time in milliseconds to wait
+     * @param states the states that end the wait ({@link MachineImageState#DELETED} is also satisfied by the image disappearing)
+     * @return a handle for awaiting or cancelling the wait
+     * @throws CloudException no context has been established for this request
+     */
+    public @Nonnull WaitHandle<MachineImageState> waitForState(@Nonnull String providerImageId, @Nonnegative long timeout, @Nonnull MachineImageState ... states) throws CloudException {
+        boolean orGone = Arrays.asList(states).contains(MachineImageState.DELETED);
+
+        return WaitEngines.getImageEngine(provider).waitFor(providerImageId, WaitEngine.inState(orGone, states), timeout);
+    }
+
+    MachineImage toImage(Node node)throws CloudException, InternalException{
+        if( node == null ) {
+            return null;
+        }
+        String contentString = ContentParser.getContent(node);
+        ParsedTopology content = null;
+
+        if( contentString != null ) {
+            long parsing = System.nanoTime();
+
+            content = TopologyCache.getInstance().parse(contentString);
+            if( ASMEvents.isEnabled() ) {
+                ASMEvents.contentParsed("archive", contentString.length(), System.nanoTime() - parsing);
+            }
+        }
+        return toImage(node, content);
+    }
+
+    /**
+     * Maps an archive whose embedded content has already been parsed.
+     * @param node the archive element of an <code>enumerateArchive</code> response
+     * @param content the parsed content of the archive, null if it has none
+     * @return the machine image for the archive, null if the archive holds anything other than virtual machines
+     * @throws CloudException no context was set for the request
+     * @throws InternalException an error occurred mapping the archive
+     */
+    /**
+     * Copies the fields {@link #toImage(Node, ParsedTopology)} fills in, so images served from a snapshot are never
+     * shared between callers.
+     * @param img the image to copy
+     * @return a new image holding the same values
+     */
+    static @Nonnull MachineImage copy(@Nonnull MachineImage img) {
+        return MachineImage.getImageInstance(img.getProviderOwnerId(), img.getProviderRegionId(), img.getProviderMachineImageId(), img.getImageClass(), img.getCurrentState(), img.getName(), img.getDescription(), img.getArchitecture(), img.getPlatform());
+    }
+
+    @Nullable MachineImage toImage(@Nullable Node node, @Nullable ParsedTopology content) throws CloudException, InternalException {
         if( node == null ) {
             return null;
         }
@@ -272,44 +362,25 @@ public class Template extends AbstractImageSupport {
         Architecture architecture = null;
         Platform platform;
 
-        for(int i=0;i<node.getChildNodes().getLength();i++){
-            Node item = node.getChildNodes().item(i);
-            if(item.getNodeType() != Node.TEXT_NODE && item.getNodeName().equalsIgnoreCase("content")){
-                try{
-                    String contentString = item.getFirstChild().getNodeValue().trim();
-                    Document content = XMLParser.parse(new ByteArrayInputStream(contentString.getBytes()));
-                    //if(content.getElementsByTagName("device").getLength() > 1)return null;//Only interested in atomic topology
-                    NodeList devices = content.getElementsByTagName("device");
-                    for(int j=0;j<devices.getLength();j++){
-                        Node device = devices.item(j);
-                        if(!device.getAttributes().getNamedItem("model").getNodeValue().trim().equalsIgnoreCase("virtualmachine"))return null;
-                    }
-                    break;
-                }
-                catch(Exception ex){
-                    throw new InternalException("Error parsing topology device type: " + ex.getMessage());
-                }
-            }
+        if( content != null && !content.isAllVirtualMachines() ) {
+            return null;//Only interested in topologies of virtual machines
         }
-        ownerId = provider.getContext().getAccountNumber();
+        StringInterner strings = provider.getStringInterner();
+
+        ownerId = strings.intern(provider.getContext().getAccountNumber());
+        regionId = strings.intern(regionId);
         if(node.getAttributes().getNamedItem("namespace") != null){
             imageId = node.getAttributes().getNamedItem("namespace").getNodeValue().trim();
         }
         if(node.getAttributes().getNamedItem("name") != null){
             name = node.getAttributes().getNamedItem("name").getNodeValue().trim();
-            if(name.contains("x64") || name.contains("64-bit") || name.contains("64 bit")){
-                architecture = Architecture.I64;
-            }
-            else if(name.contains("x32") ) {
-                architecture = Architecture.I32;
-            }
         }
         if(node.getAttributes().getNamedItem("description") != null){
             description = node.getAttributes().getNamedItem("description").getNodeValue().trim();
         }
 
-        if(architecture == null)architecture = Architecture.I64;
-        platform = Platform.guess(name);
+        architecture = PlatformResolver.architecture(name);
+        platform = PlatformResolver.guessPlatform(name);
         return MachineImage.getImageInstance(ownerId, regionId, imageId, ImageClass.MACHINE, MachineImageState.ACTIVE, name, description, architecture, platform);
     }
 }
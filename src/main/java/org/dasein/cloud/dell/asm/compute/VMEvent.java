@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm.compute;
+
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.compute.VmState;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A change in the virtual machine inventory detected by comparing two successive snapshots of that inventory.
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class VMEvent {
+    static public enum Type { ADDED, REMOVED, STATE_CHANGED }
+
+    private VmState        currentState;
+    private VmState        previousState;
+    private long           timestamp;
+    private Type           type;
+    private VirtualMachine virtualMachine;
+    private String         vmId;
+
+    VMEvent(@Nonnull Type type, @Nonnull String vmId, @Nonnull VirtualMachine virtualMachine, @Nullable VmState previousState, @Nullable VmState currentState) {
+        this.type = type;
+        this.vmId = vmId;
+        this.virtualMachine = virtualMachine;
+        this.previousState = previousState;
+        this.currentState = currentState;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the state of the virtual machine after the change, null for removed virtual machines
+     */
+    public @Nullable VmState getCurrentState() {
+        return currentState;
+    }
+
+    /**
+     * @return the state of the virtual machine before the change, null for newly added virtual machines
+     */
+    public @Nullable VmState getPreviousState() {
+        return previousState;
+    }
+
+    /**
+     * @return the time at which the change was detected
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return the kind of change that occurred
+     */
+    public @Nonnull Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the virtual machine as of the change (for removed virtual machines, its last known state)
+     */
+    public @Nonnull VirtualMachine getVirtualMachine() {
+        return virtualMachine;
+    }
+
+    /**
+     * @return the unique ID of the virtual machine that changed
+     */
+    public @Nonnull String getVmId() {
+        return vmId;
+    }
+
+    @Override
+    public @Nonnull String toString() {
+        return type + " " + vmId + " [" + previousState + " -> " + currentState + "]";
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm.compute;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Receives notification of changes to the virtual machines in a Dell ASM account.
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public interface VMEventListener {
+    /**
+     * Called for each change detected in the virtual machine inventory. Events for a given listener are delivered one
+     * at a time and in the order in which they were detected.
+     * @param event the change that was detected
+     */
+    public void onEvent(@Nonnull VMEvent event);
+}
@@ -0,0 +1,654 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm.compute;
+
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.compute.Platform;
+import org.dasein.cloud.compute.VMFilterOptions;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.compute.VmState;
+import org.dasein.cloud.dell.asm.DellASM;
+import org.dasein.cloud.dell.asm.NoContextException;
+import org.dasein.cloud.network.RawAddress;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The most recently listed virtual machines for a context, indexed by ID and by state, platform, product, reservation,
+ * and tag. Each listing is folded into the inventory as a difference against the previous one: virtual machines that
+ * disappeared are removed from every index, and a virtual machine whose indexed values changed is moved only within
+ * the indexes affected. Queries intersect the smallest matching index entries rather than scanning the inventory.
+ * <p>
+ *     There is one inventory per context (endpoint, account, and region). The inventory hands out copies of the
+ *     virtual machines it holds, so a caller changing a virtual machine it was given cannot put the indexes out of step
+ *     with the virtual machines they index.
+ * </p>
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class VMInventory {
+    static private final HashMap<String,VMInventory> inventories = new HashMap<String, VMInventory>();
+
+    /**
+     * Provides the inventory for the provider's current context, creating an empty inventory if none exists.
+     * @param provider the provider whose context identifies the account being inventoried
+     * @return the inventory for the context
+     * @throws NoContextException no context has been set for the provider
+     */
+    static public @Nonnull VMInventory getInstance(@Nonnull DellASM provider) throws NoContextException {
+        ProviderContext ctx = provider.getContext();
+
+        if( ctx == null ) {
+            throw new NoContextException();
+        }
+        String key = DellASM.getContextKey(ctx);
+
+        synchronized( inventories ) {
+            VMInventory inventory = inventories.get(key);
+
+            if( inventory == null ) {
+                inventory = new VMInventory();
+                inventories.put(key, inventory);
+            }
+            return inventory;
+        }
+    }
+
+    /**
+     * Copies the fields Dell ASM fills in on a virtual machine.
+     * @param vm the virtual machine to copy
+     * @return a new virtual machine holding the same values
+     */
+    static public @Nonnull VirtualMachine copy(@Nonnull VirtualMachine vm) {
+        VirtualMachine c = new VirtualMachine();
+        Map<String,String> tags = vm.getTags();
+        RawAddress[] addresses = vm.getPrivateAddresses();
+
+        c.setName(vm.getName());
+        c.setDescription(vm.getDescription());
+        c.setProviderVirtualMachineId(vm.getProviderVirtualMachineId());
+        c.setProviderMachineImageId(vm.getProviderMachineImageId());
+        c.setProviderOwnerId(vm.getProviderOwnerId());
+        c.setProviderDataCenterId(vm.getProviderDataCenterId());
+        c.setProviderRegionId(vm.getProviderRegionId());
+        c.setProductId(vm.getProductId());
+        c.setCurrentState(vm.getCurrentState());
+        c.setPlatform(vm.getPlatform());
+        c.setArchitecture(vm.getArchitecture());
+        c.setCreationTimestamp(vm.getCreationTimestamp());
+        if( addresses != null ) {
+            c.setPrivateAddresses(Arrays.copyOf(addresses, addresses.length));
+        }
+        if( tags != null ) {
+            for( Map.Entry<String,String> tag : tags.entrySet() ) {
+                c.setTag(tag.getKey(), tag.getValue());
+            }
+        }
+        return c;
+    }
+
+    /**
+     * The reservation portion of a virtual machine ID, which takes the form <code>reservationId:deviceKey</code>.
+     * @param vmId the ID of the virtual machine
+     * @return the ID of the reservation holding the virtual machine
+     */
+    static public @Nonnull String getReservationId(@Nonnull String vmId) {
+        int idx = vmId.lastIndexOf(':');
+
+        return (idx < 0 ? vmId : vmId.substring(0, idx));
+    }
+
+    /**
+     * The device portion of a virtual machine ID, which takes the form <code>reservationId:deviceKey</code>.
+     * @param vmId the ID of the virtual machine
+     * @return the key of the virtual machine's device within its reservation
+     * @throws InternalException the ID has no device portion
+     */
+    static public @Nonnull String getDeviceKey(@Nonnull String vmId) throws InternalException {
+        int idx = vmId.lastIndexOf(':');
+
+        if( idx < 0 ) {
+            throw new InternalException("Not a virtual machine ID: " + vmId);
+        }
+        return vmId.substring(idx + 1);
+    }
+
+    /**
+     * Criteria matched against the indexes of an inventory. Every criterion set must match; a query with no criteria
+     * matches every virtual machine.
+     */
+    static public class Query {
+        /**
+         * @return a query matching every virtual machine
+         */
+        static public @Nonnull Query getInstance() {
+            return new Query();
+        }
+
+        private Platform           platform;
+        private String             productId;
+        private String             reservationId;
+        private VmState            state;
+        private Map<String,String> tags = Collections.emptyMap();
+
+        private Query() { }
+
+        private @Nonnull Query copy() {
+            Query q = new Query();
+
+            q.platform = platform;
+            q.productId = productId;
+            q.reservationId = reservationId;
+            q.state = state;
+            q.tags = tags;
+            return q;
+        }
+
+        /**
+         * @param platform the platform to match
+         * @return a copy of this query also matching on platform
+         */
+        public @Nonnull Query withPlatform(@Nonnull Platform platform) {
+            Query q = copy();
+
+            q.platform = platform;
+            return q;
+        }
+
+        /**
+         * @param productId the product to match, as in <code>2:2048</code>
+         * @return a copy of this query also matching on product
+         */
+        public @Nonnull Query withProductId(@Nonnull String productId) {
+            Query q = copy();
+
+            q.productId = productId;
+            return q;
+        }
+
+        /**
+         * @param reservationId the reservation to match
+         * @return a copy of this query also matching on reservation
+         */
+        public @Nonnull Query withReservationId(@Nonnull String reservationId) {
+            Query q = copy();
+
+            q.reservationId = reservationId;
+            return q;
+        }
+
+        /**
+         * @param state the state to match
+         * @return a copy of this query also matching on state
+         */
+        public @Nonnull Query withState(@Nonnull VmState state) {
+            Query q = copy();
+
+            q.state = state;
+            return q;
+        }
+
+        /**
+         * @param key the tag to match
+         * @param value the value the tag must have
+         * @return a copy of this query also matching on the tag
+         */
+        public @Nonnull Query withTag(@Nonnull String key, @Nonnull String value) {
+            Query q = copy();
+            HashMap<String,String> t = new HashMap<String, String>(tags);
+
+            t.put(key, value);
+            q.tags = Collections.unmodifiableMap(t);
+            return q;
+        }
+
+        @Override
+        public @Nonnull String toString() {
+            return "[state=" + state + ",platform=" + platform + ",productId=" + productId + ",reservationId=" + reservationId + ",tags=" + tags + "]";
+        }
+    }
+
+    /**
+     * A reservation whose topology could not be read by a tolerant listing.
+     */
+    static public class Failure {
+        private int    attempts = 1;
+        private String createdTime;
+        private String error;
+        private long   failedAt;
+        private String reservationId;
+
+        Failure(@Nonnull String reservationId, @Nullable String createdTime, @Nonnull Throwable error) {
+            this.reservationId = reservationId;
+            this.createdTime = createdTime;
+            this.error = (error.getMessage() == null ? error.getClass().getName() : error.getMessage());
+            this.failedAt = System.currentTimeMillis();
+        }
+
+        /**
+         * @return the number of consecutive attempts to read the reservation that have failed
+         */
+        public int getAttempts() {
+            return attempts;
+        }
+
+        /**
+         * @return the creation time of the reservation as listed by Dell ASM
+         */
+        public @Nullable String getCreatedTime() {
+            return createdTime;
+        }
+
+        /**
+         * @return the message of the error from the most recent attempt
+         */
+        public @Nonnull String getError() {
+            return error;
+        }
+
+        /**
+         * @return the time of the most recent attempt in milliseconds since the epoch
+         */
+        public long getFailedAt() {
+            return failedAt;
+        }
+
+        /**
+         * @return the reservation that could not be read
+         */
+        public @Nonnull String getReservationId() {
+            return reservationId;
+        }
+
+        @Override
+        public @Nonnull String toString() {
+            return reservationId + " (" + attempts + "): " + error;
+        }
+    }
+
+    static private class Entry {
+        Platform           platform;
+        String             productId;
+        String             reservationId;
+        VmState            state;
+        Map<String,String> tags;
+        VirtualMachine     vm;
+
+        Entry(@Nonnull String vmId, @Nonnull VirtualMachine vm) {
+            Map<String,String> t = vm.getTags();
+
+            this.vm = vm;
+            platform = vm.getPlatform();
+            productId = vm.getProductId();
+            reservationId = getReservationId(vmId);
+            state = vm.getCurrentState();
+            tags = (t == null || t.isEmpty() ? Collections.<String,String>emptyMap() : new HashMap<String, String>(t));
+        }
+
+        boolean sameKeys(@Nonnull Entry other) {
+            return (same(platform, other.platform) && same(productId, other.productId) && same(reservationId, other.reservationId)
+                    && same(state, other.state) && tags.equals(other.tags));
+        }
+
+        static private boolean same(@Nullable Object a, @Nullable Object b) {
+            return (a == null ? b == null : a.equals(b));
+        }
+    }
+
+    private final LinkedHashMap<String,Entry>                    byId          = new LinkedHashMap<String, Entry>();
+    private final HashMap<Platform,Set<String>>                  byPlatform    = new HashMap<Platform, Set<String>>();
+    private final HashMap<String,Set<String>>                    byProduct     = new HashMap<String, Set<String>>();
+    private final HashMap<String,Set<String>>                    byReservation = new HashMap<String, Set<String>>();
+    private final HashMap<VmState,Set<String>>                   byState       = new HashMap<VmState, Set<String>>();
+    private final HashMap<String,HashMap<String,Set<String>>>    byTag         = new HashMap<String, HashMap<String, Set<String>>>();
+    private final LinkedHashMap<String,Failure>                  failures      = new LinkedHashMap<String, Failure>();
+    private long                                                 updatedAt;
+
+    private VMInventory() { }
+
+    /**
+     * @param vmId the ID of a virtual machine
+     * @return a copy of the virtual machine with the specified ID as of the last listing, null if it was not listed
+     */
+    public synchronized @Nullable VirtualMachine get(@Nonnull String vmId) {
+        Entry e = byId.get(vmId);
+
+        return (e == null ? null : copy(e.vm));
+    }
+
+    /**
+     * Records that a failed reservation still could not be read.
+     * @param failure the latest failure for the reservation
+     */
+    synchronized void failed(@Nonnull Failure failure) {
+        Failure previous = failures.get(failure.reservationId);
+
+        if( previous != null ) {
+            failure.attempts += previous.attempts;
+        }
+        failures.put(failure.reservationId, failure);
+    }
+
+    /**
+     * @return the reservations the most recent tolerant listing could not read, whose virtual machines are held as last listed
+     */
+    public synchronized @Nonnull List<Failure> getFailures() {
+        return new ArrayList<Failure>(failures.values());
+    }
+
+    /**
+     * @return the number of virtual machines in the inventory
+     */
+    public synchronized @Nonnegative int getSize() {
+        return byId.size();
+    }
+
+    /**
+     * @return the time of the last update in milliseconds since the epoch, zero if the inventory has never been updated
+     */
+    public synchronized long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    /**
+     * @param maximumAge the age in milliseconds past which the inventory is no longer fresh, zero to never be fresh
+     * @return true if the inventory has been updated by a listing within the maximum age
+     */
+    public synchronized boolean isFresh(@Nonnegative long maximumAge) {
+        return (maximumAge > 0L && updatedAt > 0L && System.currentTimeMillis() - updatedAt <= maximumAge);
+    }
+
+    /**
+     * Lists the virtual machines matching a Dasein Cloud filter. The filter is opaque to the inventory, so it is
+     * tested against each virtual machine; use {@link #query(Query)} for indexed lookups.
+     * @param options the filter to apply, null for every virtual machine
+     * @return copies of the matching virtual machines in the order they were first listed
+     */
+    public synchronized @Nonnull ArrayList<VirtualMachine> list(@Nullable VMFilterOptions options) {
+        ArrayList<VirtualMachine> vms = new ArrayList<VirtualMachine>(byId.size());
+
+        for( Entry e : byId.values() ) {
+            if( options == null || options.matches(e.vm) ) {
+                vms.add(copy(e.vm));
+            }
+        }
+        return vms;
+    }
+
+    /**
+     * Lists the virtual machines matching a query from the indexes.
+     * @param query the criteria to match
+     * @return copies of the matching virtual machines
+     */
+    public synchronized @Nonnull ArrayList<VirtualMachine> query(@Nonnull Query query) {
+        ArrayList<Set<String>> candidates = new ArrayList<Set<String>>();
+
+        if( query.state != null ) {
+            candidates.add(byState.get(query.state));
+        }
+        if( query.platform != null ) {
+            candidates.add(byPlatform.get(query.platform));
+        }
+        if( query.productId != null ) {
+            candidates.add(byProduct.get(query.productId));
+        }
+        if( query.reservationId != null ) {
+            candidates.add(byReservation.get(query.reservationId));
+        }
+        for( Map.Entry<String,String> tag : query.tags.entrySet() ) {
+            HashMap<String,Set<String>> values = byTag.get(tag.getKey());
+
+            candidates.add(values == null ? null : values.get(tag.getValue()));
+        }
+        if( candidates.isEmpty() ) {
+            return list(null);
+        }
+        Set<String> smallest = null;
+
+        for( Set<String> ids : candidates ) {
+            if( ids == null || ids.isEmpty() ) {
+                return new ArrayList<VirtualMachine>();
+            }
+            if( smallest == null || ids.size() < smallest.size() ) {
+                smallest = ids;
+            }
+        }
+        ArrayList<VirtualMachine> vms = new ArrayList<VirtualMachine>(smallest.size());
+
+        for( String id : smallest ) {
+            boolean matches = true;
+
+            for( Set<String> ids : candidates ) {
+                if( ids != smallest && !ids.contains(id) ) {
+                    matches = false;
+                    break;
+                }
+            }
+            if( matches ) {
+                vms.add(copy(byId.get(id).vm));
+            }
+        }
+        return vms;
+    }
+
+    /**
+     * Adds or replaces a single virtual machine without waiting for the next listing. The inventory holds a copy, so
+     * later changes to the virtual machine passed in are not seen.
+     * @param vm the virtual machine
+     */
+    public synchronized void put(@Nonnull VirtualMachine vm) {
+        String vmId = vm.getProviderVirtualMachineId();
+
+        if( vmId != null ) {
+            put(vmId, new Entry(vmId, copy(vm)));
+        }
+    }
+
+    /**
+     * Removes a single virtual machine without waiting for the next listing.
+     * @param vmId the ID of the virtual machine
+     */
+    public synchronized void remove(@Nonnull String vmId) {
+        Entry e = byId.remove(vmId);
+
+        if( e != null ) {
+            unindex(vmId, e);
+        }
+    }
+
+    /**
+     * Folds a complete listing into the inventory. Virtual machines missing from the listing are removed, and only
+     * the index entries of virtual machines whose indexed values changed are touched. The inventory takes ownership of
+     * the virtual machines passed in, so callers must not change them afterwards.
+     * @param vms every virtual machine in the context
+     * @return the number of virtual machines added, removed, or moved within the indexes
+     */
+    public synchronized int update(@Nonnull Collection<VirtualMachine> vms) {
+        return update(vms, Collections.<Failure>emptyList());
+    }
+
+    /**
+     * Folds a listing that could not read every reservation into the inventory. Virtual machines in the failed
+     * reservations are kept as they were last listed rather than removed, and the failures replace those recorded by
+     * the previous listing.
+     * @param vms every virtual machine that could be listed
+     * @param failed the reservations whose topologies could not be read
+     * @return the number of virtual machines added, removed, or moved within the indexes
+     */
+    public synchronized int update(@Nonnull Collection<VirtualMachine> vms, @Nonnull Collection<Failure> failed) {
+        LinkedHashMap<String,Failure> current = new LinkedHashMap<String, Failure>();
+
+        for( Failure f : failed ) {
+            Failure previous = failures.get(f.reservationId);
+
+            if( previous != null ) {
+                f.attempts += previous.attempts;
+            }
+            current.put(f.reservationId, f);
+        }
+        failures.clear();
+        failures.putAll(current);
+        HashSet<String> seen = new HashSet<String>();
+        int changes = 0;
+
+        for( VirtualMachine vm : vms ) {
+            String vmId = vm.getProviderVirtualMachineId();
+
+            if( vmId != null && seen.add(vmId) && put(vmId, new Entry(vmId, vm)) ) {
+                changes++;
+            }
+        }
+        if( seen.size() < byId.size() ) {
+            ArrayList<String> gone = new ArrayList<String>();
+
+            for( Map.Entry<String,Entry> e : byId.entrySet() ) {
+                if( !seen.contains(e.getKey()) && !failures.containsKey(e.getValue().reservationId) ) {
+                    gone.add(e.getKey());
+                }
+            }
+            for( String vmId : gone ) {
+                remove(vmId);
+                changes++;
+            }
+        }
+        updatedAt = System.currentTimeMillis();
+        return changes;
+    }
+
+    /**
+     * Replaces the virtual machines of a single reservation, as when a failed reservation is read again. Any failure
+     * recorded for the reservation is cleared.
+     * @param reservationId the reservation whose virtual machines are being replaced
+     * @param vms the virtual machines now in the reservation
+     * @return the number of virtual machines added, removed, or moved within the indexes
+     */
+    public synchronized int update(@Nonnull String reservationId, @Nonnull Collection<VirtualMachine> vms) {
+        Set<String> current = byReservation.get(reservationId);
+        HashSet<String> seen = new HashSet<String>();
+        int changes = 0;
+
+        failures.remove(reservationId);
+        for( VirtualMachine vm : vms ) {
+            String vmId = vm.getProviderVirtualMachineId();
+
+            if( vmId != null && seen.add(vmId) && put(vmId, new Entry(vmId, vm)) ) {
+                changes++;
+            }
+        }
+        if( current != null ) {
+            for( String vmId : new ArrayList<String>(current) ) {
+                if( !seen.contains(vmId) ) {
+                    remove(vmId);
+                    changes++;
+                }
+            }
+        }
+        return changes;
+    }
+
+    private void add(@Nonnull Map<?,Set<String>> index, @Nullable Object key, @Nonnull String vmId) {
+        if( key == null ) {
+            return;
+        }
+        @SuppressWarnings("unchecked") Map<Object,Set<String>> m = (Map<Object,Set<String>>)index;
+        Set<String> ids = m.get(key);
+
+        if( ids == null ) {
+            ids = new LinkedHashSet<String>();
+            m.put(key, ids);
+        }
+        ids.add(vmId);
+    }
+
+    private void drop(@Nonnull Map<?,Set<String>> index, @Nullable Object key, @Nonnull String vmId) {
+        if( key == null ) {
+            return;
+        }
+        Set<String> ids = index.get(key);
+
+        if( ids != null ) {
+            ids.remove(vmId);
+            if( ids.isEmpty() ) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private void index(@Nonnull String vmId, @Nonnull Entry e) {
+        add(byState, e.state, vmId);
+        add(byPlatform, e.platform, vmId);
+        add(byProduct, e.productId, vmId);
+        add(byReservation, e.reservationId, vmId);
+        for( Map.Entry<String,String> tag : e.tags.entrySet() ) {
+            HashMap<String,Set<String>> values = byTag.get(tag.getKey());
+
+            if( values == null ) {
+                values = new HashMap<String, Set<String>>();
+                byTag.put(tag.getKey(), values);
+            }
+            add(values, tag.getValue(), vmId);
+        }
+    }
+
+    private boolean put(@Nonnull String vmId, @Nonnull Entry e) {
+        Entry previous = byId.put(vmId, e);
+
+        if( previous != null && previous.sameKeys(e) ) {
+            return false;
+        }
+        if( previous != null ) {
+            unindex(vmId, previous);
+        }
+        index(vmId, e);
+        return true;
+    }
+
+    private void unindex(@Nonnull String vmId, @Nonnull Entry e) {
+        drop(byState, e.state, vmId);
+        drop(byPlatform, e.platform, vmId);
+        drop(byProduct, e.productId, vmId);
+        drop(byReservation, e.reservationId, vmId);
+        for( Map.Entry<String,String> tag : e.tags.entrySet() ) {
+            HashMap<String,Set<String>> values = byTag.get(tag.getKey());
+
+            if( values != null ) {
+                drop(values, tag.getValue(), vmId);
+                if( values.isEmpty() ) {
+                    byTag.remove(tag.getKey());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,356 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm.compute;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.compute.VmState;
+import org.dasein.cloud.dell.asm.ASMThreadFactory;
+import org.dasein.cloud.dell.asm.DellASM;
+import org.dasein.cloud.dell.asm.NoContextException;
+import org.dasein.util.CalendarWrapper;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Polls the virtual machine inventory of a single Dell ASM account on behalf of every listener interested in that
+ * account. Successive snapshots are compared and the differences are delivered as {@link VMEvent}s. The poll interval
+ * adapts to activity: it drops to {@link #MINIMUM_INTERVAL} while operations are in flight or changes are being seen
+ * and doubles with each quiet poll up to {@link #MAXIMUM_INTERVAL}.
+ * <p>
+ *     There is one poller per distinct context (endpoint, account, and region). The poller makes its calls through the
+ *     provider of the most recent caller to subscribe or start an operation rather than holding on to the first,
+ *     holds that provider for the length of each poll, and shuts down once its last listener goes away.
+ * </p>
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class VMStatePoller {
+    static private final Logger logger = DellASM.getLogger(VMStatePoller.class);
+
+    static public final long MINIMUM_INTERVAL = 5L * CalendarWrapper.SECOND;
+    static public final long MAXIMUM_INTERVAL = 2L * CalendarWrapper.MINUTE;
+
+    static private final HashMap<String,VMStatePoller> pollers = new HashMap<String, VMStatePoller>();
+
+    static private ExecutorService deliveryPool;
+
+    static private @Nonnull ExecutorService getDeliveryPool() {
+        synchronized( pollers ) {
+            if( deliveryPool == null ) {
+                deliveryPool = Executors.newCachedThreadPool(new ASMThreadFactory("vmevents"));
+            }
+            return deliveryPool;
+        }
+    }
+
+    static private @Nullable VMStatePoller findInstance(@Nonnull DellASM provider) {
+        ProviderContext ctx = provider.getContext();
+
+        if( ctx == null ) {
+            return null;
+        }
+        synchronized( pollers ) {
+            return pollers.get(DellASM.getContextKey(ctx));
+        }
+    }
+
+    /**
+     * Registers a listener with the poller for the provider's current context, starting that poller if needed.
+     * @param provider the provider whose context identifies the account being watched
+     * @param listener the listener to be notified of changes
+     * @param executor the executor on which events are delivered, or null for a shared delivery pool
+     * @throws NoContextException no context has been set for the provider
+     */
+    static void subscribe(@Nonnull DellASM provider, @Nonnull VMEventListener listener, @Nullable Executor executor) throws NoContextException {
+        ProviderContext ctx = provider.getContext();
+
+        if( ctx == null ) {
+            throw new NoContextException();
+        }
+        String key = DellASM.getContextKey(ctx);
+
+        synchronized( pollers ) {
+            VMStatePoller poller = pollers.get(key);
+
+            if( poller == null ) {
+                poller = new VMStatePoller(provider, key);
+                pollers.put(key, poller);
+            }
+            else {
+                poller.provider = provider;
+            }
+            poller.add(listener, executor == null ? getDeliveryPool() : executor);
+        }
+    }
+
+    /**
+     * Removes a listener from the poller for the provider's current context, stopping that poller if no listeners remain.
+     * @param provider the provider whose context identifies the account being watched
+     * @param listener the listener to be removed
+     */
+    static void unsubscribe(@Nonnull DellASM provider, @Nonnull VMEventListener listener) {
+        ProviderContext ctx = provider.getContext();
+
+        if( ctx == null ) {
+            return;
+        }
+        synchronized( pollers ) {
+            String key = DellASM.getContextKey(ctx);
+            VMStatePoller poller = pollers.get(key);
+
+            if( poller != null && poller.remove(listener) ) {
+                pollers.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Notes that an operation expected to change virtual machine state has begun so any active poller speeds up.
+     * @param provider the provider through which the operation is being performed
+     */
+    static void operationStarted(@Nonnull DellASM provider) {
+        VMStatePoller poller = findInstance(provider);
+
+        if( poller != null ) {
+            poller.provider = provider;
+            poller.inFlight.incrementAndGet();
+            poller.pollSoon();
+        }
+    }
+
+    /**
+     * Notes that an operation begun with {@link #operationStarted(DellASM)} has completed. ASM often completes the
+     * resulting state change some time after the call returns, so the poller stays fast for a while afterwards.
+     * @param provider the provider through which the operation was performed
+     */
+    static void operationFinished(@Nonnull DellASM provider) {
+        VMStatePoller poller = findInstance(provider);
+
+        if( poller != null ) {
+            poller.lastActivity = System.currentTimeMillis();
+            if( poller.inFlight.decrementAndGet() < 0 ) {
+                poller.inFlight.set(0);
+            }
+        }
+    }
+
+    private class Subscription implements Runnable {
+        private final AtomicBoolean                 draining = new AtomicBoolean(false);
+        private final Executor                      executor;
+        private final VMEventListener               listener;
+        private final ConcurrentLinkedQueue<VMEvent> pending = new ConcurrentLinkedQueue<VMEvent>();
+
+        Subscription(@Nonnull VMEventListener listener, @Nonnull Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+
+        void deliver(@Nonnull List<VMEvent> events) {
+            pending.addAll(events);
+            if( draining.compareAndSet(false, true) ) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                VMEvent event;
+
+                while( (event = pending.poll()) != null ) {
+                    try {
+                        listener.onEvent(event);
+                    }
+                    catch( Throwable t ) {
+                        logger.error("Listener " + listener + " failed to handle " + event + ": " + t.getMessage());
+                    }
+                }
+            }
+            finally {
+                draining.set(false);
+            }
+            // catch anything that arrived between the final poll and releasing the drain
+            if( !pending.isEmpty() && draining.compareAndSet(false, true) ) {
+                executor.execute(this);
+            }
+        }
+    }
+
+    private final AtomicInteger                         inFlight      = new AtomicInteger(0);
+    private final String                                key;
+    private final CopyOnWriteArrayList<Subscription>    subscriptions = new CopyOnWriteArrayList<Subscription>();
+
+    private long                        interval = MINIMUM_INTERVAL;
+    private volatile long               lastActivity;
+    private volatile DellASM            provider;
+    private ScheduledFuture<?>          nextPoll;
+    private long                        nextPollAt;
+    private Map<String,VirtualMachine>  snapshot;
+    private ScheduledExecutorService    timer;
+
+    private VMStatePoller(@Nonnull DellASM provider, @Nonnull String key) {
+        this.provider = provider;
+        this.key = key;
+    }
+
+    private synchronized void add(@Nonnull VMEventListener listener, @Nonnull Executor executor) {
+        subscriptions.add(new Subscription(listener, executor));
+        if( timer == null ) {
+            timer = Executors.newSingleThreadScheduledExecutor(new ASMThreadFactory("vmpoller"));
+            interval = MINIMUM_INTERVAL;
+            schedule(0L);
+        }
+    }
+
+    private synchronized boolean remove(@Nonnull VMEventListener listener) {
+        for( Subscription s : subscriptions ) {
+            if( s.listener == listener ) {
+                subscriptions.remove(s);
+            }
+        }
+        if( subscriptions.isEmpty() ) {
+            if( timer != null ) {
+                timer.shutdownNow();
+                timer = null;
+            }
+            nextPoll = null;
+            provider = null;
+            snapshot = null;
+            return true;
+        }
+        return false;
+    }
+
+    private synchronized void schedule(long delay) {
+        if( timer == null ) {
+            return;
+        }
+        if( nextPoll != null ) {
+            nextPoll.cancel(false);
+        }
+        nextPollAt = System.currentTimeMillis() + delay;
+        nextPoll = timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                poll();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void pollSoon() {
+        interval = MINIMUM_INTERVAL;
+        if( timer != null && nextPollAt - System.currentTimeMillis() > MINIMUM_INTERVAL ) {
+            schedule(MINIMUM_INTERVAL);
+        }
+    }
+
+    private void poll() {
+        DellASM provider = this.provider;
+        boolean changed = false;
+
+        if( provider == null ) {
+            return;
+        }
+        try {
+            Map<String,VirtualMachine> current = new HashMap<String, VirtualMachine>();
+
+            provider.hold();
+            try {
+                for( VirtualMachine vm : new VirtualVM(provider).loadVirtualMachines(null) ) {
+                    current.put(vm.getProviderVirtualMachineId(), vm);
+                }
+            }
+            finally {
+                provider.release();
+            }
+            Map<String,VirtualMachine> previous;
+
+            synchronized( this ) {
+                previous = snapshot;
+                snapshot = current;
+            }
+            if( previous != null ) {
+                List<VMEvent> events = diff(previous, current);
+
+                if( !events.isEmpty() ) {
+                    changed = true;
+                    if( logger.isDebugEnabled() ) {
+                        logger.debug("Detected " + events.size() + " virtual machine changes for " + key);
+                    }
+                    for( Subscription s : subscriptions ) {
+                        s.deliver(events);
+                    }
+                }
+            }
+        }
+        catch( Throwable t ) {
+            logger.warn("Failed to poll virtual machines for " + key + ": " + t.getMessage());
+        }
+        synchronized( this ) {
+            if( changed || inFlight.get() > 0 || (System.currentTimeMillis() - lastActivity) < MAXIMUM_INTERVAL ) {
+                interval = MINIMUM_INTERVAL;
+            }
+            else {
+                interval = Math.min(interval * 2, MAXIMUM_INTERVAL);
+            }
+            schedule(interval);
+        }
+    }
+
+    private @Nonnull List<VMEvent> diff(@Nonnull Map<String,VirtualMachine> previous, @Nonnull Map<String,VirtualMachine> current) {
+        ArrayList<VMEvent> events = new ArrayList<VMEvent>();
+
+        for( Map.Entry<String,VirtualMachine> entry : current.entrySet() ) {
+            VirtualMachine was = previous.get(entry.getKey());
+            VmState state = entry.getValue().getCurrentState();
+
+            if( was == null ) {
+                events.add(new VMEvent(VMEvent.Type.ADDED, entry.getKey(), entry.getValue(), null, state));
+            }
+            else if( was.getCurrentState() == null ? state != null : !was.getCurrentState().equals(state) ) {
+                events.add(new VMEvent(VMEvent.Type.STATE_CHANGED, entry.getKey(), entry.getValue(), was.getCurrentState(), state));
+            }
+        }
+        for( Map.Entry<String,VirtualMachine> entry : previous.entrySet() ) {
+            if( !current.containsKey(entry.getKey()) ) {
+                events.add(new VMEvent(VMEvent.Type.REMOVED, entry.getKey(), entry.getValue(), entry.getValue().getCurrentState(), null));
+            }
+        }
+        return events;
+    }
+}
@@ -42,8 +42,21 @@ import org.dasein.cloud.*;
 import org.dasein.cloud.compute.*;
 import org.dasein.cloud.dell.asm.APIHandler;
 import org.dasein.cloud.dell.asm.APIResponse;
+import org.dasein.cloud.dell.asm.ASMEvents;
 import org.dasein.cloud.dell.asm.ASMException;
+import org.dasein.cloud.dell.asm.ASMThreadFactory;
+import org.dasein.cloud.dell.asm.ASMTimestamps;
 import org.dasein.cloud.dell.asm.DellASM;
+import org.dasein.cloud.dell.asm.NoContextException;
+import org.dasein.cloud.dell.asm.ParsedTopology;
+import org.dasein.cloud.dell.asm.PhaseTimings;
+import org.dasein.cloud.dell.asm.PlatformResolver;
+import org.dasein.cloud.dell.asm.RateLimiter;
+import org.dasein.cloud.dell.asm.SnapshotCache;
+import org.dasein.cloud.dell.asm.StringInterner;
+import org.dasein.cloud.dell.asm.TopologyCache;
+import org.dasein.cloud.dell.asm.WaitEngine;
+import org.dasein.cloud.dell.asm.WaitHandle;
 import org.dasein.cloud.network.IPVersion;
 import org.dasein.cloud.network.RawAddress;
 import org.dasein.cloud.util.APITrace;
@@ -52,22 +65,28 @@ import org.dasein.util.uom.storage.Megabyte;
 import org.dasein.util.uom.storage.Storage;
 import org.w3c.dom.*;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.Collections;
 import java.util.Locale;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
-import java.io.ByteArrayInputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Implements the Dasein Cloud interface for interacting with virtual machines for virtual machines and physical servers
@@ -94,6 +113,72 @@ public class VirtualVM extends AbstractVMSupport<DellASM> {
 
     static public final String FOUND_RESERVATION_OPTIONS = "res.scheduler.400";
 
+    /**
+     * Custom context property setting the maximum number of launches a bulk launch runs at once.
+     */
+    static public final String BULK_CONCURRENCY  = "bulkConcurrency";
+    /**
+     * Custom context property setting the maximum rate of calls bulk operations make against the endpoint.
+     */
+    static public final String CALLS_PER_SECOND  = "callsPerSecond";
+
+    /**
+     * Launch option metadata key carrying an idempotency key for the launch. Retrying a launch with the same client
+     * token returns the reservation made by the earlier attempt rather than making a new one.
+     */
+    static public final String CLIENT_TOKEN      = "clientToken";
+
+    static public final int    DEFAULT_BULK_CONCURRENCY = 10;
+    static public final double DEFAULT_CALLS_PER_SECOND = 10.0;
+
+    static private ExecutorService launchPool;
+
+    static private int getBulkConcurrency(@Nonnull ProviderContext ctx) {
+        Properties p = ctx.getCustomProperties();
+        String value = (p == null ? null : p.getProperty(BULK_CONCURRENCY));
+
+        if( value == null || value.length() < 1 ) {
+            return DEFAULT_BULK_CONCURRENCY;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        }
+        catch( NumberFormatException e ) {
+            logger.warn("Ignoring invalid " + BULK_CONCURRENCY + " value " + value + "; using " + DEFAULT_BULK_CONCURRENCY);
+            return DEFAULT_BULK_CONCURRENCY;
+        }
+    }
+
+    static private double getCallsPerSecond(@Nonnull ProviderContext ctx) {
+        Properties p = ctx.getCustomProperties();
+        String value = (p == null ? null : p.getProperty(CALLS_PER_SECOND));
+
+        if( value == null || value.length() < 1 ) {
+            return DEFAULT_CALLS_PER_SECOND;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        }
+        catch( NumberFormatException e ) {
+            logger.warn("Ignoring invalid " + CALLS_PER_SECOND + " value " + value + "; using " + DEFAULT_CALLS_PER_SECOND);
+            return DEFAULT_CALLS_PER_SECOND;
+        }
+    }
+
+    static private @Nullable String getClientToken(@Nonnull VMLaunchOptions options) {
+        Map<String,Object> meta = options.getMetaData();
+        Object token = (meta == null ? null : meta.get(CLIENT_TOKEN));
+
+        return (token == null ? null : token.toString());
+    }
+
+    static private synchronized @Nonnull ExecutorService getLaunchPool() {
+        if( launchPool == null ) {
+            launchPool = Executors.newCachedThreadPool(new ASMThreadFactory("launch"));
+        }
+        return launchPool;
+    }
+
     public VirtualVM(@Nonnull DellASM provider) {
         super(provider);
         this.provider = provider;
@@ -140,11 +225,15 @@ public class VirtualVM extends AbstractVMSupport<DellASM> {
     @Override
     public VirtualMachine getVirtualMachine(@Nonnull String vmId) throws InternalException, CloudException {
         //TODO: Ditch this - do readtopology call instead then toVM and throw away non matching device IDs.
+        VMInventory inventory = VMInventory.getInstance(provider);
+        VirtualMachine vm = (inventory.isFresh(provider.getInventoryMaximumAge()) ? inventory.get(vmId) : null);
 
-        VMFilterOptions options = VMFilterOptions.getInstance(vmId);
-        ArrayList<VirtualMachine> vms = (ArrayList<VirtualMachine>)listVirtualMachines(options);
-        for(VirtualMachine vm : vms){
-            if(vm.getProviderVirtualMachineId().equals(vmId)) return vm;
+        if( vm == null ) {
+            loadVirtualMachines(null);
+            vm = inventory.get(vmId);
+        }
+        if( vm != null ) {
+            return vm;
         }
         throw new InternalException("Could not find VM with ID: " + vmId);
     }
@@ -214,135 +303,196 @@ public class VirtualVM extends AbstractVMSupport<DellASM> {
     @Override
     public VirtualMachine launch(@Nonnull VMLaunchOptions withLaunchOptions) throws CloudException, InternalException {
         APITrace.begin(provider, "launchVM");
+        VMStatePoller.operationStarted(provider);
         try{
-            String imageId = withLaunchOptions.getMachineImageId();
-            String dataCenterId = withLaunchOptions.getDataCenterId();
-            String name = withLaunchOptions.getHostName();
-            String description = withLaunchOptions.getDescription();
+            Reservations reservations = new Reservations(provider);
+            String reservationId = reserve(reservations, withLaunchOptions);
 
-            APIHandler handler = new APIHandler(provider);
-            VelocityContext vc;
-            org.apache.velocity.Template template;
-            StringWriter sw = new StringWriter();
+            return resolveLaunch(reservations, reservationId);
+        }
+        finally{
+            VMStatePoller.operationFinished(provider);
+            APITrace.end();
+        }
+    }
 
-            try{
-                template = Velocity.getTemplate("templates/ASM-makeReservation.vm");
-            }
-            catch(ResourceNotFoundException ex){
-                throw new InternalException("An error occurred while launching a VM: " + ex.getMessage());
-            }
+    /**
+     * Launches many virtual machines in parallel using the concurrency cap and call rate configured for this context.
+     * @param withLaunchOptions the options for each launch
+     * @return the outcome of each launch, in the same order as the options
+     * @throws CloudException no context has been established for this request
+     * @throws InternalException the calling thread was interrupted while waiting for the launches
+     * @see #launchMany(List, int, double)
+     */
+    public @Nonnull List<BulkResult<VirtualMachine>> launchMany(@Nonnull List<VMLaunchOptions> withLaunchOptions) throws CloudException, InternalException {
+        ProviderContext ctx = provider.getContext();
+
+        if( ctx == null ) {
+            throw new NoContextException();
+        }
+        return launchMany(withLaunchOptions, getBulkConcurrency(ctx), getCallsPerSecond(ctx));
+    }
 
-            vc = new VelocityContext();
-            vc.put("endpoint", handler.getEndpoint());
-            vc.put("connectionId", handler.getConnectionId());
-            vc.put("makeReservation", MAKE_RESERVATION.toLowerCase());
-            vc.put("makeReservationDtd", MAKE_RESERVATION + "Request.dtd");
-            vc.put("machineImageId", imageId);
-            vc.put("hostName", name);
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssz");
-            String sessionDuration = "<permanent start=\"" + sdf.format(new Date()) + "\" />";//TODO: if start/end times provided add here
-            vc.put("sessionDuration", sessionDuration);
-
-            template.merge(vc, sw);
-            APIResponse response = handler.post(MAKE_RESERVATION, sw.toString());
-            Document doc = response.getXML();
-            if(doc == null){
-                throw new ASMException(CloudErrorType.COMMUNICATION, response.getCode(), "NoResponse", "No response from make reservation request");
-            }
-
-            Node responseSet = doc.getElementsByTagName("responseset").item(0);
-            String responseCode = responseSet.getAttributes().getNamedItem("code").getNodeValue().trim();
-            if(responseCode.equalsIgnoreCase(FOUND_RESERVATION_OPTIONS)){
-                String responseId = null;
-
-                NodeList hosts = responseSet.getChildNodes();
-                for(int i=0;i<hosts.getLength();i++){
-                    Node host = hosts.item(i);
-                    if(host.getNodeType() == Node.TEXT_NODE)continue;
-                    if(host.getNodeName().equalsIgnoreCase("response")){
-                        responseId = host.getAttributes().getNamedItem("responseid").getNodeValue();
-                        //No way to determine host health so just use first one found
-                        break;
-                    }
+    /**
+     * Launches many virtual machines in parallel. Each launch runs the full makeReservation, confirmResponse, and
+     * readTopology pipeline on its own; at most <code>maxConcurrency</code> pipelines run at once, and every call
+     * against the endpoint is paced by a limiter shared by all bulk operations against that endpoint. A failed launch
+     * does not affect the others, and reservations confirmed by successful launches are never rolled back.
+     * @param withLaunchOptions the options for each launch
+     * @param maxConcurrency the maximum number of launches in progress at once
+     * @param callsPerSecond the maximum rate of calls against the endpoint, zero or less for no limit of its own (see {@link RateLimiter#getInstance(String, double)})
+     * @return the outcome of each launch, in the same order as the options
+     * @throws CloudException no context has been established for this request
+     * @throws InternalException the calling thread was interrupted while waiting for the launches
+     */
+    public @Nonnull List<BulkResult<VirtualMachine>> launchMany(@Nonnull List<VMLaunchOptions> withLaunchOptions, @Nonnegative int maxConcurrency, double callsPerSecond) throws CloudException, InternalException {
+        ProviderContext ctx = provider.getContext();
+
+        if( ctx == null ) {
+            throw new NoContextException();
+        }
+        if( withLaunchOptions.isEmpty() ) {
+            return Collections.emptyList();
+        }
+        APITrace.begin(provider, "launchVMs");
+        VMStatePoller.operationStarted(provider);
+        try {
+            final Reservations reservations = new Reservations(provider, RateLimiter.getInstance(ctx.getEndpoint(), callsPerSecond));
+            ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(maxConcurrency, withLaunchOptions.size())), new ASMThreadFactory("bulklaunch"));
+            ArrayList<Future<BulkResult<VirtualMachine>>> futures = new ArrayList<Future<BulkResult<VirtualMachine>>>();
+
+            try {
+                for( final VMLaunchOptions options : withLaunchOptions ) {
+                    futures.add(pool.submit(new Callable<BulkResult<VirtualMachine>>() {
+                        @Override
+                        public BulkResult<VirtualMachine> call() {
+                            String reservationId = null;
+
+                            APITrace.begin(provider, "launchVM");
+                            try {
+                                reservationId = reserve(reservations, options);
+                                return new BulkResult<VirtualMachine>(reservationId, resolveLaunch(reservations, reservationId), null);
+                            }
+                            catch( Throwable t ) {
+                                logger.warn("Bulk launch of " + options.getHostName() + " failed: " + t.getMessage());
+                                return new BulkResult<VirtualMachine>(reservationId, null, t);
+                            }
+                            finally {
+                                APITrace.end();
+                            }
+                        }
+                    }));
                 }
+                ArrayList<BulkResult<VirtualMachine>> results = new ArrayList<BulkResult<VirtualMachine>>();
 
-                if(responseId != null){
-                    sw = new StringWriter();
-                    try{
-                        template = Velocity.getTemplate("templates/ASM-confirmResponse.vm");
+                for( Future<BulkResult<VirtualMachine>> f : futures ) {
+                    try {
+                        results.add(f.get());
                     }
-                    catch(ResourceNotFoundException ex){
-                        throw new InternalException("An error occurred while launching a VM: " + ex.getMessage());
+                    catch( ExecutionException e ) {
+                        results.add(new BulkResult<VirtualMachine>(null, null, e.getCause()));
                     }
+                }
+                return results;
+            }
+            catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new InternalException(e);
+            }
+            finally {
+                pool.shutdownNow();
+            }
+        }
+        finally {
+            VMStatePoller.operationFinished(provider);
+            APITrace.end();
+        }
+    }
 
-                    vc = new VelocityContext();
-                    vc.put("endpoint", handler.getEndpoint());
-                    vc.put("connectionId", handler.getConnectionId());
-                    vc.put("confirmResponse", CONFIRM_RESPONSE.toLowerCase());
-                    vc.put("confirmResponseDtd", CONFIRM_RESPONSE + "Request.dtd");
-                    vc.put("responseId", responseId);
-                    vc.put("name", name);
-
-                    template.merge(vc, sw);
-                    APIResponse confirmResponse = handler.post(CONFIRM_RESPONSE, sw.toString());
-                    Document confirmDoc = confirmResponse.getXML();
-                    if(confirmDoc == null){
-                        throw new ASMException(CloudErrorType.COMMUNICATION, response.getCode(), "NoVM", "An error occurred while creating a session for the VM");
-                    }
-                    String reservationId = confirmDoc.getElementsByTagName("confirmresponse").item(0).getAttributes().getNamedItem("reservationid").getNodeValue().trim();
+    /**
+     * Launches a virtual machine, returning as soon as Dell ASM has confirmed the reservation. The topology of the
+     * reservation is read in the background, so the calling thread is not held while the ASM scheduler sets up the
+     * session. The launch counts as an operation in flight for {@link #subscribe(VMEventListener) subscribers} until
+     * the background read ends.
+     * <p>
+     *     The pending virtual machine is only a handle: the device key that completes a virtual machine ID is not
+     *     known until the topology is read, so its ID is the bare reservation ID and it cannot be passed to
+     *     {@link #getVirtualMachine(String)} or {@link #waitForState(String, long, VmState...)}. Use
+     *     {@link PendingLaunch#get()} for the launched virtual machine, or wait on
+     *     {@link PendingLaunch#getReservationId()} with {@link #waitForReservation(String, long, String...)}.
+     * </p>
+     * @param withLaunchOptions the options for the launch
+     * @return a handle carrying a pending virtual machine and the eventual fully resolved virtual machine
+     * @throws CloudException the reservation could not be made or confirmed
+     * @throws InternalException an error occurred within Dasein Cloud making the reservation
+     */
+    public @Nonnull PendingLaunch launchAsync(@Nonnull VMLaunchOptions withLaunchOptions) throws CloudException, InternalException {
+        APITrace.begin(provider, "launchVMAsync");
+        VMStatePoller.operationStarted(provider);
+        boolean resolving = false;
 
-                    try{
-                        template = Velocity.getTemplate("templates/ASM-readTopology.vm");
-                    }
-                    catch(ResourceNotFoundException ex){
-                        throw new InternalException("An error occurred reading the current topology: " + ex.getMessage());
-                    }
+        try{
+            final String reservationId = reserve(new Reservations(provider), withLaunchOptions);
+            ProviderContext ctx = provider.getContext();
 
-                    vc = new VelocityContext();
-                    sw = new StringWriter();
-                    vc.put("endpoint", handler.getEndpoint());
-                    vc.put("connectionId", handler.getConnectionId());
-                    vc.put("readTopologyDtd", READ_TOPOLOGY + "Request.dtd");
-                    vc.put("reservationId", reservationId);
-
-                    template.merge(vc, sw);
-                    APIResponse topologyResponse = handler.post(READ_TOPOLOGY, sw.toString());
-                    Document topologyDoc = topologyResponse.getXML();
-                    if(doc == null){
-                        logger.error("No content in topology");
-                        throw new ASMException(CloudErrorType.COMMUNICATION, response.getCode(), "NoContent", "No content in topology");
+            SnapshotCache.getInstance(provider).invalidate(SnapshotCache.VIRTUAL_MACHINES);
+            VirtualMachine vm = new VirtualMachine();
+
+            vm.setProviderVirtualMachineId(reservationId);
+            vm.setProviderMachineImageId(withLaunchOptions.getMachineImageId());
+            vm.setName(withLaunchOptions.getHostName());
+            vm.setDescription(withLaunchOptions.getDescription());
+            vm.setCurrentState(VmState.PENDING);
+            vm.setCreationTimestamp(System.currentTimeMillis());
+            if( ctx != null ) {
+                vm.setProviderDataCenterId(ctx.getRegionId());
+                vm.setProviderRegionId(ctx.getRegionId());
+            }
+            vm.setTag("reservationid", reservationId);
+
+            // whichever of the task and its cancellation claims the launch first releases the provider and ends the operation
+            final AtomicBoolean claimed = new AtomicBoolean(false);
+            FutureTask<VirtualMachine> completion = new FutureTask<VirtualMachine>(new Callable<VirtualMachine>() {
+                @Override
+                public VirtualMachine call() throws Exception {
+                    if( !claimed.compareAndSet(false, true) ) {
+                        return null;
                     }
-
-                    NodeList xmltext = topologyDoc.getElementsByTagName("xmltext");
-                    try{
-                        Document topologyContent = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(((CharacterData)xmltext.item(0).getFirstChild()).getData().trim().getBytes()));
-                        Collection<VirtualMachine> machines = toVirtualMachine(reservationId, topologyContent);
-                        if(machines != null){
-                            for(VirtualMachine vm : machines){
-                                if(vm != null){
-                                    vm.setCreationTimestamp(new Date().getTime());
-                                    return vm;//We can safely return on the first VM in the collection
-                                }
-                            }
-                        }
+                    APITrace.begin(provider, "resolveLaunch");
+                    try {
+                        return resolveLaunch(new Reservations(provider), reservationId);
                     }
-                    catch(Exception ex){
-                        ex.printStackTrace();
-                        logger.error(ex.getMessage());
-                        throw new InternalException(ex.getMessage());
+                    finally {
+                        VMStatePoller.operationFinished(provider);
+                        provider.release();
+                        APITrace.end();
                     }
-                    return null;
                 }
-                else{
-                    throw new InternalException("An error occurred establishing a session for launch");
+            }) {
+                @Override
+                protected void done() {
+                    if( claimed.compareAndSet(false, true) ) {
+                        VMStatePoller.operationFinished(provider);
+                        provider.release();
+                    }
                 }
+            };
+
+            provider.hold();
+            try {
+                getLaunchPool().execute(completion);
             }
-            else{
-                String error = responseSet.getAttributes().getNamedItem("message").getNodeValue().trim();
-                throw new ASMException(CloudErrorType.GENERAL, -1, responseCode, error);
+            catch( RuntimeException e ) {
+                provider.release();
+                throw e;
             }
+            resolving = true;
+            return new PendingLaunch(reservationId, vm, completion);
         }
         finally{
+            if( !resolving ) {
+                VMStatePoller.operationFinished(provider);
+            }
             APITrace.end();
         }
     }
@@ -422,8 +572,78 @@ public class VirtualVM extends AbstractVMSupport<DellASM> {
         return listVirtualMachines(options);
     }
 
+    /**
+     * Lists the virtual machines matching a query against the indexes of the context's {@link VMInventory}. The
+     * inventory is answered as it stands if it was listed within {@link DellASM#getInventoryMaximumAge()}, otherwise
+     * it is brought up to date with a full listing first.
+     * @param query the criteria to match
+     * @return the matching virtual machines
+     * @throws InternalException an error occurred within Dasein Cloud listing the virtual machines
+     * @throws CloudException an error occurred with Dell ASM listing the virtual machines
+     */
+    public @Nonnull Iterable<VirtualMachine> listVirtualMachines(@Nonnull VMInventory.Query query) throws InternalException, CloudException {
+        VMInventory inventory = VMInventory.getInstance(provider);
+
+        if( !inventory.isFresh(provider.getInventoryMaximumAge()) ) {
+            loadVirtualMachines(null);
+        }
+        return inventory.query(query);
+    }
+
+    /**
+     * Lists the virtual machines matching the specified filters. When the provider serves listings from snapshots,
+     * the last good snapshot is filtered and revalidated in the background as described in {@link SnapshotCache},
+     * and its age is available from {@link SnapshotCache#getAge(String)} for {@link SnapshotCache#VIRTUAL_MACHINES}.
+     * @param options the filters to match, null to list all virtual machines
+     * @return the matching virtual machines
+     * @throws InternalException an error occurred within Dasein Cloud listing the virtual machines
+     * @throws CloudException an error occurred with Dell ASM listing the virtual machines
+     */
     @Override
     public Iterable<VirtualMachine> listVirtualMachines(@Nullable VMFilterOptions options) throws InternalException, CloudException {
+        long staleness = provider.getSnapshotStaleness();
+
+        if( staleness < 1L ) {
+            return loadVirtualMachines(options);
+        }
+        List<VirtualMachine> snapshot = SnapshotCache.getInstance(provider).get(provider, SnapshotCache.VIRTUAL_MACHINES, staleness, provider.getSnapshotMaximumAge(), new SnapshotCache.Loader<VirtualMachine>() {
+            @Override
+            public @Nonnull Iterable<VirtualMachine> load() throws CloudException, InternalException {
+                return refreshVirtualMachines();
+            }
+        });
+        ArrayList<VirtualMachine> vms = new ArrayList<VirtualMachine>();
+
+        for( VirtualMachine vm : snapshot ) {
+            if( options == null || options.matches(vm) ) {
+                vms.add(VMInventory.copy(vm));
+            }
+        }
+        return vms;
+    }
+
+    /**
+     * Brings the inventory up to date for a snapshot. While the inventory is fresh and a tolerant listing left failed
+     * reservations behind, only those reservations are read again; otherwise every reservation is listed.
+     */
+    private @Nonnull List<VirtualMachine> refreshVirtualMachines() throws InternalException, CloudException {
+        VMInventory inventory = VMInventory.getInstance(provider);
+
+        if( provider.isTolerantListing() && inventory.isFresh(provider.getInventoryMaximumAge()) && !inventory.getFailures().isEmpty() ) {
+            return retryFailedReservations();
+        }
+        return loadVirtualMachines(null);
+    }
+
+    /**
+     * Lists the virtual machines straight from Dell ASM, bypassing any snapshot, and folds the listing into the
+     * context's {@link VMInventory}. Lookups and internal polling use this so they never act on a stale snapshot.
+     * @param options the filters to match, null to list all virtual machines
+     * @return the matching virtual machines
+     * @throws InternalException an error occurred within Dasein Cloud listing the virtual machines
+     * @throws CloudException an error occurred with Dell ASM listing the virtual machines
+     */
+    @Nonnull List<VirtualMachine> loadVirtualMachines(@Nullable VMFilterOptions options) throws InternalException, CloudException {
         //TODO: Add filters if possible
         APITrace.begin(provider, "listVirtualMachines");
         try{
@@ -452,7 +672,7 @@ public class VirtualVM extends AbstractVMSupport<DellASM> {
             vc.put("enumerateReservationsDtd", ENUMERATE_RESERVATIONS + "Request.dtd");
             vc.put("extraFilters", extraFilters);//TODO: Need to filter out anything not in AWAITING_SECURITY_SETTING_UP, SNAPSHOT, RUNNING, SETTING_UP or CONFIRMED - can't get this working
 
-            template.merge(vc, sw);
+            handler.merge(template, vc, sw);
             APIResponse response = handler.post(ENUMERATE_RESERVATIONS, sw.toString());
             Document doc = response.getXML();
             if(doc == null){
@@ -460,72 +680,144 @@ public class VirtualVM extends AbstractVMSupport<DellASM> {
             }
 
             ArrayList<VirtualMachine> vms = new ArrayList<VirtualMachine>();
+            ArrayList<VMInventory.Failure> failures = new ArrayList<VMInventory.Failure>();
+            boolean tolerant = provider.isTolerantListing();
             //ImageFilterOptions imgOptions = null;
             //Collection<MachineImage> images = (Collection<MachineImage>)provider.getComputeServices().getImageSupport().listImages(imgOptions);
             NodeList reservations = doc.getElementsByTagName("reservation");
+            long fanout = System.nanoTime();
             if(reservations != null){
                 for(int i=0;i<reservations.getLength();i++){
                     Node node = reservations.item(i);
                     String reservationId = node.getAttributes().getNamedItem("reservationid").getNodeValue().trim();
+                    Node created = node.getAttributes().getNamedItem("createdtime");
+                    String createdTime = (created == null ? null : created.getNodeValue());
 
-                    try{
-                        template = Velocity.getTemplate("templates/ASM-readTopology.vm");
+                    if( !tolerant ) {
+                        vms.addAll(readReservation(handler, reservationId, createdTime));
+                        continue;
                     }
-                    catch(ResourceNotFoundException ex){
-                        throw new InternalException("An error occurred reading the current topology: " + ex.getMessage());
+                    try {
+                        vms.addAll(readReservation(handler, reservationId, createdTime));
                     }
-
-                    vc = new VelocityContext();
-                    sw = new StringWriter();
-                    vc.put("endpoint", handler.getEndpoint());
-                    vc.put("connectionId", handler.getConnectionId());
-                    vc.put("readTopologyDtd", READ_TOPOLOGY + "Request.dtd");
-                    vc.put("reservationId", reservationId);
-
-                    template.merge(vc, sw);
-                    APIResponse topologyResponse = handler.post(READ_TOPOLOGY, sw.toString());
-                    Document topologyDoc = topologyResponse.getXML();
-                    if(doc == null){
-                        logger.error("No content in topology");
-                        throw new ASMException(CloudErrorType.COMMUNICATION, response.getCode(), "NoContent", "No content in topology");
+                    catch( Exception ex ) {
+                        logger.warn("Unable to read topology for reservation " + reservationId + ": " + ex.getMessage());
+                        failures.add(new VMInventory.Failure(reservationId, createdTime, ex));
                     }
+                }
+            }
+            if( ASMEvents.isEnabled() && reservations != null ) {
+                ASMEvents.topologyBatch(reservations.getLength(), System.nanoTime() - fanout);
+            }
+            VMInventory inventory = VMInventory.getInstance(provider);
+
+            inventory.update(vms, failures);
+            if( !failures.isEmpty() ) {
+                logger.warn("Listed virtual machines without " + failures.size() + " of " + reservations.getLength() + " reservations: " + failures);
+            }
+            return inventory.list(options);
+        }
+        finally{
+            APITrace.end();
+        }
+    }
+
+    /**
+     * Reads again only the reservations a tolerant listing could not read, folding those that can now be read into
+     * the context's {@link VMInventory}. Reservations that still cannot be read remain listed as failures.
+     * <p>
+     *     When listings are served from snapshots, the background revalidation of the virtual machine snapshot calls
+     *     this in place of a full listing while the inventory is within {@link DellASM#getInventoryMaximumAge()} and
+     *     has failures. Otherwise nothing calls it automatically: a full listing reads every reservation again, so
+     *     callers wanting to retry only the failures between listings must call it themselves.
+     * </p>
+     * @return the virtual machines now in the inventory
+     * @throws InternalException an error occurred within Dasein Cloud reading the reservations
+     * @throws CloudException an error occurred with Dell ASM reading the reservations
+     */
+    public @Nonnull List<VirtualMachine> retryFailedReservations() throws InternalException, CloudException {
+        APITrace.begin(provider, "retryFailedReservations");
+        try {
+            VMInventory inventory = VMInventory.getInstance(provider);
+            APIHandler handler = new APIHandler(provider);
+
+            for( VMInventory.Failure f : inventory.getFailures() ) {
+                try {
+                    inventory.update(f.getReservationId(), readReservation(handler, f.getReservationId(), f.getCreatedTime()));
+                }
+                catch( Exception ex ) {
+                    logger.warn("Still unable to read topology for reservation " + f.getReservationId() + ": " + ex.getMessage());
+                    inventory.failed(new VMInventory.Failure(f.getReservationId(), f.getCreatedTime(), ex));
+                }
+            }
+            return inventory.list(null);
+        }
+        finally {
+            APITrace.end();
+        }
+    }
+
+    private @Nonnull Collection<VirtualMachine> readReservation(@Nonnull APIHandler handler, @Nonnull String reservationId, @Nullable String createdTime) throws InternalException, CloudException {
+        org.apache.velocity.Template template;
+        StringWriter sw = new StringWriter();
+
+        try{
+            template = Velocity.getTemplate("templates/ASM-readTopology.vm");
+        }
+        catch(ResourceNotFoundException ex){
+            throw new InternalException("An error occurred reading the current topology: " + ex.getMessage());
+        }
+
+        VelocityContext vc = new VelocityContext();
+        vc.put("endpoint", handler.getEndpoint());
+        vc.put("connectionId", handler.getConnectionId());
+        vc.put("readTopologyDtd", READ_TOPOLOGY + "Request.dtd");
+        vc.put("reservationId", reservationId);
+
+        handler.merge(template, vc, sw);
+        APIResponse topologyResponse = handler.post(READ_TOPOLOGY, sw.toString());
+        Document topologyDoc = topologyResponse.getXML();
+        if(topologyDoc == null){
+            logger.error("No content in topology");
+            throw new ASMException(CloudErrorType.COMMUNICATION, topologyResponse.getCode(), "NoContent", "No content in topology");
+        }
 
-                    NodeList xmltext = topologyDoc.getElementsByTagName("xmltext");
-                    try{
-                        Document topologyContent = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(((CharacterData)xmltext.item(0).getFirstChild()).getData().trim().getBytes()));
-                        Collection<VirtualMachine> machines = toVirtualMachine(reservationId, topologyContent);
-                        if(machines != null){
-                            for(VirtualMachine vm : machines){
-                                if(vm != null){
-                                    try{
-                                        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssz");
-                                        vm.setCreationTimestamp(sdf.parse(node.getAttributes().getNamedItem("createdtime").getNodeValue().trim()).getTime());
-                                    }
-                                    catch(ParseException ex){
-                                        logger.error(ex.getMessage());
-                                    }
-                                    vms.add(vm);
-                                }
+        NodeList xmltext = topologyDoc.getElementsByTagName("xmltext");
+        ArrayList<VirtualMachine> vms = new ArrayList<VirtualMachine>();
+        try{
+            long parsing = System.nanoTime();
+            ParsedTopology topology = TopologyCache.getInstance().parse(((CharacterData)xmltext.item(0).getFirstChild()).getData().trim());
+            PhaseTimings.recordSince(PhaseTimings.Phase.PARSE, parsing);
+            long mapping = System.nanoTime();
+            Collection<VirtualMachine> machines = toVirtualMachine(reservationId, topology);
+            PhaseTimings.recordSince(PhaseTimings.Phase.MAP, mapping);
+            if(machines != null){
+                for(VirtualMachine vm : machines){
+                    if(vm != null){
+                        if( createdTime != null ) {
+                            try{
+                                vm.setCreationTimestamp(ASMTimestamps.parse(createdTime));
+                            }
+                            catch(ParseException ex){
+                                logger.error(ex.getMessage());
                             }
                         }
-                    }
-                    catch(Exception ex){
-                        ex.printStackTrace();
-                        logger.error(ex.getMessage());
-                        throw new InternalException(ex.getMessage());
+                        vms.add(vm);
                     }
                 }
             }
-            return vms;
         }
-        finally{
-            APITrace.end();
+        catch(Exception ex){
+            logger.error(ex.getMessage());
+            throw new InternalException(ex.getMessage());
         }
+        return vms;
     }
 
     @Override
     public void start(@Nonnull String vmId) throws InternalException, CloudException {
         APITrace.begin(provider, "startVM");
+        VMStatePoller.operationStarted(provider);
         try {
             APIHandler handler = new APIHandler(provider);
             VelocityContext vc;
@@ -539,8 +831,8 @@ public class VirtualVM extends AbstractVMSupport<DellASM> {
                 throw new InternalException("An error occurred joining the session: " + ex.getMessage());
             }
 
-            String reservationId = vmId.split(":")[0];
-            String deviceId = vmId.split(":")[1];
+            String reservationId = VMInventory.getReservationId(vmId);
+            String deviceId = VMInventory.getDeviceKey(vmId);
 
             vc = new VelocityContext();
             vc.put("endpoint", handler.getEndpoint());
@@ -549,7 +841,7 @@ public class VirtualVM extends AbstractVMSupport<DellASM> {
             vc.put("joinLabSessionDtd", JOIN_LAB_SESSION + "Request.dtd");
             vc.put("reservationId", reservationId);
 
-            template.merge(vc, sw);
+            handler.merge(template, vc, sw);
             APIResponse response = handler.post(JOIN_LAB_SESSION, sw.toString());
             Document doc = response.getXML();
             if(doc == null){
@@ -577,7 +869,7 @@ public class VirtualVM extends AbstractVMSupport<DellASM> {
                 vc.put("deviceId", deviceId);
 
                 sw = new StringWriter();
-                template.merge(vc, sw);
+                handler.merge(template, vc, sw);
                 APIResponse powerResponse = handler.post(POWER_ON, sw.toString());
                 Document powerDoc = powerResponse.getXML();
                 if(powerDoc == null){
@@ -601,8 +893,9 @@ public class VirtualVM extends AbstractVMSupport<DellASM> {
                 vc.put("sessionId", sessionId);
 
                 sw = new StringWriter();
-                template.merge(vc, sw);
+                handler.merge(template, vc, sw);
                 handler.post(LEAVE_LAB_SESSION, sw.toString());
+                stateChanged(vmId, VmState.RUNNING);
             }
             else{
                 Node error = doc.getElementsByTagName("error").item(0);
@@ -612,6 +905,7 @@ public class VirtualVM extends AbstractVMSupport<DellASM> {
             }
         }
         finally {
+            VMStatePoller.operationFinished(provider);
             APITrace.end();
         }
     }
@@ -619,6 +913,7 @@ public class VirtualVM extends AbstractVMSupport<DellASM> {
     @Override
     public void stop(@Nonnull String vmId, boolean force) throws InternalException, CloudException {
         APITrace.begin(provider, "stopVM");
+        VMStatePoller.operationStarted(provider);
         try {
             APIHandler handler = new APIHandler(provider);
             VelocityContext vc;
@@ -632,8 +927,8 @@ public class VirtualVM extends AbstractVMSupport<DellASM> {
                 throw new InternalException("An error occurred joining the session: " + ex.getMessage());
             }
 
-            String reservationId = vmId.split(":")[0];
-            String deviceId = vmId.split(":")[1];
+            String reservationId = VMInventory.getReservationId(vmId);
+            String deviceId = VMInventory.getDeviceKey(vmId);
 
             vc = new VelocityContext();
             vc.put("endpoint", handler.getEndpoint());
@@ -642,7 +937,7 @@ public class VirtualVM extends AbstractVMSupport<DellASM> {
             vc.put("joinLabSessionDtd", JOIN_LAB_SESSION + "Request.dtd");
             vc.put("reservationId", reservationId);
 
-            template.merge(vc, sw);
+            handler.merge(template, vc, sw);
             APIResponse response = handler.post(JOIN_LAB_SESSION, sw.toString());
             Document doc = response.getXML();
             if(doc == null){
@@ -669,7 +964,7 @@ public class VirtualVM extends AbstractVMSupport<DellASM> {
                 vc.put("deviceId", deviceId);
 
                 sw = new StringWriter();
-                template.merge(vc, sw);
+                handler.merge(template, vc, sw);
                 APIResponse powerResponse = handler.post(POWER_OFF, sw.toString());
                 Document powerDoc = powerResponse.getXML();
                 if(powerDoc == null){
@@ -693,8 +988,9 @@ public class VirtualVM extends AbstractVMSupport<DellASM> {
                 vc.put("sessionId", sessionId);
 
                 sw = new StringWriter();
-                template.merge(vc, sw);
+                handler.merge(template, vc, sw);
                 handler.post(LEAVE_LAB_SESSION, sw.toString());
+                stateChanged(vmId, VmState.STOPPED);
             }
             else{
                 Node error = doc.getElementsByTagName("error").item(0);
@@ -704,10 +1000,32 @@ public class VirtualVM extends AbstractVMSupport<DellASM> {
             }
         }
         finally {
+            VMStatePoller.operationFinished(provider);
             APITrace.end();
         }
     }
 
+    /**
+     * Registers a listener to be notified as virtual machines in this account are added, removed, or change state.
+     * All listeners for the same account share a single poller, so subscribing is far cheaper than polling
+     * {@link #listVirtualMachines()} independently. Events are delivered on a shared pool of daemon threads.
+     * @param listener the listener to be notified of changes
+     * @throws CloudException no context has been established for this request
+     */
+    public void subscribe(@Nonnull VMEventListener listener) throws CloudException {
+        VMStatePoller.subscribe(provider, listener, null);
+    }
+
+    /**
+     * Registers a listener to be notified as virtual machines in this account are added, removed, or change state.
+     * @param listener the listener to be notified of changes
+     * @param executor the executor on which events for this listener are delivered
+     * @throws CloudException no context has been established for this request
+     */
+    public void subscribe(@Nonnull VMEventListener listener, @Nonnull Executor executor) throws CloudException {
+        VMStatePoller.subscribe(provider, listener, executor);
+    }
+
     @Override
     public void reboot(@Nonnull String vmId) throws CloudException, InternalException {
         //Supported in UI - not in API
@@ -744,145 +1062,307 @@ public class VirtualVM extends AbstractVMSupport<DellASM> {
     @Override
     public void terminate(@Nonnull String vmId, @Nullable String explanation) throws InternalException, CloudException {
         APITrace.begin(getProvider(), "terminateVM");
+        VMStatePoller.operationStarted(provider);
         try{
-            APIHandler handler = new APIHandler(provider);
-            VelocityContext vc;
-            org.apache.velocity.Template template;
-            StringWriter sw = new StringWriter();
-
             //TODO: Do a readTopology first and check for multiple VMs as we cannot terminate those - so throw error
+            String reservationId = VMInventory.getReservationId(vmId);
 
-            try{
-                template = Velocity.getTemplate("templates/ASM-joinLabSession.vm");
-            }
-            catch(ResourceNotFoundException ex){
-                throw new InternalException("An error occurred joining the session: " + ex.getMessage());
-            }
+            new Reservations(provider).cancel(reservationId);
+            reservationsCancelled(Collections.singletonList(reservationId));
+        }
+        finally{
+            VMStatePoller.operationFinished(provider);
+            APITrace.end();
+        }
+    }
 
-            String reservationId = vmId.split(":")[0];
+    /**
+     * Terminates many virtual machines in parallel using the concurrency cap and call rate configured for this context.
+     * @param vmIds the virtual machines to be terminated
+     * @return the outcome for each virtual machine, in the same order as the IDs
+     * @throws CloudException no context has been established for this request
+     * @throws InternalException the calling thread was interrupted while waiting for the terminations
+     * @see #terminateMany(List, int, double)
+     */
+    public @Nonnull List<BulkResult<String>> terminateMany(@Nonnull List<String> vmIds) throws CloudException, InternalException {
+        ProviderContext ctx = provider.getContext();
+
+        if( ctx == null ) {
+            throw new NoContextException();
+        }
+        return terminateMany(vmIds, getBulkConcurrency(ctx), getCallsPerSecond(ctx));
+    }
 
-            vc = new VelocityContext();
-            vc.put("endpoint", handler.getEndpoint());
-            vc.put("connectionId", handler.getConnectionId());
-            vc.put("cancelReservation", CANCEL_RESERVATION.toLowerCase());
-            vc.put("cancelReservationDtd", CANCEL_RESERVATION + "Request.dtd");
-            vc.put("reservationId", reservationId);
+    /**
+     * Terminates many virtual machines in parallel. Virtual machines are torn down by cancelling their reservations, so
+     * the IDs are first grouped by reservation and each reservation is cancelled exactly once no matter how many of
+     * its virtual machines are listed. At most <code>maxConcurrency</code> cancellations run at once, paced by the
+     * limiter shared by all bulk operations against the endpoint.
+     * @param vmIds the virtual machines to be terminated
+     * @param maxConcurrency the maximum number of cancellations in progress at once
+     * @param callsPerSecond the maximum rate of calls against the endpoint, zero or less for no limit of its own (see {@link RateLimiter#getInstance(String, double)})
+     * @return the outcome for each virtual machine, in the same order as the IDs; each result carries the VM ID and, on
+     * success, the ID of the cancelled reservation
+     * @throws CloudException no context has been established for this request
+     * @throws InternalException the calling thread was interrupted while waiting for the terminations
+     */
+    public @Nonnull List<BulkResult<String>> terminateMany(@Nonnull List<String> vmIds, @Nonnegative int maxConcurrency, double callsPerSecond) throws CloudException, InternalException {
+        ProviderContext ctx = provider.getContext();
+
+        if( ctx == null ) {
+            throw new NoContextException();
+        }
+        if( vmIds.isEmpty() ) {
+            return Collections.emptyList();
+        }
+        APITrace.begin(provider, "terminateVMs");
+        VMStatePoller.operationStarted(provider);
+        try {
+            final Reservations reservations = new Reservations(provider, RateLimiter.getInstance(ctx.getEndpoint(), callsPerSecond));
+            LinkedHashMap<String,Future<Throwable>> cancels = new LinkedHashMap<String, Future<Throwable>>();
 
-            template.merge(vc, sw);
-            APIResponse response = handler.post(JOIN_LAB_SESSION, sw.toString());
-            Document doc = response.getXML();
-            if(doc == null){
-                throw new ASMException(CloudErrorType.COMMUNICATION, response.getCode(), "NoResponse", "No response to terminate request");
+            for( String vmId : vmIds ) {
+                cancels.put(VMInventory.getReservationId(vmId), null);
             }
+            ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(maxConcurrency, cancels.size())), new ASMThreadFactory("bulkterminate"));
+
+            try {
+                for( final String reservationId : cancels.keySet() ) {
+                    cancels.put(reservationId, pool.submit(new Callable<Throwable>() {
+                        @Override
+                        public Throwable call() {
+                            APITrace.begin(provider, "terminateVM");
+                            try {
+                                reservations.cancel(reservationId);
+                                return null;
+                            }
+                            catch( Throwable t ) {
+                                logger.warn("Bulk cancel of reservation " + reservationId + " failed: " + t.getMessage());
+                                return t;
+                            }
+                            finally {
+                                APITrace.end();
+                            }
+                        }
+                    }));
+                }
+                HashMap<String,Throwable> outcomes = new HashMap<String, Throwable>();
 
-            if(doc.getElementsByTagName("error") != null && doc.getElementsByTagName("error").getLength() > 0){
-                Node error = doc.getElementsByTagName("error").item(0);
-                String errorCode = error.getAttributes().getNamedItem("code").getNodeValue().trim();
-                String errorMsg = error.getAttributes().getNamedItem("message").getNodeValue().trim();
-                throw new ASMException(CloudErrorType.GENERAL, -1, errorCode, errorMsg);
+                for( Map.Entry<String,Future<Throwable>> entry : cancels.entrySet() ) {
+                    try {
+                        outcomes.put(entry.getKey(), entry.getValue().get());
+                    }
+                    catch( ExecutionException e ) {
+                        outcomes.put(entry.getKey(), e.getCause());
+                    }
+                }
+                ArrayList<String> cancelled = new ArrayList<String>();
+
+                for( Map.Entry<String,Throwable> outcome : outcomes.entrySet() ) {
+                    if( outcome.getValue() == null ) {
+                        cancelled.add(outcome.getKey());
+                    }
+                }
+                reservationsCancelled(cancelled);
+                ArrayList<BulkResult<String>> results = new ArrayList<BulkResult<String>>();
+
+                for( String vmId : vmIds ) {
+                    String reservationId = VMInventory.getReservationId(vmId);
+                    Throwable error = outcomes.get(reservationId);
+
+                    results.add(new BulkResult<String>(vmId, error == null ? reservationId : null, error));
+                }
+                return results;
+            }
+            catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new InternalException(e);
+            }
+            finally {
+                pool.shutdownNow();
             }
         }
-        finally{
+        finally {
+            VMStatePoller.operationFinished(provider);
             APITrace.end();
         }
     }
 
-    private Collection<VirtualMachine> toVirtualMachine(String reservationId, Document topologyContent) throws InternalException, CloudException{
-        HashMap<String, VirtualMachine> vmMap = new HashMap<String, VirtualMachine>();
-        NodeList topology = topologyContent.getElementsByTagName("topology").item(0).getChildNodes();
-        for(int i=0;i<topology.getLength();i++){//Get the list of devices first
-            Node current = topology.item(i);
-            if(current.getNodeType() == Node.TEXT_NODE)continue;
-
-            if(current.getNodeName().equalsIgnoreCase("device")){
-                if(current.getAttributes().getNamedItem("model").getNodeValue().equalsIgnoreCase("VirtualMachine")){
-                    String cpuCount = "";
-                    String ramInMb = "";
-
-                    VirtualMachine vm = new VirtualMachine();
-                    String deviceKey = current.getAttributes().getNamedItem("key").getNodeValue().trim();
-
-                    vm.setName(current.getAttributes().getNamedItem("name").getNodeValue().trim());
-                    vm.setDescription(current.getAttributes().getNamedItem("description").getNodeValue().trim());
-                    vm.setProviderVirtualMachineId(reservationId + ":" + deviceKey);
-                    vm.setProviderDataCenterId(provider.getContext().getRegionId());
-                    vm.setProviderRegionId(provider.getContext().getRegionId());
-                    vm.setTag("devicekey", deviceKey);
-
-                    for(int j=0;j<current.getChildNodes().getLength();j++){
-                        Node vmProperties = current.getChildNodes().item(j);
-                        if(vmProperties.getNodeType() == Node.TEXT_NODE)continue;
-
-                        if(vmProperties.getNodeName().equalsIgnoreCase("enforcedproperties")){
-                            for(int k=0;k<vmProperties.getChildNodes().getLength();k++){
-                                Node property = vmProperties.getChildNodes().item(k);
-                                if(property.getNodeType() == Node.TEXT_NODE)continue;
-
-                                if(property.getAttributes().getNamedItem("name").getNodeValue().trim().equalsIgnoreCase("CPU")){
-                                    cpuCount = property.getAttributes().getNamedItem("value").getNodeValue().trim();
-                                }
-                                else if(property.getAttributes().getNamedItem("name").getNodeValue().trim().equalsIgnoreCase("RAM")){
-                                    ramInMb = property.getAttributes().getNamedItem("value").getNodeValue().trim();
-                                }
-                            }
-                        }
-                    }
-                    vm.setProductId(cpuCount + ":" + ramInMb);
-                    vmMap.put(deviceKey, vm);
+    /**
+     * Removes a listener registered through {@link #subscribe(VMEventListener)}. Polling for this account stops once
+     * no listeners remain.
+     * @param listener the listener to be removed
+     */
+    public void unsubscribe(@Nonnull VMEventListener listener) {
+        VMStatePoller.unsubscribe(provider, listener);
+    }
+
+    /**
+     * Waits for a reservation to reach one of the specified statuses. All waits against reservations in this account
+     * share one reservation enumeration per poll.
+     * @param reservationId the reservation being waited on
+     * @param timeout the maximum time in milliseconds to wait
+     * @param statuses the ASM reservation statuses that end the wait (COMPLETED and CANCELED are also satisfied by the reservation disappearing)
+     * @return a handle for awaiting or cancelling the wait
+     * @throws CloudException no context has been established for this request
+     */
+    public @Nonnull WaitHandle<String> waitForReservation(@Nonnull String reservationId, @Nonnegative long timeout, @Nonnull String ... statuses) throws CloudException {
+        String[] upper = new String[statuses.length];
+        boolean orGone = false;
+
+        for( int i=0; i<statuses.length; i++ ) {
+            upper[i] = statuses[i].toUpperCase(Locale.ENGLISH);
+            if( upper[i].equals("COMPLETED") || upper[i].equals("CANCELED") ) {
+                orGone = true;
+            }
+        }
+        return WaitEngines.getReservationEngine(provider).waitFor(reservationId, WaitEngine.inState(orGone, upper), timeout);
+    }
+
+    /**
+     * Waits for a virtual machine to reach one of the specified states. All waits against virtual machines in this
+     * account share one inventory listing per poll, so this is considerably cheaper than polling {@link #getVirtualMachine(String)}.
+     * @param vmId the virtual machine being waited on
+     * @param timeout the maximum time in milliseconds to wait
+     * @param states the states that end the wait ({@link VmState#TERMINATED} is also satisfied by the virtual machine disappearing)
+     * @return a handle for awaiting or cancelling the wait
+     * @throws CloudException no context has been established for this request
+     */
+    public @Nonnull WaitHandle<VmState> waitForState(@Nonnull String vmId, @Nonnegative long timeout, @Nonnull VmState ... states) throws CloudException {
+        boolean orGone = Arrays.asList(states).contains(VmState.TERMINATED);
+
+        return WaitEngines.getVMEngine(provider).waitFor(vmId, WaitEngine.inState(orGone, states), timeout);
+    }
+
+    /**
+     * Obtains a confirmed reservation for a launch. Launches carrying a client token always go through the idempotent
+     * reservation path; other launches first try to confirm an idle offer claimed from the {@link WarmPool}, falling
+     * back to a fresh reservation if the scheduler has withdrawn it.
+     * @param reservations the helper through which any reservation is made
+     * @param options the options for the launch
+     * @return the ID of the confirmed reservation
+     * @throws CloudException the reservation could not be made or confirmed
+     * @throws InternalException an error occurred within Dasein Cloud making the reservation
+     */
+    private @Nonnull String reserve(@Nonnull Reservations reservations, @Nonnull VMLaunchOptions options) throws CloudException, InternalException {
+        String clientToken = getClientToken(options);
+
+        if( clientToken == null ) {
+            String responseId = WarmPool.claim(provider, options.getMachineImageId());
+
+            if( responseId != null ) {
+                try {
+                    return reservations.confirm(responseId, options.getHostName());
+                }
+                catch( CloudException e ) {
+                    logger.info("Warm offer " + responseId + " for " + options.getMachineImageId() + " has lapsed: " + e.getMessage());
+                    WarmPool.lapsed(provider);
                 }
             }
         }
+        return reservations.reserve(options.getMachineImageId(), options.getHostName(), clientToken);
+    }
 
-        if(vmMap.size() > 0){//Check to see if there are any devices in the list then get the details
-            for(int i=0;i<topology.getLength();i++){
-                Node current = topology.item(i);
-                if(current.getNodeType() == Node.TEXT_NODE)continue;
-                else if(current.getNodeName().equalsIgnoreCase("attribute")){
-                    String attributeName = current.getAttributes().getNamedItem("name").getNodeValue().trim();
-                    String attributeReference = current.getAttributes().getNamedItem("refs").getNodeValue().trim();
-
-                    if(attributeName.equalsIgnoreCase("power")){
-                        for(int j=0;j<current.getChildNodes().getLength();j++){
-                            Node attributeNode = current.getChildNodes().item(j);
-                            if(attributeNode.getNodeType() == Node.TEXT_NODE)continue;
-
-                            if(attributeNode.getNodeName().equalsIgnoreCase("value") && attributeNode.getFirstChild() != null){
-                                String power = attributeNode.getFirstChild().getNodeValue().trim();
-                                if(power.equalsIgnoreCase("on")){
-                                    vmMap.get(attributeReference).setCurrentState(VmState.RUNNING);
-                                }
-                                else if(power.equalsIgnoreCase("off")){
-                                    vmMap.get(attributeReference).setCurrentState(VmState.STOPPED);
-                                }
-                            }
-                        }
-                    }
-                    else if(attributeName.equalsIgnoreCase("IPAddress")){
-                        for(int j=0;j<current.getChildNodes().getLength();j++){
-                            Node attributeNode = current.getChildNodes().item(j);
-                            if(attributeNode.getNodeType() == Node.TEXT_NODE)continue;
+    /**
+     * Reads the topology of a newly confirmed reservation and identifies the virtual machine it launched.
+     * @param reservations the helper through which the topology is read
+     * @param reservationId the confirmed reservation
+     * @return the first virtual machine in the reservation's topology, null if it contains none
+     * @throws CloudException an error occurred with Dell ASM reading the topology
+     * @throws InternalException an error occurred within Dasein Cloud parsing the topology
+     */
+    private @Nullable VirtualMachine resolveLaunch(@Nonnull Reservations reservations, @Nonnull String reservationId) throws CloudException, InternalException {
+        ParsedTopology topology = reservations.readTopology(reservationId);
+        long mapping = System.nanoTime();
+        Collection<VirtualMachine> machines = toVirtualMachine(reservationId, topology);
+
+        PhaseTimings.recordSince(PhaseTimings.Phase.MAP, mapping);
+        VMInventory inventory = VMInventory.getInstance(provider);
+        VirtualMachine launched = null;
+
+        for( VirtualMachine vm : machines ) {
+            if( vm != null ) {
+                if( launched == null ) {
+                    vm.setCreationTimestamp(new Date().getTime());
+                    launched = vm;//We can safely return the first VM in the collection
+                }
+                inventory.put(vm);
+            }
+        }
+        SnapshotCache.getInstance(provider).invalidate(SnapshotCache.VIRTUAL_MACHINES);
+        return launched;
+    }
 
-                            if(attributeNode.getNodeName().equalsIgnoreCase("value") && attributeNode.getFirstChild() != null){
+    /**
+     * Records a power state change made through this API so the inventory and snapshot do not keep serving the old
+     * state until the next listing.
+     */
+    private void stateChanged(@Nonnull String vmId, @Nonnull VmState state) throws NoContextException {
+        VMInventory inventory = VMInventory.getInstance(provider);
+        VirtualMachine vm = inventory.get(vmId);
+
+        if( vm != null ) {
+            vm.setCurrentState(state);
+            inventory.put(vm);
+        }
+        SnapshotCache.getInstance(provider).invalidate(SnapshotCache.VIRTUAL_MACHINES);
+    }
 
-                                String ip = attributeNode.getFirstChild().getNodeValue().trim();
-                                RawAddress ipAddress = new RawAddress(ip, IPVersion.IPV4);
-                                vmMap.get(attributeReference).setPrivateAddresses(ipAddress);
-                            }
-                        }
-                    }
-                    else if(attributeName.equalsIgnoreCase("GuestType")){
-                        for(int j=0;j<current.getChildNodes().getLength();j++){
-                            Node attributeNode = current.getChildNodes().item(j);
-                            if(attributeNode.getNodeType() == Node.TEXT_NODE)continue;
+    /**
+     * Drops the virtual machines of cancelled reservations from the inventory and snapshot.
+     */
+    private void reservationsCancelled(@Nonnull Collection<String> reservationIds) throws NoContextException {
+        VMInventory inventory = VMInventory.getInstance(provider);
 
-                            if(attributeNode.getNodeName().equalsIgnoreCase("value") && attributeNode.getFirstChild() != null){
-                                vmMap.get(attributeReference).setPlatform(Platform.guess(attributeNode.getFirstChild().getNodeValue().trim()));
-                            }
-                        }
-                    }
-                }
+        for( String reservationId : reservationIds ) {
+            inventory.update(reservationId, Collections.<VirtualMachine>emptyList());
+        }
+        SnapshotCache.getInstance(provider).invalidate(SnapshotCache.VIRTUAL_MACHINES);
+    }
+
+    Collection<VirtualMachine> toVirtualMachine(String reservationId, ParsedTopology topology) throws InternalException, CloudException{
+        ArrayList<VirtualMachine> vms = new ArrayList<VirtualMachine>();
+        StringInterner strings = provider.getStringInterner();
+        String regionId = strings.intern(provider.getContext().getRegionId());
+
+        for( int i=0; i<topology.getDeviceCount(); i++ ) {
+            if( !"virtualmachine".equals(topology.getDeviceModel(i)) ) {
+                continue;
+            }
+            String cpuCount = topology.getCpuValue(i);
+            String ramInMb = topology.getRamValue(i);
+            VirtualMachine vm = new VirtualMachine();
+            String deviceKey = topology.getDeviceKey(i);
+
+            vm.setName(topology.getDeviceName(i));
+            vm.setDescription(topology.getDeviceDescription(i));
+            vm.setProviderVirtualMachineId(reservationId + ":" + deviceKey);
+            vm.setProviderDataCenterId(regionId);
+            vm.setProviderRegionId(regionId);
+            vm.setTag("devicekey", deviceKey);
+            // the raw enforced values, so values that are not plain integers (such as "2048MB") survive as they did before
+            vm.setProductId(strings.intern((cpuCount == null ? "" : cpuCount) + ":" + (ramInMb == null ? "" : ramInMb)));
+
+            String power = topology.getValue(i, "power");
+
+            if( "on".equalsIgnoreCase(power) ) {
+                vm.setCurrentState(VmState.RUNNING);
+            }
+            else if( "off".equalsIgnoreCase(power) ) {
+                vm.setCurrentState(VmState.STOPPED);
+            }
+            String ip = topology.getValue(i, "IPAddress");
+
+            if( ip != null ) {
+                vm.setPrivateAddresses(new RawAddress(ip, IPVersion.IPV4));
+            }
+            String guestType = topology.getValue(i, "GuestType");
+
+            if( guestType != null ) {
+                vm.setPlatform(PlatformResolver.platform(guestType));
             }
+            vms.add(vm);
         }
-        return vmMap.values();
+        return vms;
     }
 }
@@ -0,0 +1,192 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm.compute;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.compute.MachineImage;
+import org.dasein.cloud.compute.MachineImageState;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.compute.VmState;
+import org.dasein.cloud.dell.asm.DellASM;
+import org.dasein.cloud.dell.asm.NoContextException;
+import org.dasein.cloud.dell.asm.WaitEngine;
+
+import javax.annotation.Nonnull;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Provides the shared {@link WaitEngine}s for machine images, virtual machines, and reservations. There is one engine of
+ * each type per context (endpoint, account, and region), so all threads waiting on resources in the same account share
+ * a single enumeration call per tick.
+ * <p>
+ *     An engine polls through the provider of the most recent caller to ask for it rather than holding on to the
+ *     first, and it leaves the registry once its last wait completes so neither the engine nor a provider outlives the
+ *     waits that needed them.
+ * </p>
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+class WaitEngines {
+    static private final HashMap<String,ContextEngine<MachineImageState>> imageEngines       = new HashMap<String, ContextEngine<MachineImageState>>();
+    static private final HashMap<String,ContextEngine<String>>            reservationEngines = new HashMap<String, ContextEngine<String>>();
+    static private final HashMap<String,ContextEngine<VmState>>           vmEngines          = new HashMap<String, ContextEngine<VmState>>();
+
+    /**
+     * A wait engine shared by every caller in one context.
+     * @param <S> the type representing the state of the resources being waited on
+     */
+    static private abstract class ContextEngine<S> extends WaitEngine<S> {
+        private final HashMap<String,ContextEngine<S>> engines;
+        private final String                           key;
+        private volatile DellASM                       provider;
+
+        ContextEngine(@Nonnull HashMap<String,ContextEngine<S>> engines, @Nonnull String key, @Nonnull DellASM provider) {
+            this.engines = engines;
+            this.key = key;
+            this.provider = provider;
+        }
+
+        @Override
+        protected void idle() {
+            synchronized( engines ) {
+                if( engines.get(key) == this ) {
+                    engines.remove(key);
+                }
+            }
+        }
+
+        @Override
+        protected final @Nonnull Map<String,S> poll() throws CloudException, InternalException {
+            return poll(provider);
+        }
+
+        protected abstract @Nonnull Map<String,S> poll(@Nonnull DellASM provider) throws CloudException, InternalException;
+    }
+
+    static private @Nonnull String getKey(@Nonnull DellASM provider) throws NoContextException {
+        ProviderContext ctx = provider.getContext();
+
+        if( ctx == null ) {
+            throw new NoContextException();
+        }
+        return DellASM.getContextKey(ctx);
+    }
+
+    static @Nonnull WaitEngine<MachineImageState> getImageEngine(@Nonnull DellASM provider) throws NoContextException {
+        String key = getKey(provider);
+
+        synchronized( imageEngines ) {
+            ContextEngine<MachineImageState> engine = imageEngines.get(key);
+
+            if( engine == null ) {
+                engine = new ContextEngine<MachineImageState>(imageEngines, key, provider) {
+                    @Override
+                    protected @Nonnull String getResourceType() {
+                        return "image";
+                    }
+
+                    @Override
+                    protected @Nonnull Map<String,MachineImageState> poll(@Nonnull DellASM provider) throws CloudException, InternalException {
+                        HashMap<String,MachineImageState> states = new HashMap<String, MachineImageState>();
+
+                        for( MachineImage img : new Template(provider).searchMachineImages(false, null, null) ) {
+                            states.put(img.getProviderMachineImageId(), img.getCurrentState());
+                        }
+                        return states;
+                    }
+                };
+                imageEngines.put(key, engine);
+            }
+            else {
+                engine.provider = provider;
+            }
+            return engine;
+        }
+    }
+
+    static @Nonnull WaitEngine<String> getReservationEngine(@Nonnull DellASM provider) throws NoContextException {
+        String key = getKey(provider);
+
+        synchronized( reservationEngines ) {
+            ContextEngine<String> engine = reservationEngines.get(key);
+
+            if( engine == null ) {
+                engine = new ContextEngine<String>(reservationEngines, key, provider) {
+                    @Override
+                    protected @Nonnull String getResourceType() {
+                        return "reservation";
+                    }
+
+                    @Override
+                    protected @Nonnull Map<String,String> poll(@Nonnull DellASM provider) throws CloudException, InternalException {
+                        HashMap<String,String> states = new HashMap<String, String>();
+
+                        for( Reservations.Summary s : new Reservations(provider).enumerate() ) {
+                            states.put(s.reservationId, s.status == null ? "" : s.status.toUpperCase(Locale.ENGLISH));
+                        }
+                        return states;
+                    }
+                };
+                reservationEngines.put(key, engine);
+            }
+            else {
+                engine.provider = provider;
+            }
+            return engine;
+        }
+    }
+
+    static @Nonnull WaitEngine<VmState> getVMEngine(@Nonnull DellASM provider) throws NoContextException {
+        String key = getKey(provider);
+
+        synchronized( vmEngines ) {
+            ContextEngine<VmState> engine = vmEngines.get(key);
+
+            if( engine == null ) {
+                engine = new ContextEngine<VmState>(vmEngines, key, provider) {
+                    @Override
+                    protected @Nonnull String getResourceType() {
+                        return "vm";
+                    }
+
+                    @Override
+                    protected @Nonnull Map<String,VmState> poll(@Nonnull DellASM provider) throws CloudException, InternalException {
+                        HashMap<String,VmState> states = new HashMap<String, VmState>();
+
+                        for( VirtualMachine vm : new VirtualVM(provider).loadVirtualMachines(null) ) {
+                            states.put(vm.getProviderVirtualMachineId(), vm.getCurrentState() == null ? VmState.PENDING : vm.getCurrentState());
+                        }
+                        return states;
+                    }
+                };
+                vmEngines.put(key, engine);
+            }
+            else {
+                engine.provider = provider;
+            }
+            return engine;
+        }
+    }
+}
@@ -0,0 +1,449 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm.compute;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.dell.asm.ASMThreadFactory;
+import org.dasein.cloud.dell.asm.DellASM;
+import org.dasein.cloud.dell.asm.NoContextException;
+import org.dasein.util.CalendarWrapper;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps scheduler offers on hand for popular archives so launches can skip the makeReservation search through the
+ * ASM scheduler. A launch claims the oldest idle offer for its archive and confirms it under its own name, and the pool
+ * refills itself in the background. Idle offers older than the maximum idle time are dropped.
+ * <p>
+ *     There is one pool per context (endpoint, account, and region); it makes its calls through the provider that
+ *     most recently asked for it. A pool that has been shut down leaves the registry, so the next request for the
+ *     context's pool starts a new one. The pool holds offers rather than confirmed reservations: Dell ASM offers no
+ *     way to rename a reservation, and an unconfirmed offer neither shows up among the account's virtual machines
+ *     nor outlives the scheduler's interest in it, so nothing is left holding lab capacity if the JVM goes away. The
+ *     scheduler may withdraw an offer before it is claimed; a launch whose offer has lapsed falls back to a fresh
+ *     reservation and is counted in {@link #getLapsed()}.
+ * </p>
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class WarmPool {
+    static private final Logger logger = DellASM.getLogger(WarmPool.class);
+
+    static public final long   DEFAULT_MAXIMUM_IDLE = 30L * CalendarWrapper.MINUTE;
+    static public final long   MAINTENANCE_INTERVAL = CalendarWrapper.MINUTE;
+    /**
+     * Prefix of the name under which the pool asks the scheduler for offers. A claimed offer is confirmed under the
+     * name of the launch that claimed it, so no reservation carries this prefix.
+     */
+    static public final String RESERVATION_PREFIX   = "dasein-warm-";
+
+    static private final HashMap<String,WarmPool> pools = new HashMap<String, WarmPool>();
+
+    /**
+     * Provides the warm pool for the provider's current context, creating an empty pool if none exists.
+     * @param provider the provider whose context identifies the account being pooled
+     * @return the warm pool for the context
+     * @throws NoContextException no context has been set for the provider
+     */
+    static public @Nonnull WarmPool getInstance(@Nonnull DellASM provider) throws NoContextException {
+        ProviderContext ctx = provider.getContext();
+
+        if( ctx == null ) {
+            throw new NoContextException();
+        }
+        String key = DellASM.getContextKey(ctx);
+
+        synchronized( pools ) {
+            WarmPool pool = pools.get(key);
+
+            if( pool == null ) {
+                pool = new WarmPool(key, provider);
+                pools.put(key, pool);
+            }
+            else {
+                pool.provider = provider;
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * Claims an idle offer for the specified archive from the pool for the provider's context, if one exists.
+     * @param provider the provider whose context identifies the account being pooled
+     * @param imageId the archive being launched
+     * @return the ID of the claimed offer, null if the archive is not pooled or no idle offer is on hand
+     */
+    static @Nullable String claim(@Nonnull DellASM provider, @Nonnull String imageId) {
+        ProviderContext ctx = provider.getContext();
+        WarmPool pool;
+
+        if( ctx == null ) {
+            return null;
+        }
+        synchronized( pools ) {
+            pool = pools.get(DellASM.getContextKey(ctx));
+            if( pool != null ) {
+                pool.provider = provider;
+            }
+        }
+        return (pool == null ? null : pool.claim(imageId));
+    }
+
+    /**
+     * Records that an offer claimed from the pool for the provider's context could not be confirmed.
+     * @param provider the provider whose context identifies the account being pooled
+     */
+    static void lapsed(@Nonnull DellASM provider) {
+        ProviderContext ctx = provider.getContext();
+        WarmPool pool;
+
+        if( ctx == null ) {
+            return;
+        }
+        synchronized( pools ) {
+            pool = pools.get(DellASM.getContextKey(ctx));
+        }
+        if( pool != null ) {
+            synchronized( pool ) {
+                pool.lapsed++;
+            }
+        }
+    }
+
+    static private class Entry {
+        long   createdAt;
+        String responseId;
+    }
+
+    private final HashMap<String,Integer>           filling = new HashMap<String, Integer>();
+    private final HashMap<String,LinkedList<Entry>> idle    = new HashMap<String, LinkedList<Entry>>();
+    private final HashMap<String,Integer>           targets = new HashMap<String, Integer>();
+
+    private long                     expired;
+    private long                     hits;
+    private final String             key;
+    private long                     lapsed;
+    private long                     maximumIdle = DEFAULT_MAXIMUM_IDLE;
+    private long                     misses;
+    private volatile DellASM         provider;
+    private long                     refills;
+    private boolean                  shutdown;
+    private ScheduledExecutorService timer;
+
+    private WarmPool(@Nonnull String key, @Nonnull DellASM provider) {
+        this.key = key;
+        this.provider = provider;
+    }
+
+    private @Nullable String claim(@Nonnull String imageId) {
+        long now = System.currentTimeMillis();
+        String responseId = null;
+
+        synchronized( this ) {
+            if( !targets.containsKey(imageId) ) {
+                return null;
+            }
+            LinkedList<Entry> entries = idle.get(imageId);
+
+            if( entries != null ) {
+                Iterator<Entry> it = entries.iterator();
+
+                // expired entries are left for maintenance to drop
+                while( it.hasNext() ) {
+                    Entry e = it.next();
+
+                    if( now - e.createdAt < maximumIdle ) {
+                        it.remove();
+                        responseId = e.responseId;
+                        break;
+                    }
+                }
+            }
+            if( responseId == null ) {
+                misses++;
+            }
+            else {
+                hits++;
+            }
+        }
+        refillSoon();
+        if( logger.isDebugEnabled() ) {
+            logger.debug("Warm pool " + (responseId == null ? "miss" : "hit") + " for " + imageId);
+        }
+        return responseId;
+    }
+
+    /**
+     * @return the number of launches that found an idle offer waiting for them
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the fraction of launches of pooled archives served from the pool, zero if there have been no such launches
+     */
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+
+        return (total == 0L ? 0.0 : ((double)hits)/total);
+    }
+
+    /**
+     * @return the number of idle offers dropped because they exceeded the maximum idle time
+     */
+    public synchronized long getExpired() {
+        return expired;
+    }
+
+    /**
+     * @param imageId the archive being pooled
+     * @return the number of idle offers currently on hand for the archive
+     */
+    public synchronized int getIdleCount(@Nonnull String imageId) {
+        LinkedList<Entry> entries = idle.get(imageId);
+
+        return (entries == null ? 0 : entries.size());
+    }
+
+    /**
+     * @return the number of claimed offers the scheduler had withdrawn by the time the launch tried to confirm them
+     */
+    public synchronized long getLapsed() {
+        return lapsed;
+    }
+
+    /**
+     * @return the maximum time in milliseconds an offer may sit idle before it is dropped
+     */
+    public synchronized long getMaximumIdle() {
+        return maximumIdle;
+    }
+
+    /**
+     * @return the number of launches of pooled archives that found no idle offer waiting for them
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @param imageId the archive being pooled
+     * @return the number of idle offers the pool tries to keep on hand for the archive
+     */
+    public synchronized int getPoolSize(@Nonnull String imageId) {
+        Integer target = targets.get(imageId);
+
+        return (target == null ? 0 : target);
+    }
+
+    /**
+     * @return the number of offers the pool has obtained to refill itself
+     */
+    public synchronized long getRefills() {
+        return refills;
+    }
+
+    /**
+     * Sets the maximum time an offer may sit idle in the pool before it is dropped. Keep it within the time the ASM
+     * scheduler honours an offer, or claimed offers will lapse.
+     * @param maximumIdle the maximum idle time in milliseconds
+     */
+    public synchronized void setMaximumIdle(@Nonnegative long maximumIdle) {
+        this.maximumIdle = maximumIdle;
+    }
+
+    /**
+     * Sets the number of idle offers to keep on hand for an archive. Setting the size to zero stops pooling the
+     * archive and drops its idle offers.
+     * @param imageId the archive being pooled
+     * @param size the number of idle offers to keep on hand
+     * @throws IllegalStateException the pool has been shut down; ask {@link #getInstance(DellASM)} for a new one
+     */
+    public void setPoolSize(@Nonnull String imageId, @Nonnegative int size) {
+        synchronized( this ) {
+            if( shutdown && size > 0 ) {
+                throw new IllegalStateException("The warm pool for " + key + " has been shut down");
+            }
+            if( size > 0 ) {
+                targets.put(imageId, size);
+                if( timer == null ) {
+                    timer = Executors.newSingleThreadScheduledExecutor(new ASMThreadFactory("warmpool"));
+                    timer.scheduleWithFixedDelay(new Runnable() {
+                        @Override
+                        public void run() {
+                            maintain();
+                        }
+                    }, 0L, MAINTENANCE_INTERVAL, TimeUnit.MILLISECONDS);
+                }
+            }
+            else {
+                targets.remove(imageId);
+            }
+        }
+        refillSoon();
+    }
+
+    /**
+     * Stops pooling every archive, drops all idle offers, and removes the pool from the registry so that
+     * {@link #getInstance(DellASM)} starts a new pool for the context. The pool lets go of its provider once any
+     * refills in flight have finished.
+     */
+    public void shutdown() {
+        synchronized( pools ) {
+            if( pools.get(key) == this ) {
+                pools.remove(key);
+            }
+        }
+        synchronized( this ) {
+            shutdown = true;
+            targets.clear();
+            idle.clear();
+            if( timer == null ) {
+                if( filling.isEmpty() ) {
+                    provider = null;
+                }
+                return;
+            }
+        }
+        refillSoon();
+    }
+
+    private void maintain() {
+        HashMap<String,Integer> deficits = new HashMap<String, Integer>();
+        long now = System.currentTimeMillis();
+
+        synchronized( this ) {
+            Iterator<Map.Entry<String,LinkedList<Entry>>> it = idle.entrySet().iterator();
+
+            while( it.hasNext() ) {
+                Map.Entry<String,LinkedList<Entry>> pooled = it.next();
+                boolean wanted = targets.containsKey(pooled.getKey());
+                Iterator<Entry> entries = pooled.getValue().iterator();
+
+                while( entries.hasNext() ) {
+                    Entry e = entries.next();
+
+                    if( !wanted || now - e.createdAt >= maximumIdle ) {
+                        if( wanted ) {
+                            expired++;
+                        }
+                        entries.remove();
+                    }
+                }
+                if( pooled.getValue().isEmpty() ) {
+                    it.remove();
+                }
+            }
+            for( Map.Entry<String,Integer> target : targets.entrySet() ) {
+                Integer inFlight = filling.get(target.getKey());
+                int deficit = target.getValue() - getIdleCount(target.getKey()) - (inFlight == null ? 0 : inFlight);
+
+                if( deficit > 0 ) {
+                    deficits.put(target.getKey(), deficit);
+                    filling.put(target.getKey(), (inFlight == null ? 0 : inFlight) + deficit);
+                }
+            }
+        }
+        for( Map.Entry<String,Integer> deficit : deficits.entrySet() ) {
+            for( int i=0; i<deficit.getValue(); i++ ) {
+                refill(deficit.getKey());
+            }
+        }
+        synchronized( this ) {
+            if( targets.isEmpty() && idle.isEmpty() && timer != null ) {
+                timer.shutdown();
+                timer = null;
+                if( shutdown && filling.isEmpty() ) {
+                    provider = null;
+                }
+            }
+        }
+    }
+
+    private void refill(@Nonnull String imageId) {
+        Entry e = null;
+
+        DellASM provider = this.provider;
+
+        if( provider != null ) {
+            try {
+                e = new Entry();
+                e.responseId = new Reservations(provider).offer(imageId, RESERVATION_PREFIX + imageId);
+                e.createdAt = System.currentTimeMillis();
+            }
+            catch( Throwable t ) {
+                logger.warn("Unable to refill warm pool for " + imageId + ": " + t.getMessage());
+                e = null;
+            }
+        }
+        synchronized( this ) {
+            Integer inFlight = filling.get(imageId);
+
+            if( inFlight != null ) {
+                if( inFlight <= 1 ) {
+                    filling.remove(imageId);
+                }
+                else {
+                    filling.put(imageId, inFlight - 1);
+                }
+            }
+            if( e != null ) {
+                refills++;
+                if( targets.containsKey(imageId) ) {
+                    LinkedList<Entry> entries = idle.get(imageId);
+
+                    if( entries == null ) {
+                        entries = new LinkedList<Entry>();
+                        idle.put(imageId, entries);
+                    }
+                    entries.addLast(e);
+                }
+            }
+            if( shutdown && filling.isEmpty() && timer == null ) {
+                this.provider = null;
+            }
+        }
+    }
+
+    private void refillSoon() {
+        synchronized( this ) {
+            if( timer != null ) {
+                timer.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        maintain();
+                    }
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Verifies that {@link ASMTimestamps} reads and writes the timestamps Dell ASM exchanges, checking the hand-written
+ * parser against {@link SimpleDateFormat}.
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class ASMTimestampsTest {
+    static private final long JULY_1_2013_NOON = 1372680000000L;
+
+    @Test
+    public void formatsInUtc() {
+        assertEquals("2013-07-01T12:00:00UTC", ASMTimestamps.format(JULY_1_2013_NOON));
+        assertEquals("1970-01-01T00:00:00UTC", ASMTimestamps.format(0L));
+        assertEquals("1969-12-31T23:59:59UTC", ASMTimestamps.format(-1000L));
+        assertEquals("2000-02-29T00:00:00UTC", ASMTimestamps.format(951782400000L));
+    }
+
+    @Test
+    public void parsesZones() throws ParseException {
+        assertEquals(JULY_1_2013_NOON, ASMTimestamps.parse("2013-07-01T12:00:00UTC"));
+        assertEquals(JULY_1_2013_NOON, ASMTimestamps.parse("2013-07-01T12:00:00GMT"));
+        assertEquals(JULY_1_2013_NOON, ASMTimestamps.parse("2013-07-01T12:00:00Z"));
+        assertEquals(JULY_1_2013_NOON, ASMTimestamps.parse("  2013-07-01T12:00:00UTC\n"));
+        assertEquals(JULY_1_2013_NOON, ASMTimestamps.parse("2013-07-01T07:00:00-0500"));
+        assertEquals(JULY_1_2013_NOON, ASMTimestamps.parse("2013-07-01T14:00:00+02:00"));
+        assertEquals(JULY_1_2013_NOON, ASMTimestamps.parse("2013-07-01T17:30:00GMT+05:30"));
+        assertEquals(JULY_1_2013_NOON + 250L, ASMTimestamps.parse("2013-07-01T12:00:00.25Z"));
+    }
+
+    @Test
+    public void zoneAbbreviationsFallBackToSimpleDateFormat() throws ParseException {
+        SimpleDateFormat fmt = new SimpleDateFormat(ASMTimestamps.PATTERN);
+
+        assertEquals(fmt.parse("2013-07-01T07:00:00CDT").getTime(), ASMTimestamps.parse("2013-07-01T07:00:00CDT"));
+        assertEquals(fmt.parse("2013-01-15T08:30:00PST").getTime(), ASMTimestamps.parse("2013-01-15T08:30:00PST"));
+    }
+
+    @Test(expected=ParseException.class)
+    public void rejectsGarbage() throws ParseException {
+        ASMTimestamps.parse("yesterday");
+    }
+
+    @Test(expected=ParseException.class)
+    public void rejectsOutOfRangeFields() throws ParseException {
+        ASMTimestamps.parse("2013-13-01T12:00:00Q");
+    }
+
+    @Test
+    public void ignoresDefaultZone() throws ParseException {
+        TimeZone original = TimeZone.getDefault();
+
+        TimeZone.setDefault(TimeZone.getTimeZone("America/Chicago"));
+        try {
+            assertEquals("2013-07-01T12:00:00UTC", ASMTimestamps.format(JULY_1_2013_NOON));
+            assertEquals("2013-01-15T12:00:00UTC", ASMTimestamps.format(1358251200000L));
+            assertEquals(JULY_1_2013_NOON, ASMTimestamps.parse("2013-07-01T12:00:00UTC"));
+            assertEquals(JULY_1_2013_NOON, ASMTimestamps.parse("2013-07-01T07:00:00-0500"));
+            assertEquals(JULY_1_2013_NOON, ASMTimestamps.parse("2013-07-01T07:00:00CDT"));
+            roundTrip(2000);
+        }
+        finally {
+            TimeZone.setDefault(original);
+        }
+    }
+
+    @Test
+    public void roundTripsAgainstSimpleDateFormat() throws ParseException {
+        roundTrip(2000);
+    }
+
+    private void roundTrip(int iterations) throws ParseException {
+        SimpleDateFormat fmt = new SimpleDateFormat(ASMTimestamps.PATTERN);
+        Random random = new Random(2013L);
+        long from = -2208988800000L; // 1900-01-01
+        long to = 4102444800000L;    // 2100-01-01
+
+        fmt.setTimeZone(TimeZone.getTimeZone("UTC"));
+        for( int i=0; i<iterations; i++ ) {
+            // whole seconds, since the pattern carries no fraction
+            long instant = ((from + (long)(random.nextDouble() * (to - from))) / 1000L) * 1000L;
+            String ours = ASMTimestamps.format(instant);
+
+            assertEquals(fmt.format(new java.util.Date(instant)), ours);
+            assertEquals(ours, instant, ASMTimestamps.parse(ours));
+            assertEquals(ours, fmt.parse(ours).getTime(), ASMTimestamps.parse(ours));
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies the bucketing and percentile estimates of the {@link LatencyHistogram}.
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class LatencyHistogramTest {
+    @Test
+    public void emptyHistogram() {
+        LatencyHistogram.Snapshot s = new LatencyHistogram().snapshot();
+
+        assertEquals(0L, s.getCount());
+        assertEquals(0L, s.getMean());
+        assertEquals(0L, s.getMax());
+        assertEquals(0L, s.getPercentile(99.0));
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        LatencyHistogram h = new LatencyHistogram();
+
+        for( long v=0L; v<LatencyHistogram.SUB_BUCKETS; v++ ) {
+            h.record(v);
+        }
+        LatencyHistogram.Snapshot s = h.snapshot();
+
+        assertEquals(LatencyHistogram.SUB_BUCKETS, s.getCount());
+        assertEquals(0L, s.getPercentile(0.0));
+        assertEquals(15L, s.getPercentile(50.0));
+        assertEquals(LatencyHistogram.SUB_BUCKETS - 1, s.getPercentile(100.0));
+    }
+
+    @Test
+    public void percentilesWithinThreePercent() {
+        LatencyHistogram h = new LatencyHistogram();
+        int n = 100000;
+
+        // 1 microsecond to 100 milliseconds in even steps
+        for( int i=1; i<=n; i++ ) {
+            h.record(i * 1000L);
+        }
+        LatencyHistogram.Snapshot s = h.snapshot();
+        double[] percentiles = { 1.0, 10.0, 50.0, 90.0, 99.0, 99.9 };
+
+        for( double p : percentiles ) {
+            double expected = Math.ceil(p / 100.0 * n) * 1000.0;
+            double actual = s.getPercentile(p);
+
+            assertTrue("p" + p + " was " + actual + ", expected about " + expected, Math.abs(actual - expected) / expected <= 0.03);
+        }
+        assertEquals(n * 1000L, s.getMax());
+        assertTrue(s.getPercentile(100.0) <= n * 1000L);
+        assertTrue(s.getPercentile(100.0) >= n * 970L);
+        assertEquals((n + 1) * 500L, s.getMean());
+    }
+
+    @Test
+    public void percentileNeverExceedsMax() {
+        LatencyHistogram h = new LatencyHistogram();
+        Random random = new Random(42L);
+        long max = 0L;
+
+        for( int i=0; i<10000; i++ ) {
+            long v = (long)(random.nextDouble() * 50000000L);
+
+            max = Math.max(max, v);
+            h.record(v);
+        }
+        LatencyHistogram.Snapshot s = h.snapshot();
+
+        assertEquals(max, s.getMax());
+        assertTrue(s.getPercentile(99.99) <= max);
+        assertTrue(s.getPercentile(50.0) <= s.getPercentile(90.0));
+        assertTrue(s.getPercentile(90.0) <= s.getPercentile(99.0));
+    }
+
+    @Test
+    public void extremeValues() {
+        LatencyHistogram h = new LatencyHistogram();
+
+        h.record(-5L);
+        h.record(Long.MAX_VALUE);
+        LatencyHistogram.Snapshot s = h.snapshot();
+
+        assertEquals(2L, s.getCount());
+        assertEquals(0L, s.getPercentile(50.0));
+        assertEquals(Long.MAX_VALUE, s.getMax());
+        assertTrue(s.getPercentile(100.0) >= (long)(Long.MAX_VALUE * 0.97));
+    }
+
+    @Test
+    public void resetClearsEverything() {
+        LatencyHistogram h = new LatencyHistogram();
+
+        h.record(12345L);
+        h.reset();
+        LatencyHistogram.Snapshot s = h.snapshot();
+
+        assertEquals(0L, s.getCount());
+        assertEquals(0L, s.getMax());
+        assertEquals(0L, s.getMean());
+    }
+}
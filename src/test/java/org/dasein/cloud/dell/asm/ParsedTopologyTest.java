@@ -0,0 +1,242 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm;
+
+import org.dasein.cloud.InternalException;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Locale;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies that a {@link ParsedTopology} reads the same devices, enforced properties, and attribute values from a
+ * topology document as the DOM traversals the mappers used before it.
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class ParsedTopologyTest {
+    static private final String TOPOLOGY =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<topology>\n" +
+            "  <device model=\"VirtualMachine\" key=\" device-1 \" name=\"web-1\" description=\" Web server \">\n" +
+            "    <enforcedproperties>\n" +
+            "      <property name=\"CPU\" value=\"2\"/>\n" +
+            "      <property name=\"RAM\" value=\" 4096 \"/>\n" +
+            "      <property name=\"ServerCount\" value=\"1\"/>\n" +
+            "    </enforcedproperties>\n" +
+            "    <interface name=\"eth0\"/>\n" +
+            "  </device>\n" +
+            "  <device model=\"VirtualMachine\" key=\"device-2\" name=\"db-1\" description=\"Database\">\n" +
+            "    <enforcedproperties>\n" +
+            "      <property name=\"cpu\" value=\"many\"/>\n" +
+            "    </enforcedproperties>\n" +
+            "  </device>\n" +
+            "  <device model=\"VLAN\" key=\"vlan-1\" name=\"backend\" description=\"Backend network\"/>\n" +
+            "  <attribute name=\"power\" refs=\"device-1\"><value>on</value></attribute>\n" +
+            "  <attribute name=\"IPAddress\" refs=\"device-1\"><value> 10.0.0.1 </value><value>10.0.0.2</value></attribute>\n" +
+            "  <attribute name=\"GuestType\" refs=\"device-1\"><value>Ubuntu 12.04 x64</value></attribute>\n" +
+            "  <attribute name=\"power\" refs=\"device-2\"><value>off</value></attribute>\n" +
+            "  <attribute name=\"GuestType\" refs=\"device-2\"><value></value></attribute>\n" +
+            "  <attribute name=\"AL_OSImages\" refs=\"device-2\"><value><osimages>" +
+            "<element name=\"CentOS 6.4\" path=\"/images/centos.vmdk\"/><element name=\"Windows 2008\"/>" +
+            "</osimages></value></attribute>\n" +
+            "  <attribute name=\"vlanid\" refs=\"vlan-1\"><value>42</value></attribute>\n" +
+            "  <attribute name=\"orphan\" refs=\"device-9\"><value>lost</value></attribute>\n" +
+            "</topology>\n";
+
+    private Document       dom;
+    private ParsedTopology topology;
+
+    @Before
+    public void setUp() throws Exception {
+        dom = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(TOPOLOGY.getBytes("utf-8")));
+        topology = ParsedTopology.parse(TOPOLOGY);
+    }
+
+    static private @Nonnull ArrayList<Element> children(@Nonnull Node parent, @Nonnull String name) {
+        ArrayList<Element> matches = new ArrayList<Element>();
+        NodeList list = parent.getChildNodes();
+
+        for( int i=0; i<list.getLength(); i++ ) {
+            Node n = list.item(i);
+
+            if( n.getNodeType() == Node.ELEMENT_NODE && n.getNodeName().equalsIgnoreCase(name) ) {
+                matches.add((Element)n);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Reads an enforced property the way the DOM mappers did.
+     */
+    static private @Nullable String enforced(@Nonnull Element device, @Nonnull String name) {
+        String value = null;
+
+        for( Element props : children(device, "enforcedproperties") ) {
+            for( Element p : children(props, "property") ) {
+                if( p.getAttribute("name").trim().equalsIgnoreCase(name) ) {
+                    value = p.getAttribute("value").trim();
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Reads the values of an attribute the way the DOM mappers did, including <code>osimages</code> element entries.
+     */
+    static private @Nonnull String[] values(@Nonnull Element attribute) {
+        ArrayList<String> values = new ArrayList<String>();
+
+        for( Element v : children(attribute, "value") ) {
+            ArrayList<Element> entries = new ArrayList<Element>();
+
+            for( Element images : children(v, "osimages") ) {
+                entries.addAll(children(images, "element"));
+            }
+            if( entries.isEmpty() ) {
+                String text = v.getTextContent().trim();
+
+                if( text.length() > 0 ) {
+                    values.add(text);
+                }
+            }
+            else {
+                for( Element e : entries ) {
+                    String entry = e.getAttribute("name").trim();
+
+                    if( e.hasAttribute("path") ) {
+                        entry = entry + " " + e.getAttribute("path").trim();
+                    }
+                    values.add(entry);
+                }
+            }
+        }
+        return values.toArray(new String[values.size()]);
+    }
+
+    static private int toInt(@Nullable String value) {
+        if( value == null ) {
+            return ParsedTopology.UNSET;
+        }
+        try {
+            return Integer.parseInt(value);
+        }
+        catch( NumberFormatException e ) {
+            return ParsedTopology.INVALID;
+        }
+    }
+
+    @Test
+    public void devicesMatchDom() {
+        ArrayList<Element> devices = children(dom.getDocumentElement(), "device");
+
+        assertEquals(devices.size(), topology.getDeviceCount());
+        for( int i=0; i<devices.size(); i++ ) {
+            Element d = devices.get(i);
+
+            assertEquals(d.getAttribute("key").trim(), topology.getDeviceKey(i));
+            assertEquals(d.getAttribute("name").trim(), topology.getDeviceName(i));
+            assertEquals(d.getAttribute("description").trim(), topology.getDeviceDescription(i));
+            assertEquals(d.getAttribute("model").trim().toLowerCase(Locale.ENGLISH), topology.getDeviceModel(i));
+            assertEquals(toInt(enforced(d, "CPU")), topology.getCpuCount(i));
+            assertEquals(enforced(d, "CPU"), topology.getCpuValue(i));
+            assertEquals(toInt(enforced(d, "RAM")), topology.getRamInMb(i));
+            assertEquals(enforced(d, "RAM"), topology.getRamValue(i));
+            assertEquals(toInt(enforced(d, "ServerCount")), topology.getServerCount(i));
+        }
+    }
+
+    @Test
+    public void attributesMatchDom() {
+        ArrayList<Element> attributes = children(dom.getDocumentElement(), "attribute");
+
+        assertEquals(attributes.size(), topology.getAttributeCount());
+        for( int i=0; i<attributes.size(); i++ ) {
+            Element a = attributes.get(i);
+            String refs = a.getAttribute("refs").trim();
+
+            assertEquals(a.getAttribute("name").trim(), topology.getAttributeName(i));
+            assertEquals(refs, topology.getAttributeRefs(i));
+            assertEquals(topology.indexOf(refs), topology.getAttributeDevice(i));
+            assertArrayEquals(values(a), topology.getAttributeValues(i));
+        }
+    }
+
+    @Test
+    public void valueLookupMatchesMapperSemantics() {
+        int web = topology.indexOf("device-1");
+        int db = topology.indexOf("device-2");
+
+        assertEquals("on", topology.getValue(web, "POWER"));
+        // the DOM mappers kept the last value they saw
+        assertEquals("10.0.0.2", topology.getValue(web, "ipaddress"));
+        assertEquals("Ubuntu 12.04 x64", topology.getValue(web, "GuestType"));
+        assertEquals("off", topology.getValue(db, "power"));
+        assertNull(topology.getValue(db, "GuestType"));
+        assertEquals("Windows 2008", topology.getValue(db, "AL_OSImages"));
+        assertEquals(3, topology.getAttributes(web).length);
+        assertEquals(-1, topology.indexOf("device-9"));
+    }
+
+    @Test
+    public void enforcedPropertyEdgeCases() {
+        int db = topology.indexOf("device-2");
+        int vlan = topology.indexOf("vlan-1");
+
+        assertEquals(ParsedTopology.INVALID, topology.getCpuCount(db));
+        assertEquals("many", topology.getCpuValue(db));
+        assertEquals(ParsedTopology.UNSET, topology.getRamInMb(db));
+        assertNull(topology.getRamValue(db));
+        assertEquals(ParsedTopology.UNSET, topology.getCpuCount(vlan));
+        assertFalse(topology.isAllVirtualMachines());
+    }
+
+    @Test
+    public void allVirtualMachines() throws Exception {
+        ParsedTopology vms = ParsedTopology.parse("<topology><device model=\"VirtualMachine\" key=\"a\"/><device model=\"virtualmachine\" key=\"b\"/></topology>");
+
+        assertTrue(vms.isAllVirtualMachines());
+        assertEquals(2, vms.getDeviceCount());
+        assertEquals(0, vms.getAttributeCount());
+    }
+
+    @Test(expected=InternalException.class)
+    public void malformedDocument() throws Exception {
+        ParsedTopology.parse("<topology><device key=\"a\"></topology>");
+    }
+}
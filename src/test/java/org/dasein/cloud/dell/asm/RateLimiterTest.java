@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies the pacing of the {@link RateLimiter} and the chaining of callers' limiters to the shared endpoint limiter.
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class RateLimiterTest {
+    @Test
+    public void spacesPermitsEvenly() throws Exception {
+        RateLimiter limiter = new RateLimiter(50.0);
+        long start = System.nanoTime();
+
+        for( int i=0; i<11; i++ ) {
+            limiter.acquire();
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // the first permit is immediate and the next ten are 20ms apart
+        assertTrue("Too fast: " + elapsed + "ms", elapsed >= 190L);
+        assertTrue("Too slow: " + elapsed + "ms", elapsed < 1000L);
+    }
+
+    @Test
+    public void zeroRateIsUnlimited() throws Exception {
+        RateLimiter limiter = new RateLimiter(0.0);
+        long start = System.nanoTime();
+
+        for( int i=0; i<1000; i++ ) {
+            limiter.acquire();
+        }
+        assertEquals(0.0, limiter.getRate(), 0.0);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 100L);
+    }
+
+    @Test
+    public void idleTimeIsNotBanked() throws Exception {
+        RateLimiter limiter = new RateLimiter(20.0);
+
+        limiter.acquire();
+        Thread.sleep(300L);
+        long start = System.nanoTime();
+
+        limiter.acquire();
+        limiter.acquire();
+        // an idle limiter grants one permit at once but does not hand out a burst for the time it sat idle
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 40L);
+    }
+
+    @Test
+    public void callerRateLeavesSharedRateAlone() {
+        String endpoint = "https://rate-limiter-test/" + System.nanoTime();
+        RateLimiter shared = RateLimiter.getInstance(endpoint);
+
+        assertSame(shared, RateLimiter.getInstance(endpoint));
+        assertNotSame(shared, RateLimiter.getInstance(endpoint, 0.5));
+        assertEquals("Slow caller changed the shared rate", RateLimiter.DEFAULT_ENDPOINT_RATE, shared.getRate(), 0.001);
+        RateLimiter.getInstance(endpoint, 1000.0);
+        assertEquals("Fast caller changed the shared rate", RateLimiter.DEFAULT_ENDPOINT_RATE, shared.getRate(), 0.001);
+    }
+
+    @Test
+    public void sharedRateIsReadFromSystemProperty() {
+        String endpoint = "https://rate-limiter-test/" + System.nanoTime();
+        String old = System.getProperty(RateLimiter.ENDPOINT_RATE);
+
+        System.setProperty(RateLimiter.ENDPOINT_RATE, "25");
+        try {
+            assertEquals(25.0, RateLimiter.getInstance(endpoint).getRate(), 0.001);
+        }
+        finally {
+            if( old == null ) {
+                System.clearProperty(RateLimiter.ENDPOINT_RATE);
+            }
+            else {
+                System.setProperty(RateLimiter.ENDPOINT_RATE, old);
+            }
+        }
+    }
+
+    @Test
+    public void fastCallerIsHeldToParentRate() throws Exception {
+        RateLimiter caller = new RateLimiter(1000.0, new RateLimiter(50.0));
+        long start = System.nanoTime();
+
+        for( int i=0; i<11; i++ ) {
+            caller.acquire();
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 190L);
+    }
+
+    @Test
+    public void slowCallerDoesNotSlowOtherCallers() throws Exception {
+        RateLimiter shared = new RateLimiter(1000.0);
+        RateLimiter slow = new RateLimiter(1.0, shared);
+        RateLimiter fast = new RateLimiter(1000.0, shared);
+
+        slow.acquire();
+        long start = System.nanoTime();
+
+        for( int i=0; i<10; i++ ) {
+            fast.acquire();
+        }
+        // the slow caller's next slot is a second away, but the fast caller only waits on the shared rate
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500L);
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies the redaction of credentials from the payloads kept by the {@link SlowCallLog} and the {@link WireRecorder}.
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class SlowCallLogTest {
+    @Test
+    public void redactsCredentialAttributes() {
+        String request = "<drl mode=\"normal\" connectionid=\"c-123\"><openconnection username=\"admin\" usertoken='t-456' password = \"secret\"/></drl>";
+        String redacted = SlowCallLog.redact(request, Integer.MAX_VALUE);
+
+        assertEquals("<drl mode=\"normal\" connectionid=\"****\"><openconnection username=\"****\" usertoken=\"****\" password = \"****\"/></drl>", redacted);
+    }
+
+    @Test
+    public void redactsCredentialElements() {
+        String response = "<drl><UserToken>t-456</UserToken><username>admin</username><password>secret</password><connectionid>c-123</connectionid></drl>";
+        String redacted = SlowCallLog.redact(response, Integer.MAX_VALUE);
+
+        assertFalse(redacted, redacted.contains("t-456"));
+        assertFalse(redacted, redacted.contains("admin"));
+        assertFalse(redacted, redacted.contains("secret"));
+        assertFalse(redacted, redacted.contains("c-123"));
+        assertTrue(redacted, redacted.contains("<UserToken>****</UserToken>"));
+    }
+
+    @Test
+    public void leavesOtherFieldsAlone() {
+        String request = "<drl><readtopology reservationid=\"r-1\" name=\"username\"/></drl>";
+
+        assertEquals(request, SlowCallLog.redact(request, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void truncatesAfterRedacting() {
+        String redacted = SlowCallLog.redact("<x usertoken=\"abcdefghijklmnop\"/>", 10);
+
+        assertEquals("<x usertok...[11 more]", redacted);
+    }
+
+    @Test
+    public void nullPayload() {
+        assertNull(SlowCallLog.redact(null, 10));
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.dell.asm.compute;
+
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.dell.asm.DellASM;
+import org.dasein.cloud.dell.asm.ParsedTopology;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Verifies the product IDs {@link VirtualVM#toVirtualMachine(String, ParsedTopology)} maps from enforced properties,
+ * which carry the CPU and RAM values exactly as Dell ASM gave them.
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class VirtualVMMappingTest {
+    static private final String TOPOLOGY =
+            "<topology>\n" +
+            "  <device model=\"VirtualMachine\" key=\"plain\" name=\"plain\" description=\"plain\">\n" +
+            "    <enforcedproperties><property name=\"CPU\" value=\" 2 \"/><property name=\"RAM\" value=\"4096\"/></enforcedproperties>\n" +
+            "  </device>\n" +
+            "  <device model=\"VirtualMachine\" key=\"units\" name=\"units\" description=\"units\">\n" +
+            "    <enforcedproperties><property name=\"CPU\" value=\"many\"/><property name=\"RAM\" value=\"2048MB\"/></enforcedproperties>\n" +
+            "  </device>\n" +
+            "  <device model=\"VirtualMachine\" key=\"bare\" name=\"bare\" description=\"bare\"/>\n" +
+            "  <device model=\"VLAN\" key=\"vlan\" name=\"vlan\" description=\"vlan\"/>\n" +
+            "</topology>\n";
+
+    private DellASM provider;
+
+    @Before
+    public void setUp() {
+        ProviderContext ctx = new ProviderContext();
+
+        ctx.setEndpoint("https://localhost/asm");
+        ctx.setAccountNumber("test");
+        ctx.setRegionId("test");
+        provider = new DellASM();
+        provider.connect(ctx);
+    }
+
+    @After
+    public void tearDown() {
+        provider.close();
+    }
+
+    @Test
+    public void productIdKeepsRawEnforcedValues() throws Exception {
+        HashMap<String,String> products = new HashMap<String, String>();
+
+        for( VirtualMachine vm : new VirtualVM(provider).toVirtualMachine("res-1", ParsedTopology.parse(TOPOLOGY)) ) {
+            products.put(vm.getProviderVirtualMachineId(), vm.getProductId());
+        }
+        assertEquals(3, products.size());
+        assertEquals("2:4096", products.get("res-1:plain"));
+        assertEquals("many:2048MB", products.get("res-1:units"));
+        assertEquals(":", products.get("res-1:bare"));
+    }
+}
@@ -0,0 +1,352 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.dell.asm.local;
+
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.dell.asm.ASMThreadFactory;
+import org.dasein.cloud.dell.asm.DellASM;
+import org.dasein.cloud.dell.asm.LatencyHistogram;
+import org.dasein.cloud.dell.asm.compute.VirtualVM;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives a single {@link DellASM} instance from many threads against a {@link LocalASM} stand-in and reports how much
+ * load it sustains. Each run holds one workload at one concurrency for a fixed time and reports its throughput, latency
+ * percentiles, errors, and the number of ASM calls made per logical operation. Running a workload at increasing
+ * concurrency shows where the provider saturates.
+ * <p>
+ *     Run it from the test classpath, for example
+ *     <code>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.dasein.cloud.dell.asm.local.LoadHarness</code>.
+ *     It is configured through system properties:
+ * </p>
+ * <ul>
+ *     <li><code>threads</code> - comma-separated concurrency levels (default 1,4,16,64)</li>
+ *     <li><code>duration</code> - seconds per run (default 10)</li>
+ *     <li><code>warmup</code> - seconds of unrecorded load before each run (default 2)</li>
+ *     <li><code>latency</code> - milliseconds the stand-in adds to every call (default 20)</li>
+ *     <li><code>reservations</code> - reservations in the stand-in's inventory (default 25)</li>
+ *     <li><code>workloads</code> - comma-separated workloads to run (default all)</li>
+ *     <li><code>report</code> - file to which the tab-separated report is written (default none)</li>
+ * </ul>
+ * <p>
+ *     The tab-separated report has one line per run with a fixed set of columns so that reports from before and after
+ *     a change can be compared line by line.
+ * </p>
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class LoadHarness {
+    static public enum Workload { LIST_VMS, GET_VM, START_STOP }
+
+    static public final String REPORT_HEADER = "workload\tthreads\tops\terrors\tops/sec\tp50(ms)\tp90(ms)\tp99(ms)\tmax(ms)\tcalls/op";
+
+    static public void main(String ... args) throws Exception {
+        LocalASM asm = new LocalASM();
+        ArrayList<Workload> workloads = new ArrayList<Workload>();
+        ArrayList<Integer> concurrency = new ArrayList<Integer>();
+        String w = System.getProperty("workloads");
+        String report = System.getProperty("report");
+
+        for( String t : System.getProperty("threads", "1,4,16,64").split(",") ) {
+            concurrency.add(Integer.parseInt(t.trim()));
+        }
+        if( w == null ) {
+            for( Workload workload : Workload.values() ) {
+                workloads.add(workload);
+            }
+        }
+        else {
+            for( String s : w.split(",") ) {
+                workloads.add(Workload.valueOf(s.trim().toUpperCase(Locale.ENGLISH)));
+            }
+        }
+        asm.populate(3, Integer.getInteger("reservations", 25), 1);
+        asm.setDefaultLatency(Integer.getInteger("latency", 20));
+        asm.start();
+        try {
+            LoadHarness harness = new LoadHarness(asm);
+            List<Result> results = new ArrayList<Result>();
+            long duration = TimeUnit.SECONDS.toMillis(Integer.getInteger("duration", 10));
+            long warmup = TimeUnit.SECONDS.toMillis(Integer.getInteger("warmup", 2));
+
+            System.out.println(REPORT_HEADER);
+            for( Workload workload : workloads ) {
+                for( int threads : concurrency ) {
+                    Result r = harness.run(workload, threads, warmup, duration);
+
+                    results.add(r);
+                    System.out.println(r);
+                }
+            }
+            if( report != null ) {
+                write(report, results);
+            }
+        }
+        finally {
+            asm.stop();
+        }
+    }
+
+    /**
+     * Writes results as a tab-separated report.
+     * @param file the file to write
+     * @param results the results to write
+     * @throws IOException an error occurred writing the file
+     */
+    static public void write(@Nonnull String file, @Nonnull List<Result> results) throws IOException {
+        PrintWriter out = new PrintWriter(new FileWriter(file));
+
+        try {
+            out.println(REPORT_HEADER);
+            for( Result r : results ) {
+                out.println(r);
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * The outcome of holding one workload at one concurrency.
+     */
+    static public class Result {
+        private final double                    callsPerOp;
+        private final long                      errors;
+        private final LatencyHistogram.Snapshot latency;
+        private final long                      ops;
+        private final long                      millis;
+        private final int                       threads;
+        private final Workload                  workload;
+
+        Result(@Nonnull Workload workload, int threads, long ops, long errors, long millis, @Nonnull LatencyHistogram.Snapshot latency, double callsPerOp) {
+            this.workload = workload;
+            this.threads = threads;
+            this.ops = ops;
+            this.errors = errors;
+            this.millis = millis;
+            this.latency = latency;
+            this.callsPerOp = callsPerOp;
+        }
+
+        /**
+         * @return the average number of ASM calls made per logical operation
+         */
+        public double getCallsPerOp() {
+            return callsPerOp;
+        }
+
+        /**
+         * @return the number of operations that failed
+         */
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * @return the latencies of the completed operations
+         */
+        public @Nonnull LatencyHistogram.Snapshot getLatency() {
+            return latency;
+        }
+
+        /**
+         * @return the number of operations completed, successfully or not
+         */
+        public long getOps() {
+            return ops;
+        }
+
+        /**
+         * @return the operations completed per second
+         */
+        public double getOpsPerSecond() {
+            return (millis < 1L ? 0.0 : (ops * 1000.0)/millis);
+        }
+
+        /**
+         * @return the number of threads driving the provider
+         */
+        public int getThreads() {
+            return threads;
+        }
+
+        /**
+         * @return the workload that was run
+         */
+        public @Nonnull Workload getWorkload() {
+            return workload;
+        }
+
+        @Override
+        public @Nonnull String toString() {
+            return String.format(Locale.ENGLISH, "%s\t%d\t%d\t%d\t%.1f\t%.1f\t%.1f\t%.1f\t%.1f\t%.2f", workload.name().toLowerCase(Locale.ENGLISH),
+                    threads, ops, errors, getOpsPerSecond(), toMillis(latency.getPercentile(50.0)), toMillis(latency.getPercentile(90.0)),
+                    toMillis(latency.getPercentile(99.0)), toMillis(latency.getMax()), callsPerOp);
+        }
+
+        private double toMillis(long nanos) {
+            return nanos/1000000.0;
+        }
+    }
+
+    private final LocalASM asm;
+    private final DellASM  provider;
+
+    /**
+     * Constructs a harness driving a new provider against the specified stand-in, which must already be started.
+     * @param asm the stand-in the provider calls
+     */
+    public LoadHarness(@Nonnull LocalASM asm) {
+        ProviderContext ctx = new ProviderContext();
+
+        ctx.setEndpoint(asm.getEndpoint());
+        ctx.setAccountNumber("load");
+        ctx.setRegionId("local");
+        ctx.setAccessPublic("load".getBytes());
+        ctx.setAccessPrivate("load".getBytes());
+        this.asm = asm;
+        this.provider = new DellASM();
+        this.provider.connect(ctx);
+    }
+
+    /**
+     * @return the provider under load
+     */
+    public @Nonnull DellASM getProvider() {
+        return provider;
+    }
+
+    /**
+     * Holds a workload at the specified concurrency.
+     * @param workload the workload to run
+     * @param threads the number of threads driving the provider
+     * @param warmup the time in milliseconds to run before recording
+     * @param duration the time in milliseconds to record
+     * @return the outcome of the run
+     * @throws Exception the inventory could not be listed or a driving thread was interrupted
+     */
+    public @Nonnull Result run(@Nonnull Workload workload, @Nonnegative int threads, @Nonnegative long warmup, @Nonnegative long duration) throws Exception {
+        final VirtualVM support = provider.getComputeServices().getVirtualMachineSupport();
+        final ArrayList<String> vmIds = new ArrayList<String>();
+
+        for( VirtualMachine vm : support.listVirtualMachines() ) {
+            vmIds.add(vm.getProviderVirtualMachineId());
+        }
+        if( vmIds.isEmpty() && workload != Workload.LIST_VMS ) {
+            throw new IllegalStateException("No virtual machines in the stand-in to drive " + workload);
+        }
+        drive(support, workload, vmIds, threads, warmup, null, null, null);
+
+        LatencyHistogram latency = new LatencyHistogram();
+        AtomicLong ops = new AtomicLong(0L);
+        AtomicLong errors = new AtomicLong(0L);
+        int calls = asm.getRequestCount();
+        long started = System.currentTimeMillis();
+
+        drive(support, workload, vmIds, threads, duration, latency, ops, errors);
+
+        long millis = System.currentTimeMillis() - started;
+        long count = ops.get();
+
+        calls = asm.getRequestCount() - calls;
+        return new Result(workload, threads, count, errors.get(), millis, latency.snapshot(), count == 0L ? 0.0 : ((double)calls)/count);
+    }
+
+    private void drive(@Nonnull final VirtualVM support, @Nonnull final Workload workload, @Nonnull final List<String> vmIds, int threads, long duration, @Nullable final LatencyHistogram latency, @Nullable final AtomicLong ops, @Nullable final AtomicLong errors) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads, new ASMThreadFactory("load"));
+        final CountDownLatch done = new CountDownLatch(threads);
+        final long deadline = System.currentTimeMillis() + duration;
+        final AtomicInteger next = new AtomicInteger(0);
+
+        try {
+            for( int i=0; i<threads; i++ ) {
+                pool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            while( System.currentTimeMillis() < deadline ) {
+                                String vmId = (vmIds.isEmpty() ? null : vmIds.get((next.getAndIncrement() & Integer.MAX_VALUE) % vmIds.size()));
+                                long started = System.nanoTime();
+                                boolean failed = false;
+
+                                try {
+                                    execute(support, workload, vmId);
+                                }
+                                catch( Throwable t ) {
+                                    failed = true;
+                                }
+                                if( latency != null ) {
+                                    latency.record(System.nanoTime() - started);
+                                    ops.incrementAndGet();
+                                    if( failed ) {
+                                        errors.incrementAndGet();
+                                    }
+                                }
+                            }
+                        }
+                        finally {
+                            done.countDown();
+                        }
+                    }
+                });
+            }
+            done.await();
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void execute(@Nonnull VirtualVM support, @Nonnull Workload workload, @Nullable String vmId) throws Exception {
+        switch( workload ) {
+            case LIST_VMS:
+                for( VirtualMachine ignore : support.listVirtualMachines() ) {
+                    // iterate to force the full listing
+                }
+                break;
+            case GET_VM:
+                support.getVirtualMachine(vmId);
+                break;
+            case START_STOP:
+                support.stop(vmId, false);
+                support.start(vmId);
+                break;
+        }
+    }
+}
@@ -0,0 +1,692 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.dell.asm.local;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.dasein.cloud.dell.asm.ASMThreadFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An embedded stand-in for the Dell ASM <code>xmlApiServlet</code> so the provider can be exercised end to end without
+ * a lab. It implements the DRL operations this module calls against an in-memory inventory of archives and
+ * reservations, and can inject latency and errors per operation.
+ * <p>
+ *     Point a context at {@link #getEndpoint()} with any credentials (or the ones set through
+ *     {@link #setCredentials(String, String)}). Every archive is a single-VM topology and every reservation runs one
+ *     copy of its archive's topology, so a reservation holds {@link #getDevicesPerTopology()} virtual machines.
+ * </p>
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class LocalASM {
+    static public final String ERROR_INJECTED   = "local.injected";
+    static public final String ERROR_NOT_FOUND  = "local.notfound";
+    static public final String ERROR_UNKNOWN_OP = "local.unknownop";
+    static public final String FOUND_OPTIONS    = "res.scheduler.400";
+    static public final String NO_OPTIONS       = "res.scheduler.404";
+
+    static private String escape(@Nullable String value) {
+        if( value == null ) {
+            return "";
+        }
+        StringBuilder str = new StringBuilder();
+
+        for( int i=0; i<value.length(); i++ ) {
+            char c = value.charAt(i);
+
+            switch( c ) {
+                case '&': str.append("&amp;"); break;
+                case '<': str.append("&lt;"); break;
+                case '>': str.append("&gt;"); break;
+                case '"': str.append("&quot;"); break;
+                case '\'': str.append("&apos;"); break;
+                default: str.append(c);
+            }
+        }
+        return str.toString();
+    }
+
+    static private @Nullable String getAttribute(@Nonnull Element e, @Nonnull String name) {
+        String value = e.getAttribute(name);
+
+        return (value == null || value.length() < 1 ? null : value);
+    }
+
+    static private class Archive {
+        String namespace;
+        String name;
+        String description;
+        long   importedTime;
+    }
+
+    static private class Reservation {
+        String                 reservationId;
+        String                 archiveId;
+        String                 name;
+        String                 status;
+        long                   createdTime;
+        Map<String,Boolean>    power = new LinkedHashMap<String, Boolean>();
+    }
+
+    private final Map<String,Archive>          archives     = new LinkedHashMap<String, Archive>();
+    private final Map<String,Reservation>      reservations = new LinkedHashMap<String, Reservation>();
+    private final Map<String,String>           responses    = new HashMap<String, String>();
+    private final Map<String,String>           sessions     = new HashMap<String, String>();
+
+    private final ConcurrentHashMap<String,Double>        errorRates = new ConcurrentHashMap<String, Double>();
+    private final ConcurrentHashMap<String,Long>          latencies  = new ConcurrentHashMap<String, Long>();
+    private final ConcurrentHashMap<String,AtomicInteger> requests   = new ConcurrentHashMap<String, AtomicInteger>();
+
+    private final AtomicLong ids    = new AtomicLong(0L);
+    private final Random     random = new Random();
+
+    private volatile long    defaultLatency;
+    private volatile int     devicesPerTopology = 1;
+    private volatile String  password;
+    private HttpServer       server;
+    private ExecutorService  threads;
+    private volatile String  username;
+
+    /**
+     * Adds an archive to the inventory.
+     * @param name the name of the archive
+     * @return the namespace (image ID) of the new archive
+     */
+    public @Nonnull String addArchive(@Nonnull String name) {
+        Archive a = new Archive();
+
+        a.namespace = "archive-" + ids.incrementAndGet();
+        a.name = name;
+        a.description = "Local archive " + name;
+        a.importedTime = System.currentTimeMillis();
+        synchronized( this ) {
+            archives.put(a.namespace, a);
+        }
+        return a.namespace;
+    }
+
+    /**
+     * Adds a confirmed, running reservation of the specified archive to the inventory.
+     * @param archiveId the namespace of the archive being reserved
+     * @param name the name of the reservation
+     * @return the ID of the new reservation
+     */
+    public @Nonnull String addReservation(@Nonnull String archiveId, @Nonnull String name) {
+        Reservation r = new Reservation();
+
+        r.reservationId = "reservation-" + ids.incrementAndGet();
+        r.archiveId = archiveId;
+        r.name = name;
+        r.status = "RUNNING";
+        r.createdTime = System.currentTimeMillis();
+        for( int i=0; i<devicesPerTopology; i++ ) {
+            r.power.put("device-" + (i+1), true);
+        }
+        synchronized( this ) {
+            reservations.put(r.reservationId, r);
+        }
+        return r.reservationId;
+    }
+
+    /**
+     * @return the number of archives currently in the inventory
+     */
+    public synchronized int getArchiveCount() {
+        return archives.size();
+    }
+
+    /**
+     * @return the number of virtual machines in each reservation
+     */
+    public int getDevicesPerTopology() {
+        return devicesPerTopology;
+    }
+
+    /**
+     * @return the endpoint to place in a provider context, null if the stand-in is not running
+     */
+    public synchronized @Nullable String getEndpoint() {
+        if( server == null ) {
+            return null;
+        }
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return the number of requests received for all operations
+     */
+    public int getRequestCount() {
+        int total = 0;
+
+        for( AtomicInteger count : requests.values() ) {
+            total += count.get();
+        }
+        return total;
+    }
+
+    /**
+     * @param operation the DRL operation of interest
+     * @return the number of requests received for the operation
+     */
+    public int getRequestCount(@Nonnull String operation) {
+        AtomicInteger count = requests.get(operation.toLowerCase(Locale.ENGLISH));
+
+        return (count == null ? 0 : count.get());
+    }
+
+    /**
+     * @return the number of reservations that are neither completed nor canceled
+     */
+    public synchronized int getReservationCount() {
+        int count = 0;
+
+        for( Reservation r : reservations.values() ) {
+            if( isActive(r) ) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param reservationId the reservation of interest
+     * @return the status of the reservation, null if no such reservation exists
+     */
+    public synchronized @Nullable String getReservationStatus(@Nonnull String reservationId) {
+        Reservation r = reservations.get(reservationId);
+
+        return (r == null ? null : r.status);
+    }
+
+    /**
+     * Replaces the inventory with the specified number of archives and running reservations. Reservations are spread
+     * evenly over the archives.
+     * @param archiveCount the number of archives
+     * @param reservationCount the number of running reservations
+     * @param devices the number of virtual machines in each reservation
+     */
+    public void populate(@Nonnegative int archiveCount, @Nonnegative int reservationCount, @Nonnegative int devices) {
+        List<String> archiveIds = new ArrayList<String>();
+
+        synchronized( this ) {
+            archives.clear();
+            reservations.clear();
+            responses.clear();
+            sessions.clear();
+        }
+        devicesPerTopology = Math.max(1, devices);
+        for( int i=0; i<archiveCount; i++ ) {
+            archiveIds.add(addArchive((i % 2 == 0 ? "Ubuntu 12.04 x64 " : "Windows 2008 64-bit ") + i));
+        }
+        if( archiveIds.isEmpty() && reservationCount > 0 ) {
+            archiveIds.add(addArchive("Ubuntu 12.04 x64"));
+        }
+        for( int i=0; i<reservationCount; i++ ) {
+            addReservation(archiveIds.get(i % archiveIds.size()), "local-vm-" + i);
+        }
+    }
+
+    /**
+     * Requires the specified credentials for <code>getUserToken</code>. By default any credentials are accepted.
+     * @param username the required user name, null to accept any credentials
+     * @param password the required password
+     */
+    public void setCredentials(@Nullable String username, @Nullable String password) {
+        this.username = username;
+        this.password = password;
+    }
+
+    /**
+     * Sets the latency added to operations with no latency of their own.
+     * @param millis the latency in milliseconds
+     */
+    public void setDefaultLatency(@Nonnegative long millis) {
+        defaultLatency = millis;
+    }
+
+    /**
+     * Sets the fraction of requests for an operation that fail with a DRL error of {@link #ERROR_INJECTED}.
+     * @param operation the DRL operation
+     * @param rate the failure rate between 0 and 1
+     */
+    public void setErrorRate(@Nonnull String operation, double rate) {
+        errorRates.put(operation.toLowerCase(Locale.ENGLISH), rate);
+    }
+
+    /**
+     * Sets the latency added to every request for an operation.
+     * @param operation the DRL operation
+     * @param millis the latency in milliseconds
+     */
+    public void setLatency(@Nonnull String operation, @Nonnegative long millis) {
+        latencies.put(operation.toLowerCase(Locale.ENGLISH), millis);
+    }
+
+    /**
+     * Starts listening on an ephemeral port on the loopback interface.
+     * @throws IOException the server socket could not be opened
+     */
+    public synchronized void start() throws IOException {
+        if( server != null ) {
+            return;
+        }
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        threads = Executors.newCachedThreadPool(new ASMThreadFactory("local"));
+        server.setExecutor(threads);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                LocalASM.this.handle(exchange);
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * Stops the server. The inventory is kept so the server may be started again.
+     */
+    public synchronized void stop() {
+        if( server != null ) {
+            server.stop(0);
+            threads.shutdownNow();
+            server = null;
+            threads = null;
+        }
+    }
+
+    private void handle(@Nonnull HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+
+            // the request DOCTYPEs point back at the endpoint
+            if( path.endsWith(".dtd") ) {
+                respond(exchange, 200, "");
+            }
+            else if( !"POST".equalsIgnoreCase(exchange.getRequestMethod()) || !path.endsWith("/xmlApiServlet") ) {
+                respond(exchange, 404, "");
+            }
+            else {
+                respond(exchange, 200, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + dispatch(read(exchange.getRequestBody())));
+            }
+        }
+        catch( Throwable t ) {
+            respond(exchange, 500, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + error("local.internal", String.valueOf(t.getMessage())));
+        }
+    }
+
+    private @Nonnull String dispatch(@Nonnull String body) throws Exception {
+        DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+
+        builder.setEntityResolver(new EntityResolver() {
+            @Override
+            public InputSource resolveEntity(String publicId, String systemId) {
+                return new InputSource(new StringReader(""));
+            }
+        });
+        Document doc = builder.parse(new InputSource(new StringReader(body)));
+        Element request = null;
+        NodeList children = doc.getDocumentElement().getChildNodes();
+
+        for( int i=0; i<children.getLength(); i++ ) {
+            if( children.item(i).getNodeType() == Node.ELEMENT_NODE ) {
+                request = (Element)children.item(i);
+                break;
+            }
+        }
+        if( request == null ) {
+            return error(ERROR_UNKNOWN_OP, "No operation in request");
+        }
+        String operation = request.getNodeName().toLowerCase(Locale.ENGLISH);
+        AtomicInteger count = requests.get(operation);
+
+        if( count == null ) {
+            requests.putIfAbsent(operation, new AtomicInteger(0));
+            count = requests.get(operation);
+        }
+        count.incrementAndGet();
+
+        Long latency = latencies.get(operation);
+        long delay = (latency == null ? defaultLatency : latency);
+
+        if( delay > 0L ) {
+            Thread.sleep(delay);
+        }
+        Double rate = errorRates.get(operation);
+
+        if( rate != null && random.nextDouble() < rate ) {
+            return error(ERROR_INJECTED, "Injected failure for " + operation);
+        }
+        if( operation.equals("getusertoken") ) {
+            return getUserToken(request);
+        }
+        else if( operation.equals("openconnection") ) {
+            return "<drl mode=\"normal\" connectionid=\"connection-" + ids.incrementAndGet() + "\"><openconnection/></drl>";
+        }
+        else if( operation.equals("enumeratearchive") ) {
+            return enumerateArchive();
+        }
+        else if( operation.equals("deletearchive") ) {
+            return deleteArchive(request);
+        }
+        else if( operation.equals("enumeratereservations") ) {
+            return enumerateReservations();
+        }
+        else if( operation.equals("readtopology") ) {
+            return readTopology(request);
+        }
+        else if( operation.equals("makereservation") ) {
+            return makeReservation(request);
+        }
+        else if( operation.equals("confirmresponse") ) {
+            return confirmResponse(request);
+        }
+        else if( operation.equals("cancelreservation") ) {
+            return cancelReservation(request);
+        }
+        else if( operation.equals("joinlabsession") ) {
+            return joinLabSession(request);
+        }
+        else if( operation.equals("leavelabsession") ) {
+            return leaveLabSession(request);
+        }
+        else if( operation.equals("poweron") || operation.equals("poweroff") ) {
+            return power(request, operation.equals("poweron"));
+        }
+        return error(ERROR_UNKNOWN_OP, "Unsupported operation: " + operation);
+    }
+
+    private @Nonnull String cancelReservation(@Nonnull Element request) {
+        String reservationId = getAttribute(request, "reservationid");
+
+        synchronized( this ) {
+            Reservation r = (reservationId == null ? null : reservations.get(reservationId));
+
+            if( r == null || !isActive(r) ) {
+                return error(ERROR_NOT_FOUND, "No such reservation: " + reservationId);
+            }
+            r.status = "CANCELED";
+        }
+        return "<drl mode=\"normal\"><cancelreservation reservationid=\"" + escape(reservationId) + "\"/></drl>";
+    }
+
+    private @Nonnull String confirmResponse(@Nonnull Element request) {
+        String responseId = getAttribute(request, "responseid");
+        String archiveId;
+
+        synchronized( this ) {
+            archiveId = (responseId == null ? null : responses.remove(responseId));
+        }
+        if( archiveId == null ) {
+            return error(ERROR_NOT_FOUND, "No such response: " + responseId);
+        }
+        String name = getAttribute(request, "reservationname");
+        String reservationId = addReservation(archiveId, name == null ? "" : name);
+
+        return "<drl mode=\"normal\"><confirmresponse reservationid=\"" + reservationId + "\"/></drl>";
+    }
+
+    private @Nonnull String deleteArchive(@Nonnull Element request) {
+        String namespace = getAttribute(request, "namespace");
+
+        synchronized( this ) {
+            if( namespace == null || archives.remove(namespace) == null ) {
+                return error(ERROR_NOT_FOUND, "No such archive: " + namespace);
+            }
+        }
+        return "<drl mode=\"normal\"><deletearchive namespace=\"" + escape(namespace) + "\"/></drl>";
+    }
+
+    private @Nonnull String enumerateArchive() {
+        StringBuilder xml = new StringBuilder();
+        SimpleDateFormat fmt = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssz");
+
+        xml.append("<drl mode=\"normal\"><enumeratearchive>");
+        synchronized( this ) {
+            for( Archive a : archives.values() ) {
+                xml.append("<archive namespace=\"").append(escape(a.namespace)).append("\"");
+                xml.append(" name=\"").append(escape(a.name)).append("\"");
+                xml.append(" description=\"").append(escape(a.description)).append("\"");
+                xml.append(" importedtime=\"").append(fmt.format(new Date(a.importedTime))).append("\"");
+                xml.append(" devicemodel=\"VirtualMachine\" isrecycled=\"false\" ismaster=\"true\">");
+                xml.append("<content>").append(escape(toTopology(a, null))).append("</content>");
+                xml.append("</archive>");
+            }
+        }
+        xml.append("</enumeratearchive></drl>");
+        return xml.toString();
+    }
+
+    private @Nonnull String enumerateReservations() {
+        StringBuilder xml = new StringBuilder();
+        SimpleDateFormat fmt = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssz");
+
+        xml.append("<drl mode=\"normal\"><enumeratereservations>");
+        synchronized( this ) {
+            for( Reservation r : reservations.values() ) {
+                if( !isActive(r) ) {
+                    continue;
+                }
+                xml.append("<reservation reservationid=\"").append(escape(r.reservationId)).append("\"");
+                xml.append(" name=\"").append(escape(r.name)).append("\"");
+                xml.append(" description=\"\" type=\"session\" owner=\"local\"");
+                xml.append(" status=\"").append(r.status).append("\"");
+                xml.append(" createdtime=\"").append(fmt.format(new Date(r.createdTime))).append("\"/>");
+            }
+        }
+        xml.append("</enumeratereservations></drl>");
+        return xml.toString();
+    }
+
+    private @Nonnull String error(@Nonnull String code, @Nonnull String message) {
+        return "<drl mode=\"normal\"><error code=\"" + escape(code) + "\" message=\"" + escape(message) + "\"/></drl>";
+    }
+
+    private @Nonnull String getUserToken(@Nonnull Element request) {
+        String requiredUser = username;
+
+        if( requiredUser != null ) {
+            if( !requiredUser.equals(getAttribute(request, "username")) || (password != null && !password.equals(getAttribute(request, "password"))) ) {
+                return error("auth.failed", "Invalid user name or password");
+            }
+        }
+        return "<drl mode=\"normal\"><getusertoken usertoken=\"token-" + ids.incrementAndGet() + "\"/></drl>";
+    }
+
+    private boolean isActive(@Nonnull Reservation r) {
+        return !r.status.equals("COMPLETED") && !r.status.equals("CANCELED");
+    }
+
+    private @Nonnull String joinLabSession(@Nonnull Element request) {
+        String reservationId = getAttribute(request, "reservationid");
+        String sessionId = "session-" + ids.incrementAndGet();
+
+        synchronized( this ) {
+            Reservation r = (reservationId == null ? null : reservations.get(reservationId));
+
+            if( r == null || !isActive(r) ) {
+                return error(ERROR_NOT_FOUND, "No such reservation: " + reservationId);
+            }
+            sessions.put(sessionId, reservationId);
+        }
+        return "<drl mode=\"normal\"><joinlabsession sessionid=\"" + sessionId + "\"><labsession sessionid=\"" + sessionId + "\"/></joinlabsession></drl>";
+    }
+
+    private @Nonnull String leaveLabSession(@Nonnull Element request) {
+        String sessionId = getAttribute(request, "sessionid");
+
+        synchronized( this ) {
+            if( sessionId == null || sessions.remove(sessionId) == null ) {
+                return error(ERROR_NOT_FOUND, "No such session: " + sessionId);
+            }
+        }
+        return "<drl mode=\"normal\"><leavelabsession sessionid=\"" + escape(sessionId) + "\"/></drl>";
+    }
+
+    private @Nonnull String makeReservation(@Nonnull Element request) {
+        NodeList params = request.getElementsByTagName("params");
+        String archiveId = (params.getLength() < 1 ? null : getAttribute((Element)params.item(0), "topologyid"));
+
+        synchronized( this ) {
+            if( archiveId == null || !archives.containsKey(archiveId) ) {
+                return "<drl mode=\"normal\"><makereservation><responseset code=\"" + NO_OPTIONS + "\" message=\"No such archive: " + escape(archiveId) + "\"/></makereservation></drl>";
+            }
+        }
+        String responseId = "response-" + ids.incrementAndGet();
+
+        synchronized( this ) {
+            responses.put(responseId, archiveId);
+        }
+        return "<drl mode=\"normal\"><makereservation><responseset code=\"" + FOUND_OPTIONS + "\" message=\"Found reservation options\"><response responseid=\"" + responseId + "\"/></responseset></makereservation></drl>";
+    }
+
+    private @Nonnull String power(@Nonnull Element request, boolean on) {
+        String sessionId = getAttribute(request, "sessionid");
+        String deviceId = getAttribute(request, "deviceid");
+        String tag = (on ? "poweron" : "poweroff");
+
+        synchronized( this ) {
+            String reservationId = (sessionId == null ? null : sessions.get(sessionId));
+            Reservation r = (reservationId == null ? null : reservations.get(reservationId));
+
+            if( r == null || deviceId == null || !r.power.containsKey(deviceId) ) {
+                return error(ERROR_NOT_FOUND, "No such device in session " + sessionId + ": " + deviceId);
+            }
+            r.power.put(deviceId, on);
+        }
+        return "<drl mode=\"normal\"><" + tag + " sessionid=\"" + escape(sessionId) + "\" deviceid=\"" + escape(deviceId) + "\"/></drl>";
+    }
+
+    private @Nonnull String readTopology(@Nonnull Element request) {
+        NodeList list = request.getElementsByTagName("reservation");
+        String reservationId = (list.getLength() < 1 ? null : getAttribute((Element)list.item(0), "reservationid"));
+        String topology;
+
+        synchronized( this ) {
+            Reservation r = (reservationId == null ? null : reservations.get(reservationId));
+            Archive a = (r == null ? null : archives.get(r.archiveId));
+
+            if( r == null ) {
+                return error(ERROR_NOT_FOUND, "No such reservation: " + reservationId);
+            }
+            if( a == null ) {
+                // the archive was deleted after the reservation was made
+                a = new Archive();
+                a.namespace = r.archiveId;
+                a.name = r.name;
+                a.description = "";
+            }
+            topology = toTopology(a, r);
+        }
+        return "<drl mode=\"normal\"><readtopology><xmltext>" + escape(topology) + "</xmltext></readtopology></drl>";
+    }
+
+    private @Nonnull String read(@Nonnull InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+
+        try {
+            while( (n = in.read(buffer)) > -1 ) {
+                out.write(buffer, 0, n);
+            }
+        }
+        finally {
+            in.close();
+        }
+        return new String(out.toByteArray(), "utf-8");
+    }
+
+    private void respond(@Nonnull HttpExchange exchange, int status, @Nonnull String body) throws IOException {
+        byte[] bytes = body.getBytes("utf-8");
+
+        exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        OutputStream out = exchange.getResponseBody();
+
+        try {
+            out.write(bytes);
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    private @Nonnull String toTopology(@Nonnull Archive a, @Nullable Reservation r) {
+        StringBuilder xml = new StringBuilder();
+        int devices = (r == null ? devicesPerTopology : r.power.size());
+        String guest = (a.name.toLowerCase(Locale.ENGLISH).contains("windows") ? "Windows" : "Ubuntu");
+
+        xml.append("<topology>");
+        for( int i=1; i<=devices; i++ ) {
+            xml.append("<device model=\"VirtualMachine\" key=\"device-").append(i).append("\"");
+            xml.append(" name=\"").append(escape(r == null ? a.name : r.name)).append("-").append(i).append("\"");
+            xml.append(" description=\"").append(escape(a.description)).append("\">");
+            xml.append("<enforcedproperties>");
+            xml.append("<property name=\"CPU\" value=\"2\"/>");
+            xml.append("<property name=\"RAM\" value=\"4096\"/>");
+            xml.append("</enforcedproperties>");
+            xml.append("</device>");
+        }
+        for( int i=1; i<=devices; i++ ) {
+            Boolean on = (r == null ? null : r.power.get("device-" + i));
+
+            xml.append("<attribute name=\"power\" refs=\"device-").append(i).append("\"><value>").append(on == null || on ? "on" : "off").append("</value></attribute>");
+            xml.append("<attribute name=\"IPAddress\" refs=\"device-").append(i).append("\"><value>10.0.").append(i / 250).append(".").append(i % 250 + 1).append("</value></attribute>");
+            xml.append("<attribute name=\"GuestType\" refs=\"device-").append(i).append("\"><value>").append(guest).append("</value></attribute>");
+        }
+        xml.append("</topology>");
+        return xml.toString();
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2013 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.dell.asm.local;
+
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.compute.MachineImage;
+import org.dasein.cloud.compute.VMLaunchOptions;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.dell.asm.DellASM;
+import org.dasein.cloud.dell.asm.compute.VirtualVM;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Smoke test running the provider end to end against the {@link LocalASM} stand-in.
+ * @author George Reese
+ * @version 2013.07
+ * @since 2013.07
+ */
+public class LocalASMTest {
+    private LocalASM asm;
+    private DellASM  provider;
+
+    @Before
+    public void setUp() throws Exception {
+        asm = new LocalASM();
+        asm.populate(3, 5, 2);
+        asm.start();
+
+        ProviderContext ctx = new ProviderContext();
+
+        ctx.setEndpoint(asm.getEndpoint());
+        ctx.setAccountNumber("local");
+        ctx.setRegionId("local");
+        ctx.setAccessPublic("user".getBytes("utf-8"));
+        ctx.setAccessPrivate("secret".getBytes("utf-8"));
+        provider = new DellASM();
+        provider.connect(ctx);
+    }
+
+    @After
+    public void tearDown() {
+        if( provider != null ) {
+            provider.close();
+        }
+        if( asm != null ) {
+            asm.stop();
+        }
+    }
+
+    @Test
+    public void listLaunchAndTerminate() throws Exception {
+        int images = 0;
+
+        for( MachineImage ignore : provider.getComputeServices().getImageSupport().listImages(null) ) {
+            images++;
+        }
+        assertEquals("Archives listed", 3, images);
+
+        VirtualVM support = provider.getComputeServices().getVirtualMachineSupport();
+        int vms = 0;
+
+        for( VirtualMachine ignore : support.listVirtualMachines() ) {
+            vms++;
+        }
+        assertEquals("VMs listed", 10, vms);
+
+        String imageId = provider.getComputeServices().getImageSupport().listImages(null).iterator().next().getProviderMachineImageId();
+        VirtualMachine vm = support.launch(VMLaunchOptions.getInstance("2:4096", imageId, "smoke", "smoke", "smoke test"));
+
+        assertNotNull("No VM was launched", vm);
+        assertEquals("Reservations after launch", 6, asm.getReservationCount());
+
+        support.terminate(vm.getProviderVirtualMachineId(), null);
+        assertEquals("Reservations after terminate", 5, asm.getReservationCount());
+    }
+}